@@ -0,0 +1,130 @@
+package com.bank.star.benchmark;
+
+import com.bank.star.model.TransactionType;
+import com.bank.star.repository.TransactionsFixture;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Синтетическая база транзакций в файле H2 со схемой рабочей базы ({@link TransactionsFixture}).
+ * <p>
+ * Файл {@code target/benchmark-data/transactions-<users>-<transactions>} создаётся один раз
+ * для каждой пары размеров и переиспользуется следующими запусками; недогенерированный файл
+ * создаётся заново. У клиента от 0 до
+ * {@code 2 * transactionsPerUser} транзакций по случайным продуктам всех типов;
+ * генератор детерминирован, поэтому файлы одинаковых размеров совпадают.
+ * </p>
+ */
+public final class BenchmarkData implements AutoCloseable {
+
+    private static final Path DIRECTORY = Path.of("target", "benchmark-data");
+    private static final int PRODUCTS_PER_TYPE = 4;
+    private static final int BATCH_SIZE = 1000;
+    private static final long SEED = 42;
+
+    private final HikariDataSource dataSource;
+    private final List<UUID> userIds;
+
+    private BenchmarkData(HikariDataSource dataSource, List<UUID> userIds) {
+        this.dataSource = dataSource;
+        this.userIds = userIds;
+    }
+
+    /**
+     * Открывает базу заданного размера, при необходимости генерируя её
+     */
+    public static BenchmarkData open(int users, int transactionsPerUser) {
+        Path file = DIRECTORY.resolve("transactions-" + users + "-" + transactionsPerUser).toAbsolutePath();
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:file:" + file + ";QUERY_CACHE_SIZE=32");
+        dataSource.setMaximumPoolSize(Runtime.getRuntime().availableProcessors());
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // Индекс создаётся последним: без него файл остался от прерванной генерации
+        Integer ready = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES WHERE INDEX_NAME = 'TRANSACTIONS_USER_ID'",
+                Integer.class);
+        if (ready == null || ready == 0) {
+            jdbcTemplate.execute("DROP ALL OBJECTS");
+            generate(dataSource, users, transactionsPerUser);
+        }
+
+        List<UUID> userIds = jdbcTemplate.queryForList("SELECT id FROM public.users ORDER BY id", UUID.class);
+        return new BenchmarkData(dataSource, userIds);
+    }
+
+    public HikariDataSource dataSource() {
+        return dataSource;
+    }
+
+    public List<UUID> userIds() {
+        return userIds;
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+
+    private static void generate(HikariDataSource dataSource, int users, int transactionsPerUser) {
+        // Клиенты вставляются пакетами: по одной строке, как в тестах, генерация заняла бы минуты
+        TransactionsFixture fixture = new TransactionsFixture("benchmark", dataSource, SEED);
+        List<UUID> products = fixture.addProducts(PRODUCTS_PER_TYPE, false);
+        Random random = fixture.random();
+
+        TransactionType[] transactionTypes = TransactionType.values();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement userInsert = connection.prepareStatement("INSERT INTO public.users VALUES (?)");
+             PreparedStatement transactionInsert = connection.prepareStatement(
+                     "INSERT INTO TRANSACTIONS VALUES (?, ?, ?, ?, ?)")) {
+            connection.setAutoCommit(false);
+            int pending = 0;
+            for (int user = 0; user < users; user++) {
+                UUID userId = fixture.nextId();
+                userInsert.setObject(1, userId);
+                userInsert.addBatch();
+
+                int transactions = random.nextInt(2 * transactionsPerUser + 1);
+                for (int i = 0; i < transactions; i++) {
+                    transactionInsert.setObject(1, fixture.nextId());
+                    transactionInsert.setObject(2, products.get(random.nextInt(products.size())));
+                    transactionInsert.setObject(3, userId);
+                    transactionInsert.setString(4, transactionTypes[random.nextInt(transactionTypes.length)].name());
+                    transactionInsert.setInt(5, 1 + random.nextInt(10_000));
+                    transactionInsert.addBatch();
+                    pending++;
+                }
+
+                if (pending >= BATCH_SIZE || user == users - 1) {
+                    userInsert.executeBatch();
+                    transactionInsert.executeBatch();
+                    connection.commit();
+                    pending = 0;
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось сгенерировать данные бенчмарка", e);
+        }
+
+        fixture.jdbcTemplate().execute("CREATE INDEX transactions_user_id ON TRANSACTIONS (USER_ID)");
+    }
+
+    /**
+     * Генерирует базу без запуска бенчмарков: {@code <users> <transactionsPerUser>}
+     */
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int transactionsPerUser = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        try (BenchmarkData data = open(users, transactionsPerUser)) {
+            System.out.printf("Benchmark data ready: %d users%n", data.userIds().size());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.bank.star.benchmark;
+
+import com.bank.star.config.tracing.RequestTracer;
+import com.bank.star.entity.DynamicRuleEntity;
+import com.bank.star.repository.PrecomputedRecommendationRepository;
+import com.bank.star.repository.RecommendationRepository;
+import com.bank.star.repository.RuleRepository;
+import com.bank.star.repository.RuleStatsRepository;
+import com.bank.star.repository.ShardRouter;
+import com.bank.star.repository.TransactionsFixture;
+import com.bank.star.repository.UserIdIndex;
+import com.bank.star.service.DynamicRuleService;
+import com.bank.star.service.QueryService;
+import com.bank.star.service.RecommendationExecutor;
+import com.bank.star.service.RecommendationService;
+import com.bank.star.service.RuleMetrics;
+import com.bank.star.service.RuleStatsService;
+import com.bank.star.service.impl.Invest500RuleSet;
+import com.bank.star.service.impl.SimpleLoanRuleSet;
+import com.bank.star.service.impl.TopSavingRuleSet;
+import com.bank.star.service.rule.RuleCompiler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Горячий путь рекомендаций, связанный вручную поверх {@link BenchmarkData}.
+ * <p>
+ * База правил заменена заглушкой {@link RuleRepository} с синтетическими правилами,
+ * предвычисление и трассировка выключены, как в конфигурации по умолчанию.
+ * С холодными кэшами кэши профилей и ответов не хранят записей, и каждый вызов идёт в базу.
+ * </p>
+ */
+final class BenchmarkPipeline implements AutoCloseable {
+
+    private final ShardRouter router;
+    private final RecommendationRepository repository;
+    private final QueryService queryService;
+    private final DynamicRuleService dynamicRuleService;
+    private final RecommendationExecutor executor;
+    private final RecommendationService recommendationService;
+
+    BenchmarkPipeline(BenchmarkData data, boolean warmCaches, int dynamicRules) {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RequestTracer requestTracer = new RequestTracer(Tracer.NOOP);
+
+        this.router = TransactionsFixture.router("benchmark", data.dataSource(), meterRegistry);
+        this.repository = new RecommendationRepository(router, meterRegistry, requestTracer);
+
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        int cacheSize = warmCaches ? data.userIds().size() : 0;
+        for (String cache : List.of(QueryService.PROFILE_CACHE, RecommendationService.RESPONSE_CACHE)) {
+            cacheManager.registerCustomCache(cache, Caffeine.newBuilder()
+                                                            .maximumSize(cacheSize)
+                                                            .executor(Runnable::run)
+                                                            .recordStats()
+                                                            .build());
+        }
+        this.queryService = new QueryService(repository, cacheManager, meterRegistry);
+
+        List<DynamicRuleEntity> rules = SyntheticRules.generate(dynamicRules);
+        RuleRepository ruleRepository = mock(RuleRepository.class);
+        when(ruleRepository.findAll()).thenReturn(rules);
+        RuleMetrics ruleMetrics = new RuleMetrics(meterRegistry);
+        this.dynamicRuleService = new DynamicRuleService(ruleRepository, new RuleCompiler(), ruleMetrics);
+
+        UserIdIndex userIdIndex = new UserIdIndex(router, true);
+        userIdIndex.load();
+        this.executor = new RecommendationExecutor(data.dataSource(), meterRegistry, false, 0, 0, 100);
+        this.recommendationService = new RecommendationService(
+                List.of(new Invest500RuleSet(), new SimpleLoanRuleSet(), new TopSavingRuleSet()),
+                dynamicRuleService,
+                queryService,
+                userIdIndex,
+                executor,
+                new PrecomputedRecommendationRepository(data.dataSource(), new ObjectMapper(),
+                        Duration.ofSeconds(1)),
+                new RuleStatsService(new RuleStatsRepository(data.dataSource(),
+                        new DataSourceTransactionManager(data.dataSource())), dynamicRuleService),
+                ruleMetrics,
+                requestTracer,
+                cacheManager,
+                meterRegistry,
+                Duration.ofSeconds(2));
+    }
+
+    RecommendationRepository repository() {
+        return repository;
+    }
+
+    QueryService queryService() {
+        return queryService;
+    }
+
+    DynamicRuleService dynamicRuleService() {
+        return dynamicRuleService;
+    }
+
+    RecommendationService recommendationService() {
+        return recommendationService;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        router.close();
+    }
+}
@@ -0,0 +1,80 @@
+package com.bank.star.benchmark;
+
+import com.bank.star.model.UserTransactionProfile;
+import com.bank.star.service.QueryService;
+import com.bank.star.service.rule.RuleMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Вычисление матрицы динамических правил по загруженному профилю в зависимости от числа правил,
+ * так же как в {@code RecommendationService}: каждое различное условие вычисляется один раз,
+ * затем правила сопоставляются по битовой маске
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class DynamicRuleBenchmark {
+
+    @Param("10000")
+    private int users;
+
+    @Param("20")
+    private int transactionsPerUser;
+
+    @Param({"1", "10", "100", "1000"})
+    private int dynamicRules;
+
+    private BenchmarkData data;
+    private BenchmarkPipeline pipeline;
+    private QueryService queryService;
+    private RuleMatrix matrix;
+    private UserTransactionProfile[] profiles;
+    private int position;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = BenchmarkData.open(users, transactionsPerUser);
+        pipeline = new BenchmarkPipeline(data, false, dynamicRules);
+        queryService = pipeline.queryService();
+        matrix = pipeline.dynamicRuleService().getRuleSnapshot().matrix();
+        profiles = queryService.loadProfiles(data.userIds()).values().toArray(UserTransactionProfile[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pipeline.close();
+        data.close();
+    }
+
+    @Benchmark
+    public void evaluate(Blackhole blackhole) {
+        UserTransactionProfile profile = profiles[position];
+        position = position + 1 == profiles.length ? 0 : position + 1;
+
+        long[] facts = matrix.newFacts();
+        for (int bit = 0; bit < matrix.predicateCount(); bit++) {
+            if (queryService.test(profile, matrix.predicate(bit))) {
+                RuleMatrix.setFact(facts, bit);
+            }
+        }
+        matrix.match(facts, blackhole::consume);
+    }
+}
@@ -0,0 +1,129 @@
+package com.bank.star.benchmark;
+
+import com.bank.star.model.ComparisonOperator;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.model.UserTransactionProfile;
+import com.bank.star.service.rule.AtomicPredicate;
+import com.bank.star.service.rule.QueryKind;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code QueryService}: загрузка профиля с тёплым и холодным кэшем и вычисление условия каждого типа
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class QueryServiceBenchmark {
+
+    /**
+     * Загрузка профиля: с тёплым кэшем профиль берётся из кэша, с холодным — из базы
+     */
+    @State(Scope.Thread)
+    public static class ProfileLoad {
+
+        @Param("10000")
+        private int users;
+
+        @Param("20")
+        private int transactionsPerUser;
+
+        @Param({"true", "false"})
+        private boolean warmCaches;
+
+        private BenchmarkData data;
+        private BenchmarkPipeline pipeline;
+        private UserCursor cursor;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            data = BenchmarkData.open(users, transactionsPerUser);
+            pipeline = new BenchmarkPipeline(data, warmCaches, 0);
+            cursor = new UserCursor(data.userIds(), 1);
+            if (warmCaches) {
+                data.userIds().forEach(pipeline.queryService()::loadProfile);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pipeline.close();
+            data.close();
+        }
+    }
+
+    /**
+     * Вычисление условия заданного типа по уже загруженным профилям
+     */
+    @State(Scope.Thread)
+    public static class Condition {
+
+        @Param("10000")
+        private int users;
+
+        @Param("20")
+        private int transactionsPerUser;
+
+        @Param({"USER_OF", "ACTIVE_USER_OF", "TRANSACTION_SUM_COMPARE", "TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW"})
+        private QueryKind kind;
+
+        private BenchmarkData data;
+        private BenchmarkPipeline pipeline;
+        private UserTransactionProfile[] profiles;
+        private AtomicPredicate predicate;
+        private int position;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            data = BenchmarkData.open(users, transactionsPerUser);
+            pipeline = new BenchmarkPipeline(data, false, 0);
+            profiles = pipeline.queryService().loadProfiles(data.userIds()).values()
+                               .toArray(UserTransactionProfile[]::new);
+            predicate = switch (kind) {
+                case USER_OF, ACTIVE_USER_OF -> new AtomicPredicate(kind, ProductType.DEBIT, null, null, 0);
+                case TRANSACTION_SUM_COMPARE -> new AtomicPredicate(kind, ProductType.SAVING,
+                        TransactionType.DEPOSIT, ComparisonOperator.GREATER, 50_000);
+                case TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW -> new AtomicPredicate(kind, ProductType.DEBIT, null,
+                        ComparisonOperator.GREATER, 0);
+            };
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pipeline.close();
+            data.close();
+        }
+
+        UserTransactionProfile nextProfile() {
+            UserTransactionProfile profile = profiles[position];
+            position = position + 1 == profiles.length ? 0 : position + 1;
+            return profile;
+        }
+    }
+
+    @Benchmark
+    public UserTransactionProfile loadProfile(ProfileLoad state) {
+        return state.pipeline.queryService().loadProfile(state.cursor.next());
+    }
+
+    @Benchmark
+    public boolean test(Condition state) {
+        return state.pipeline.queryService().test(state.nextProfile(), state.predicate);
+    }
+}
@@ -0,0 +1,68 @@
+package com.bank.star.benchmark;
+
+import com.bank.star.model.UserTransactionProfile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запросы {@code RecommendationRepository}: профиль одного клиента и профили порции клиентов
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class RecommendationRepositoryBenchmark {
+
+    @Param("10000")
+    private int users;
+
+    @Param("20")
+    private int transactionsPerUser;
+
+    @Param("500")
+    private int batchSize;
+
+    private BenchmarkData data;
+    private BenchmarkPipeline pipeline;
+    private UserCursor cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = BenchmarkData.open(users, transactionsPerUser);
+        pipeline = new BenchmarkPipeline(data, false, 0);
+        cursor = new UserCursor(data.userIds(), 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pipeline.close();
+        data.close();
+    }
+
+    @Benchmark
+    public UserTransactionProfile profile() {
+        return pipeline.repository().findUserTransactionProfile(cursor.next());
+    }
+
+    @Benchmark
+    public Map<UUID, UserTransactionProfile> profiles() {
+        return pipeline.repository().findUserTransactionProfiles(cursor.next(batchSize));
+    }
+}
@@ -0,0 +1,82 @@
+package com.bank.star.benchmark;
+
+import com.bank.star.dto.ResponseDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запрос рекомендаций одного клиента целиком: кэш ответов, загрузка профиля, зашитые и динамические правила
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecommendationServiceBenchmark {
+
+    @Param("10000")
+    private int users;
+
+    @Param("20")
+    private int transactionsPerUser;
+
+    @Param("20")
+    private int dynamicRules;
+
+    @Param({"true", "false"})
+    private boolean warmCaches;
+
+    private BenchmarkData data;
+    private BenchmarkPipeline pipeline;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = BenchmarkData.open(users, transactionsPerUser);
+        pipeline = new BenchmarkPipeline(data, warmCaches, dynamicRules);
+        if (warmCaches) {
+            data.userIds().forEach(pipeline.recommendationService()::getRecommendationsResponse);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pipeline.close();
+        data.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private UserCursor users;
+
+        @Setup(Level.Trial)
+        public void setUp(RecommendationServiceBenchmark benchmark) {
+            users = new UserCursor(benchmark.data.userIds(), Thread.currentThread().getId());
+        }
+    }
+
+    @Benchmark
+    public ResponseDTO getRecommendations(Cursor cursor) {
+        return pipeline.recommendationService().getRecommendationsResponse(cursor.users.next());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public ResponseDTO getRecommendationsConcurrent(Cursor cursor) {
+        return pipeline.recommendationService().getRecommendationsResponse(cursor.users.next());
+    }
+}
@@ -0,0 +1,66 @@
+package com.bank.star.benchmark;
+
+import com.bank.star.entity.DynamicRuleEntity;
+import com.bank.star.model.ComparisonOperator;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.service.rule.QueryKind;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Детерминированный набор динамических правил: от одного до четырёх случайных условий на правило.
+ * Условия берутся из конечного множества, поэтому с ростом числа правил они всё чаще совпадают,
+ * как в рабочем наборе.
+ */
+final class SyntheticRules {
+
+    private static final int[] CONSTANTS = {0, 1000, 5000, 50_000, 100_000};
+
+    private SyntheticRules() {
+    }
+
+    static List<DynamicRuleEntity> generate(int count) {
+        Random random = new Random(count);
+        List<DynamicRuleEntity> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            DynamicRuleEntity rule = new DynamicRuleEntity();
+            rule.setProductId(new UUID(random.nextLong(), random.nextLong()));
+            rule.setProductName("Benchmark product " + i);
+            rule.setProductText("Benchmark product " + i);
+
+            List<DynamicRuleEntity.QueryCondition> conditions = new ArrayList<>();
+            int size = 1 + random.nextInt(4);
+            for (int j = 0; j < size; j++) {
+                conditions.add(condition(random));
+            }
+            rule.setRule(conditions);
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    private static DynamicRuleEntity.QueryCondition condition(Random random) {
+        QueryKind kind = pick(random, QueryKind.values());
+        String productType = pick(random, ProductType.values()).name();
+        String operator = pick(random, ComparisonOperator.values()).getSymbol();
+
+        DynamicRuleEntity.QueryCondition condition = new DynamicRuleEntity.QueryCondition();
+        condition.setQuery(kind.name());
+        condition.setArguments(switch (kind) {
+            case USER_OF, ACTIVE_USER_OF -> List.of(productType);
+            case TRANSACTION_SUM_COMPARE -> List.of(productType, pick(random, TransactionType.values()).name(),
+                    operator, String.valueOf(CONSTANTS[random.nextInt(CONSTANTS.length)]));
+            case TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW -> List.of(productType, operator);
+        });
+        condition.setNegate(random.nextInt(4) == 0);
+        return condition;
+    }
+
+    private static <T> T pick(Random random, T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
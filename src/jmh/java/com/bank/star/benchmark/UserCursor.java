@@ -0,0 +1,39 @@
+package com.bank.star.benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Случайный обход клиентов без повторов до исчерпания; у каждого потока бенчмарка свой
+ */
+final class UserCursor {
+
+    private final UUID[] userIds;
+    private int position;
+
+    UserCursor(List<UUID> userIds, long seed) {
+        this.userIds = userIds.toArray(UUID[]::new);
+        Random random = new Random(seed);
+        for (int i = this.userIds.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            UUID swap = this.userIds[i];
+            this.userIds[i] = this.userIds[j];
+            this.userIds[j] = swap;
+        }
+    }
+
+    UUID next() {
+        UUID userId = userIds[position];
+        position = position + 1 == userIds.length ? 0 : position + 1;
+        return userId;
+    }
+
+    List<UUID> next(int count) {
+        UUID[] batch = new UUID[count];
+        for (int i = 0; i < count; i++) {
+            batch[i] = next();
+        }
+        return List.of(batch);
+    }
+}
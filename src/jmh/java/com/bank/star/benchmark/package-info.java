@@ -0,0 +1,10 @@
+/**
+ * JMH-бенчмарки горячего пути рекомендаций.
+ * <p>
+ * Собираются и запускаются профилем Maven {@code benchmark}: {@code mvn -Pbenchmark verify}.
+ * Данные транзакций генерируются {@link com.bank.star.benchmark.BenchmarkData} в файл H2,
+ * компоненты связываются вручную ({@link com.bank.star.benchmark.BenchmarkPipeline}) без контекста Spring
+ * и базы правил. Результаты пишутся в {@code target/jmh-result.json} для сравнения между запусками.
+ * </p>
+ */
+package com.bank.star.benchmark;
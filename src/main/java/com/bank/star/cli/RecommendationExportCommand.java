@@ -0,0 +1,49 @@
+package com.bank.star.cli;
+
+import com.bank.star.service.RecommendationExportService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+/**
+ * Выгрузка рекомендаций всех клиентов в файл NDJSON из командной строки:
+ * <pre>
+ * java -jar bank-star.jar --spring.main.web-application-type=none \
+ *      --recommendation.export.file=recommendations.ndjson.gz
+ * </pre>
+ * Файл с расширением {@code .gz} сжимается. После выгрузки приложение завершается.
+ */
+@Component
+@ConditionalOnProperty("recommendation.export.file")
+@RequiredArgsConstructor
+@Slf4j
+public class RecommendationExportCommand implements ApplicationRunner {
+
+    private final RecommendationExportService recommendationExportService;
+    private final ConfigurableApplicationContext context;
+
+    @Value("${recommendation.export.file}")
+    private Path file;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        int exitCode = 0;
+        try {
+            long users = recommendationExportService.export(file);
+            log.info("Exported recommendations of {} users to {}", users, file.toAbsolutePath());
+        } catch (Exception e) {
+            log.error("Recommendation export to {} failed", file, e);
+            exitCode = 1;
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+}
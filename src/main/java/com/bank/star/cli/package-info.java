@@ -0,0 +1,8 @@
+/**
+ * Команды командной строки.
+ * <p>
+ * Выполняются при запуске приложения с соответствующим свойством
+ * и завершают приложение после выполнения.
+ * </p>
+ */
+package com.bank.star.cli;
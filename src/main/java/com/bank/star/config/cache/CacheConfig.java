@@ -1,53 +1,112 @@
 package com.bank.star.config.cache;
 
+import com.bank.star.repository.TransactionProfileSource;
+import com.bank.star.service.QueryService;
+import com.bank.star.service.RecommendationService;
+import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Конфигурация кэширования с использованием Caffeine
+ * Конфигурация кэширования с использованием Caffeine.
+ * <p>
+ * В режиме упреждающего обновления ({@code recommendation.cache.refresh-ahead.enabled})
+ * профиль клиента старше {@code soft-ttl} продолжает отдаваться из кэша, а перечитывается
+ * асинхронно в отдельном пуле. {@code hard-ttl} ограничивает возраст любой записи.
+ * При ошибке перечитывания остаётся старое значение, ошибка считается в
+ * {@code bankstar.cache.reload.failures}. Готовые рекомендации в этом режиме живут
+ * {@code soft-ttl}: их пересчёт идёт по уже обновлённому профилю без обращения к базе.
+ * </p>
  */
 @Configuration
 @EnableCaching
+@Slf4j
 public class CacheConfig {
 
+    private ThreadPoolExecutor refreshExecutor;
+
     @Bean
-    public CacheManager cacheManager() {
+    public CacheManager cacheManager(
+            ObjectProvider<TransactionProfileSource> transactionProfileSource,
+            MeterRegistry meterRegistry,
+            @Value("${recommendation.cache.refresh-ahead.enabled:false}") boolean refreshAhead,
+            @Value("${recommendation.cache.soft-ttl:5m}") Duration softTtl,
+            @Value("${recommendation.cache.hard-ttl:10m}") Duration hardTtl,
+            @Value("${recommendation.cache.refresh-threads:2}") int refreshThreads) {
         CaffeineCacheManager cacheManager = new CaffeineCacheManager();
 
         // Настройка различных кэшей с разными параметрами
-        cacheManager.registerCustomCache("userOfQuery",
-                Caffeine.newBuilder()
-                        .maximumSize(1000)
-                        .expireAfterWrite(10, TimeUnit.MINUTES)
-                        .recordStats()
-                        .build());
+        if (refreshAhead) {
+            Counter reloadFailures = Counter.builder("bankstar.cache.reload.failures")
+                                            .description("Ошибки асинхронного обновления записей кэша")
+                                            .tag("cache", QueryService.PROFILE_CACHE)
+                                            .register(meterRegistry);
+            CacheLoader<Object, Object> profileLoader = new CacheLoader<>() {
+                @Override
+                public Object load(Object userId) {
+                    return transactionProfileSource.getObject().findUserTransactionProfile((UUID) userId);
+                }
 
-        cacheManager.registerCustomCache("activeUserOfQuery",
-                Caffeine.newBuilder()
-                        .maximumSize(1000)
-                        .expireAfterWrite(10, TimeUnit.MINUTES)
-                        .recordStats()
-                        .build());
+                @Override
+                public Object reload(Object userId, Object oldValue) {
+                    try {
+                        return load(userId);
+                    } catch (RuntimeException e) {
+                        reloadFailures.increment();
+                        log.debug("Failed to refresh cached profile of User {}, keeping previous value", userId);
+                        throw e;
+                    }
+                }
+            };
 
-        cacheManager.registerCustomCache("transactionSumCompareQuery",
-                Caffeine.newBuilder()
-                        .maximumSize(2000)
-                        .expireAfterWrite(10, TimeUnit.MINUTES)
-                        .recordStats()
-                        .build());
+            refreshExecutor = newRefreshExecutor(refreshThreads);
+            cacheManager.registerCustomCache(QueryService.PROFILE_CACHE,
+                    Caffeine.newBuilder()
+                            .maximumSize(10000)
+                            .refreshAfterWrite(softTtl)
+                            .expireAfterWrite(hardTtl)
+                            .executor(refreshExecutor)
+                            .recordStats()
+                            .build(profileLoader));
 
-        cacheManager.registerCustomCache("transactionSumCompareDepositWithdrawQuery",
-                Caffeine.newBuilder()
-                        .maximumSize(1000)
-                        .expireAfterWrite(10, TimeUnit.MINUTES)
-                        .recordStats()
-                        .build());
+            cacheManager.registerCustomCache(RecommendationService.RESPONSE_CACHE,
+                    Caffeine.newBuilder()
+                            .maximumSize(10000)
+                            .expireAfterWrite(softTtl)
+                            .recordStats()
+                            .build());
+        } else {
+            cacheManager.registerCustomCache(QueryService.PROFILE_CACHE,
+                    Caffeine.newBuilder()
+                            .maximumSize(10000)
+                            .expireAfterWrite(hardTtl)
+                            .recordStats()
+                            .build());
+
+            cacheManager.registerCustomCache(RecommendationService.RESPONSE_CACHE,
+                    Caffeine.newBuilder()
+                            .maximumSize(10000)
+                            .expireAfterWrite(hardTtl)
+                            .recordStats()
+                            .build());
+        }
 
         cacheManager.registerCustomCache("allRules",
                 Caffeine.newBuilder()
@@ -65,4 +124,28 @@ public class CacheConfig {
 
         return cacheManager;
     }
-}
\ No newline at end of file
+
+    /**
+     * Пул асинхронного обновления записей кэша. Не регистрируется как бин,
+     * чтобы не подменять собой пул задач Spring MVC.
+     * Переполнение очереди отменяет обновление: запись остаётся прежней до следующего чтения.
+     */
+    private static ThreadPoolExecutor newRefreshExecutor(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1000),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "cache-refresh-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdownRefreshExecutor() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdown();
+        }
+    }
+}
@@ -26,6 +26,7 @@ public class DatabaseConfig {
 
     @Bean
     @Primary
+    @ConfigurationProperties("spring.datasource.hikari")
     public DataSource primaryDataSource() {
         return primaryDataSourceProperties()
                 .initializeDataSourceBuilder()
@@ -0,0 +1,97 @@
+package com.bank.star.config.database;
+
+import com.bank.star.repository.ReplicaSet;
+import com.bank.star.repository.ShardRouter;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Реплики и шарды базы транзакций.
+ * <p>
+ * База транзакций доступна только для чтения, поэтому на узле можно держать
+ * несколько копий её файла. Основной пул — первая реплика; дополнительные
+ * перечисляются в {@code spring.datasource.replicas.urls} и получают
+ * те же настройки пула, что и основной.
+ * </p>
+ * <p>
+ * Если заданы шарды ({@code spring.datasource.shards.urls}), каждый элемент списка —
+ * отдельный шард со своим пулом; реплики шарда перечисляются через {@code |}.
+ * Без шардов единственным шардом считается основной набор реплик.
+ * </p>
+ */
+@Configuration
+public class ReplicaConfig {
+
+    @Value("${recommendation.hedge.enabled:true}")
+    private boolean hedging;
+
+    @Value("${recommendation.hedge.percentile:0.95}")
+    private double percentile;
+
+    @Value("${recommendation.hedge.min-delay:5ms}")
+    private Duration minDelay;
+
+    @Bean(destroyMethod = "close")
+    public ReplicaSet transactionReplicaSet(
+            DataSource primaryDataSource,
+            MeterRegistry meterRegistry,
+            @Value("${spring.datasource.replicas.urls:}") List<String> replicaUrls) {
+        List<DataSource> dataSources = new ArrayList<>();
+        dataSources.add(primaryDataSource);
+        for (String url : replicaUrls) {
+            if (!url.isBlank()) {
+                dataSources.add(pool(primaryDataSource, url.trim(), "transactions-replica-" + dataSources.size()));
+            }
+        }
+        return new ReplicaSet("transactions", dataSources, false, hedging, percentile, minDelay.toNanos(),
+                meterRegistry);
+    }
+
+    @Bean(destroyMethod = "close")
+    public ShardRouter transactionShardRouter(
+            ReplicaSet transactionReplicaSet,
+            DataSource primaryDataSource,
+            MeterRegistry meterRegistry,
+            @Value("${spring.datasource.shards.urls:}") List<String> shardUrls,
+            @Value("${spring.datasource.shards.ranges:}") List<String> ranges,
+            @Value("${spring.datasource.shards.queue-capacity:100}") int queueCapacity) {
+        List<String> shardSpecs = shardUrls.stream().filter(url -> !url.isBlank()).toList();
+        if (shardSpecs.isEmpty()) {
+            return new ShardRouter(List.of(transactionReplicaSet), List.of(), false, queueCapacity);
+        }
+
+        List<ReplicaSet> shards = new ArrayList<>();
+        for (int shard = 0; shard < shardSpecs.size(); shard++) {
+            List<DataSource> dataSources = new ArrayList<>();
+            for (String url : shardSpecs.get(shard).split("\\|")) {
+                String poolName = "transactions-shard-" + shard + "-" + dataSources.size();
+                dataSources.add(pool(primaryDataSource, url.trim(), poolName));
+            }
+            shards.add(new ReplicaSet("shard-" + shard, dataSources, true, hedging, percentile, minDelay.toNanos(),
+                    meterRegistry));
+        }
+        return new ShardRouter(shards, ranges.stream().filter(range -> !range.isBlank()).toList(), true,
+                queueCapacity);
+    }
+
+    /**
+     * Пул с настройками основного пула и другим адресом базы
+     */
+    private static HikariDataSource pool(DataSource primaryDataSource, String url, String poolName) {
+        HikariDataSource pool = new HikariDataSource();
+        if (primaryDataSource instanceof HikariDataSource primary) {
+            primary.copyStateTo(pool);
+        }
+        pool.setJdbcUrl(url);
+        pool.setPoolName(poolName);
+        return pool;
+    }
+}
@@ -0,0 +1,64 @@
+package com.bank.star.config.metrics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+
+import java.util.Objects;
+
+/**
+ * Конфигурация метрик.
+ * <p>
+ * Метрики с тегом {@code product_id} ограничены {@code management.metrics.product-id.max-values}
+ * значениями: правила создаются через API, и без предела их число не ограничено.
+ * Метрики сверх предела не регистрируются; метрики удалённого правила освобождают место
+ * ({@link ProductIdCardinalityFilter}).
+ * </p>
+ * Для каждого кэша Caffeine публикуется доля попаданий {@code bankstar.cache.hit.ratio};
+ * запросы, вытеснения и время загрузки ({@code cache.*}), а также заполненность пулов
+ * соединений H2 и PostgreSQL ({@code hikaricp.*}) собирает Spring Boot.
+ */
+@Configuration
+public class MetricsConfig {
+
+    private final CacheManager cacheManager;
+    private final MeterRegistry meterRegistry;
+
+    public MetricsConfig(CacheManager cacheManager, MeterRegistry meterRegistry,
+                         ProductIdCardinalityFilter productIdCardinalityFilter) {
+        this.cacheManager = cacheManager;
+        this.meterRegistry = meterRegistry;
+        meterRegistry.config().onMeterRemoved(productIdCardinalityFilter::onMeterRemoved);
+    }
+
+    /**
+     * Статический, чтобы фильтр был применён к реестру раньше создания этой конфигурации
+     */
+    @Bean
+    public static ProductIdCardinalityFilter productIdCardinalityFilter(
+            @Value("${management.metrics.product-id.max-values:200}") int maxValues) {
+        return new ProductIdCardinalityFilter(maxValues);
+    }
+
+    /**
+     * Регистрирует долю попаданий для всех кэшей после старта, когда кэши уже созданы
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void registerCacheHitRatios() {
+        for (String name : cacheManager.getCacheNames()) {
+            Object nativeCache = Objects.requireNonNull(cacheManager.getCache(name)).getNativeCache();
+            if (nativeCache instanceof Cache<?, ?> cache) {
+                Gauge.builder("bankstar.cache.hit.ratio", cache, c -> c.stats().hitRate())
+                     .description("Доля попаданий в кэш с момента запуска")
+                     .tag("cache", name)
+                     .register(meterRegistry);
+            }
+        }
+    }
+}
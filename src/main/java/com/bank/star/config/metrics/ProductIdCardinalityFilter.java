@@ -0,0 +1,72 @@
+package com.bank.star.config.metrics;
+
+import com.bank.star.service.RuleMetrics;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.config.MeterFilterReply;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ограничивает число различных значений тега {@code product_id} у метрик правил.
+ * <p>
+ * В отличие от {@link MeterFilter#maximumAllowableTags}, значение освобождается при удалении
+ * метрик правила из реестра ({@link RuleMetrics#forget}), поэтому создание и удаление правил
+ * не исчерпывает предел навсегда. Метрики сверх предела не регистрируются;
+ * о первом отказе пишется предупреждение в лог.
+ * </p>
+ */
+@Slf4j
+public final class ProductIdCardinalityFilter implements MeterFilter {
+
+    private final int maxValues;
+    private final Set<String> values = new HashSet<>();
+    private final AtomicBoolean warned = new AtomicBoolean();
+
+    public ProductIdCardinalityFilter(int maxValues) {
+        this.maxValues = maxValues;
+    }
+
+    @Override
+    public MeterFilterReply accept(Meter.Id id) {
+        String productId = productId(id);
+        if (productId == null || admit(productId)) {
+            return MeterFilterReply.NEUTRAL;
+        }
+
+        if (warned.compareAndSet(false, true)) {
+            log.warn("Tag {} reached {} distinct values, metrics of further rules are not registered "
+                    + "(raise management.metrics.product-id.max-values)", RuleMetrics.PRODUCT_ID_TAG, maxValues);
+        }
+        log.debug("Meter {} {}={} denied by tag limit", id.getName(), RuleMetrics.PRODUCT_ID_TAG, productId);
+        return MeterFilterReply.DENY;
+    }
+
+    /**
+     * Освобождает значение тега удалённой метрики
+     */
+    public synchronized void onMeterRemoved(Meter meter) {
+        String productId = productId(meter.getId());
+        if (productId != null) {
+            values.remove(productId);
+        }
+    }
+
+    private synchronized boolean admit(String productId) {
+        if (values.contains(productId)) {
+            return true;
+        }
+        if (values.size() >= maxValues) {
+            return false;
+        }
+        values.add(productId);
+        return true;
+    }
+
+    private static String productId(Meter.Id id) {
+        return id.getName().startsWith(RuleMetrics.METER_PREFIX) ? id.getTag(RuleMetrics.PRODUCT_ID_TAG) : null;
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * Конфигурация метрик приложения.
+ * <p>
+ * Ограничивает число значений тегов и дополняет автоматически собираемые метрики.
+ */
+package com.bank.star.config.metrics;
@@ -0,0 +1,102 @@
+package com.bank.star.config.tracing;
+
+import com.bank.star.config.web.ServerTiming;
+import io.micrometer.tracing.CurrentTraceContext;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.TraceContext;
+import io.micrometer.tracing.Tracer;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Замер участка обработки запроса: дочерний span трассировки и запись в {@link ServerTiming}.
+ * <p>
+ * Span создаётся, только если запрос попал в выборку трассировки, а замер в разбивку —
+ * только если она включена для запроса. В остальных случаях участок выполняется как есть,
+ * поэтому пакетные вычисления и выгрузка не порождают span'ов.
+ * </p>
+ */
+@Component
+public class RequestTracer {
+
+    private static final String DETAIL_TAG = "detail";
+
+    private final Tracer tracer;
+
+    public RequestTracer(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Выполняет участок под span'ом {@code name}
+     *
+     * @param detail уточнение (например, идентификатор продукта): тег span'а и описание в разбивке;
+     *               может отсутствовать
+     */
+    public <T> T trace(String name, String detail, Supplier<T> work) {
+        Span parent = tracer.currentSpan();
+        boolean sampled = parent != null && !parent.isNoop();
+        if (!sampled && !ServerTiming.isActive()) {
+            return work.get();
+        }
+
+        long startedAt = System.nanoTime();
+        if (!sampled) {
+            try {
+                return work.get();
+            } finally {
+                ServerTiming.add(name, detail, System.nanoTime() - startedAt);
+            }
+        }
+
+        Span span = tracer.nextSpan().name(name);
+        if (detail != null) {
+            span.tag(DETAIL_TAG, detail);
+        }
+        try (Tracer.SpanInScope ignored = tracer.withSpan(span.start())) {
+            return work.get();
+        } catch (RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.end();
+            ServerTiming.add(name, detail, System.nanoTime() - startedAt);
+        }
+    }
+
+    public void trace(String name, String detail, Runnable work) {
+        trace(name, detail, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Отмечает событие без длительности, например исход поиска в кэше
+     */
+    public void event(String name, String value) {
+        Span span = tracer.currentSpan();
+        if (span != null && !span.isNoop()) {
+            span.tag(name, value);
+        }
+        ServerTiming.add(name, value, -1);
+    }
+
+    /**
+     * Оборачивает задачу так, чтобы в другом потоке её участки попали в трассу и разбивку текущего запроса
+     */
+    public <T> Supplier<T> propagate(Supplier<T> task) {
+        Supplier<T> timed = ServerTiming.propagate(task);
+        CurrentTraceContext currentTraceContext = tracer.currentTraceContext();
+        TraceContext context = currentTraceContext.context();
+        if (context == null) {
+            return timed;
+        }
+        return () -> {
+            try (CurrentTraceContext.Scope ignored = currentTraceContext.maybeScope(context)) {
+                return timed.get();
+            }
+        };
+    }
+}
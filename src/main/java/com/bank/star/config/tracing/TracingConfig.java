@@ -0,0 +1,26 @@
+package com.bank.star.config.tracing;
+
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Конфигурация экспорта трассировки.
+ * <p>
+ * Span'ы создаются только для доли запросов {@code management.tracing.sampling.probability}.
+ * При {@code recommendation.tracing.exporter=logging} они пишутся в журнал
+ * (категория {@code io.opentelemetry.exporter.logging}); при заданном
+ * {@code management.otlp.tracing.endpoint} Spring Boot дополнительно отправляет их по OTLP.
+ * </p>
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "recommendation.tracing.exporter", havingValue = "logging")
+    public SpanExporter loggingSpanExporter() {
+        return LoggingSpanExporter.create();
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * Конфигурация трассировки запросов.
+ * <p>
+ * Определяет экспорт span'ов OpenTelemetry и обёртку для замера участков обработки запроса.
+ */
+package com.bank.star.config.tracing;
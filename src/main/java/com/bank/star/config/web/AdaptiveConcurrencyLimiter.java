@@ -0,0 +1,126 @@
+package com.bank.star.config.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+
+/**
+ * Ограничитель числа одновременных запросов с адаптивным лимитом (AIMD).
+ * <p>
+ * Запрос, завершившийся быстрее {@code latencyThreshold}, при загруженном лимите
+ * увеличивает его на {@code 1 / limit} (на единицу за «окно» из limit запросов).
+ * Медленный или упавший запрос уменьшает лимит в {@code BACKOFF_RATIO} раз.
+ * Сверх лимита запросы ждут в короткой очереди не дольше {@code queueTimeout};
+ * при заполненной очереди или истечении ожидания запрос отклоняется сразу.
+ * </p>
+ * Метрики с тегом {@code pool}: {@code bankstar.admission.limit},
+ * {@code bankstar.admission.in_flight}, {@code bankstar.admission.queued}
+ * и счётчик отказов {@code bankstar.admission.rejected}.
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final int MIN_LIMIT = 1;
+
+    private final int maxLimit;
+    private final int queueSize;
+    private final long queueTimeoutNanos;
+    private final long latencyThresholdNanos;
+    private final Counter rejected;
+
+    private double limit;
+    private int inFlight;
+    private int queued;
+
+    public AdaptiveConcurrencyLimiter(String pool, int initialLimit, int maxLimit, int queueSize,
+                                      Duration queueTimeout, Duration latencyThreshold,
+                                      MeterRegistry meterRegistry) {
+        this.maxLimit = Math.max(maxLimit, MIN_LIMIT);
+        this.limit = Math.min(Math.max(initialLimit, MIN_LIMIT), this.maxLimit);
+        this.queueSize = queueSize;
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+
+        Gauge.builder("bankstar.admission.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+             .description("Текущий лимит одновременных запросов")
+             .tag("pool", pool)
+             .register(meterRegistry);
+        Gauge.builder("bankstar.admission.in_flight", this, AdaptiveConcurrencyLimiter::getInFlight)
+             .description("Запросы, выполняющиеся в данный момент")
+             .tag("pool", pool)
+             .register(meterRegistry);
+        Gauge.builder("bankstar.admission.queued", this, AdaptiveConcurrencyLimiter::getQueued)
+             .description("Запросы, ожидающие допуска")
+             .tag("pool", pool)
+             .register(meterRegistry);
+        this.rejected = Counter.builder("bankstar.admission.rejected")
+                               .description("Отклонённые из-за перегрузки запросы")
+                               .tag("pool", pool)
+                               .register(meterRegistry);
+    }
+
+    /**
+     * Пытается допустить запрос, ожидая в очереди не дольше {@code queueTimeout}
+     *
+     * @return true, если запрос допущен и после завершения нужно вызвать {@link #release}
+     */
+    public synchronized boolean tryAcquire() throws InterruptedException {
+        if (inFlight < (int) limit) {
+            inFlight++;
+            return true;
+        }
+        if (queued >= queueSize) {
+            rejected.increment();
+            return false;
+        }
+
+        queued++;
+        try {
+            long deadline = System.nanoTime() + queueTimeoutNanos;
+            while (inFlight >= (int) limit) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    rejected.increment();
+                    return false;
+                }
+                wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+            }
+            inFlight++;
+            return true;
+        } finally {
+            queued--;
+        }
+    }
+
+    /**
+     * Освобождает место и корректирует лимит по времени выполнения запроса
+     *
+     * @param latencyNanos время выполнения запроса
+     * @param failed       запрос завершился ошибкой сервера
+     */
+    public synchronized void release(long latencyNanos, boolean failed) {
+        boolean saturated = inFlight >= (int) limit;
+        inFlight--;
+
+        if (failed || latencyNanos > latencyThresholdNanos) {
+            limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        notifyAll();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queued;
+    }
+}
@@ -0,0 +1,128 @@
+package com.bank.star.config.web;
+
+import com.bank.star.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.server.PathContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.util.ServletRequestPathUtils;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.time.Duration;
+
+/**
+ * Контроль допуска запросов перед контроллерами.
+ * <p>
+ * Запросы рекомендаций и административные запросы {@code /rule} ограничиваются
+ * отдельными {@link AdaptiveConcurrencyLimiter}, поэтому всплеск одних
+ * не лишает ресурсов другие. Пакетная выдача и объяснение рекомендаций идут
+ * заметно дольше одиночного запроса и получают собственный ограничитель
+ * {@code bulk} со своим порогом задержки: иначе их длительность снижала бы
+ * лимит одиночных запросов. Ограничитель выбирается по пути внутри приложения,
+ * без контекстного пути сервлета. Отклонённый запрос завершается
+ * {@link ServiceOverloadedException} — ответ 503 с заголовком {@code Retry-After}.
+ * Для асинхронных запросов (потоковая пакетная выдача) место освобождается
+ * после завершения асинхронной обработки.
+ * </p>
+ * Отключается свойством {@code recommendation.admission.enabled=false}.
+ */
+@Component
+@Slf4j
+public class AdmissionControlInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String PERMIT_ATTRIBUTE = AdmissionControlInterceptor.class.getName() + ".permit";
+    private static final PathPattern RULE_PATH = PathPatternParser.defaultInstance.parse("/rule/**");
+    private static final PathPattern BATCH_PATH = PathPatternParser.defaultInstance.parse("/recommendation/batch");
+    private static final PathPattern EXPLAIN_PATH =
+            PathPatternParser.defaultInstance.parse("/recommendation/{user_id}/explain");
+
+    private final boolean enabled;
+    private final long retryAfterSeconds;
+    private final AdaptiveConcurrencyLimiter recommendationLimiter;
+    private final AdaptiveConcurrencyLimiter ruleLimiter;
+    private final AdaptiveConcurrencyLimiter bulkLimiter;
+
+    public AdmissionControlInterceptor(
+            MeterRegistry meterRegistry,
+            @Value("${recommendation.admission.enabled:true}") boolean enabled,
+            @Value("${recommendation.admission.latency-threshold:250ms}") Duration latencyThreshold,
+            @Value("${recommendation.admission.queue-timeout:50ms}") Duration queueTimeout,
+            @Value("${recommendation.admission.retry-after:1s}") Duration retryAfter,
+            @Value("${recommendation.admission.recommendation.initial-limit:10}") int recommendationInitialLimit,
+            @Value("${recommendation.admission.recommendation.max-limit:64}") int recommendationMaxLimit,
+            @Value("${recommendation.admission.recommendation.queue-size:20}") int recommendationQueueSize,
+            @Value("${recommendation.admission.rule.initial-limit:4}") int ruleInitialLimit,
+            @Value("${recommendation.admission.rule.max-limit:8}") int ruleMaxLimit,
+            @Value("${recommendation.admission.rule.queue-size:4}") int ruleQueueSize,
+            @Value("${recommendation.admission.bulk.initial-limit:2}") int bulkInitialLimit,
+            @Value("${recommendation.admission.bulk.max-limit:4}") int bulkMaxLimit,
+            @Value("${recommendation.admission.bulk.queue-size:4}") int bulkQueueSize,
+            @Value("${recommendation.admission.bulk.latency-threshold:30s}") Duration bulkLatencyThreshold) {
+        this.enabled = enabled;
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+        this.recommendationLimiter = new AdaptiveConcurrencyLimiter("recommendation",
+                recommendationInitialLimit, recommendationMaxLimit, recommendationQueueSize,
+                queueTimeout, latencyThreshold, meterRegistry);
+        this.ruleLimiter = new AdaptiveConcurrencyLimiter("rule",
+                ruleInitialLimit, ruleMaxLimit, ruleQueueSize,
+                queueTimeout, latencyThreshold, meterRegistry);
+        this.bulkLimiter = new AdaptiveConcurrencyLimiter("bulk",
+                bulkInitialLimit, bulkMaxLimit, bulkQueueSize,
+                queueTimeout, bulkLatencyThreshold, meterRegistry);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws InterruptedException {
+        if (!enabled || request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            return true;
+        }
+
+        AdaptiveConcurrencyLimiter limiter = limiterFor(request);
+        if (!limiter.tryAcquire()) {
+            log.warn("Rejecting {} {}: concurrency limit {} reached", request.getMethod(), request.getRequestURI(),
+                    limiter.getLimit());
+            throw new ServiceOverloadedException(retryAfterSeconds);
+        }
+
+        request.setAttribute(PERMIT_ATTRIBUTE, new Permit(limiter, System.nanoTime()));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        if (request.isAsyncStarted()) {
+            return;
+        }
+        if (request.getAttribute(PERMIT_ATTRIBUTE) instanceof Permit permit) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            boolean failed = ex != null || response.getStatus() >= 500;
+            permit.limiter().release(System.nanoTime() - permit.startedAt(), failed);
+        }
+    }
+
+    private AdaptiveConcurrencyLimiter limiterFor(HttpServletRequest request) {
+        PathContainer path = ServletRequestPathUtils.hasParsedRequestPath(request)
+                ? ServletRequestPathUtils.getParsedRequestPath(request).pathWithinApplication()
+                : ServletRequestPathUtils.parseAndCache(request).pathWithinApplication();
+        if (RULE_PATH.matches(path)) {
+            return ruleLimiter;
+        }
+        if (BATCH_PATH.matches(path) || EXPLAIN_PATH.matches(path)) {
+            return bulkLimiter;
+        }
+        return recommendationLimiter;
+    }
+
+    /**
+     * Допуск запроса: ограничитель, выдавший место, и момент допуска
+     */
+    private record Permit(AdaptiveConcurrencyLimiter limiter, long startedAt) {
+    }
+}
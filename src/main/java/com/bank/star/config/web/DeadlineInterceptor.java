@@ -0,0 +1,75 @@
+package com.bank.star.config.web;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.time.Duration;
+
+/**
+ * Устанавливает срок выполнения запроса рекомендаций.
+ * <p>
+ * Бюджет берётся из {@code recommendation.deadline.default-budget} и может быть
+ * переопределён заголовком {@value #TIMEOUT_HEADER} (в миллисекундах),
+ * но не больше {@code recommendation.deadline.max-budget}. Нулевой бюджет
+ * без заголовка означает отсутствие срока.
+ * </p>
+ */
+@Component
+@Slf4j
+public class DeadlineInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    private final Duration defaultBudget;
+    private final Duration maxBudget;
+
+    public DeadlineInterceptor(@Value("${recommendation.deadline.default-budget:0ms}") Duration defaultBudget,
+                               @Value("${recommendation.deadline.max-budget:10s}") Duration maxBudget) {
+        this.defaultBudget = defaultBudget;
+        this.maxBudget = maxBudget;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Duration budget = resolveBudget(request.getHeader(TIMEOUT_HEADER));
+        if (!budget.isZero()) {
+            RequestDeadline.start(budget);
+        }
+        return true;
+    }
+
+    /**
+     * При асинхронной обработке afterCompletion в исходном потоке не вызывается
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        RequestDeadline.clear();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        RequestDeadline.clear();
+    }
+
+    private Duration resolveBudget(String header) {
+        if (header == null || header.isBlank()) {
+            return defaultBudget;
+        }
+        try {
+            long millis = Long.parseLong(header.trim());
+            if (millis > 0) {
+                Duration requested = Duration.ofMillis(millis);
+                return requested.compareTo(maxBudget) > 0 ? maxBudget : requested;
+            }
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring malformed {} header: {}", TIMEOUT_HEADER, header);
+        }
+        return defaultBudget;
+    }
+}
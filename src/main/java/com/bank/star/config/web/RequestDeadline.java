@@ -0,0 +1,88 @@
+package com.bank.star.config.web;
+
+import com.bank.star.exception.DeadlineExceededException;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Срок выполнения текущего запроса.
+ * <p>
+ * Хранится в потоке обработки запроса как момент {@link System#nanoTime()}.
+ * Если срок не задан, ограничений нет. Для передачи срока задаче в другом потоке
+ * используется {@link #propagate(Supplier)}.
+ * </p>
+ */
+public final class RequestDeadline {
+
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private RequestDeadline() {
+    }
+
+    /**
+     * Устанавливает срок через {@code budget} от текущего момента
+     */
+    public static void start(Duration budget) {
+        DEADLINE.set(System.nanoTime() + budget.toNanos());
+    }
+
+    public static void clear() {
+        DEADLINE.remove();
+    }
+
+    public static boolean isSet() {
+        return DEADLINE.get() != null;
+    }
+
+    /**
+     * Оставшееся время в наносекундах; {@link Long#MAX_VALUE}, если срок не задан
+     */
+    public static long remainingNanos() {
+        Long deadline = DEADLINE.get();
+        return deadline == null ? Long.MAX_VALUE : deadline - System.nanoTime();
+    }
+
+    /**
+     * Таймаут JDBC-запроса в секундах с округлением вверх; 0, если срок не задан.
+     * JDBC принимает таймаут только в целых секундах, поэтому он ограничивает
+     * зависший запрос, а точную границу ответа держит вызывающий код.
+     *
+     * @throws DeadlineExceededException если срок уже истёк
+     */
+    public static int queryTimeoutSeconds() {
+        if (!isSet()) {
+            return 0;
+        }
+        long remaining = remainingNanos();
+        if (remaining <= 0) {
+            throw new DeadlineExceededException();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, (remaining + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+    }
+
+    /**
+     * Оборачивает задачу так, чтобы в другом потоке действовал срок текущего
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        Long deadline = DEADLINE.get();
+        if (deadline == null) {
+            return task;
+        }
+        return () -> {
+            Long previous = DEADLINE.get();
+            DEADLINE.set(deadline);
+            try {
+                return task.get();
+            } finally {
+                if (previous == null) {
+                    DEADLINE.remove();
+                } else {
+                    DEADLINE.set(previous);
+                }
+            }
+        };
+    }
+}
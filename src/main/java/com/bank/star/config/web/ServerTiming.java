@@ -0,0 +1,121 @@
+package com.bank.star.config.web;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Разбивка времени текущего запроса для заголовка {@value #HEADER}.
+ * <p>
+ * Хранится в потоке обработки запроса и включается только по отладочному флагу
+ * ({@link ServerTimingInterceptor}); без него все методы ничего не делают.
+ * Замеры с одинаковыми именем и описанием суммируются. Для передачи разбивки
+ * задаче в другом потоке используется {@link #propagate(Supplier)}.
+ * </p>
+ */
+public final class ServerTiming {
+
+    public static final String HEADER = "Server-Timing";
+
+    private static final ThreadLocal<Entries> ENTRIES = new ThreadLocal<>();
+
+    private ServerTiming() {
+    }
+
+    public static void start() {
+        ENTRIES.set(new Entries(System.nanoTime()));
+    }
+
+    public static void clear() {
+        ENTRIES.remove();
+    }
+
+    public static boolean isActive() {
+        return ENTRIES.get() != null;
+    }
+
+    /**
+     * Добавляет замер
+     *
+     * @param name        имя метрики (токен без пробелов)
+     * @param description уточнение, например идентификатор продукта; может отсутствовать
+     * @param nanos       длительность; отрицательное значение — отметка без длительности
+     */
+    public static void add(String name, String description, long nanos) {
+        Entries entries = ENTRIES.get();
+        if (entries != null) {
+            entries.add(name, description, nanos);
+        }
+    }
+
+    /**
+     * Значение заголовка; последним идёт {@code total} — время с начала запроса
+     */
+    public static String header() {
+        Entries entries = ENTRIES.get();
+        return entries == null ? "" : entries.format();
+    }
+
+    /**
+     * Оборачивает задачу так, чтобы её замеры попали в разбивку текущего запроса
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        Entries entries = ENTRIES.get();
+        if (entries == null) {
+            return task;
+        }
+        return () -> {
+            Entries previous = ENTRIES.get();
+            ENTRIES.set(entries);
+            try {
+                return task.get();
+            } finally {
+                if (previous == null) {
+                    ENTRIES.remove();
+                } else {
+                    ENTRIES.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Замеры запроса; пополняются и из задач в других потоках
+     */
+    private static final class Entries {
+        private final long startedAt;
+        private final Map<Key, Long> nanos = new LinkedHashMap<>();
+
+        private Entries(long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        synchronized void add(String name, String description, long duration) {
+            nanos.merge(new Key(name, description), duration,
+                    (a, b) -> a < 0 ? b : b < 0 ? a : a + b);
+        }
+
+        synchronized String format() {
+            StringBuilder header = new StringBuilder();
+            nanos.forEach((key, duration) -> {
+                header.append(key.name());
+                if (key.description() != null) {
+                    header.append(";desc=\"").append(key.description().replace("\"", "'")).append('"');
+                }
+                if (duration >= 0) {
+                    header.append(";dur=").append(millis(duration));
+                }
+                header.append(", ");
+            });
+            return header.append("total;dur=").append(millis(System.nanoTime() - startedAt)).toString();
+        }
+
+        private static String millis(long nanos) {
+            return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+        }
+    }
+
+    private record Key(String name, String description) {
+    }
+}
@@ -0,0 +1,44 @@
+package com.bank.star.config.web;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * Включает разбивку времени запроса ({@link ServerTiming}) по отладочному заголовку
+ * {@value #DEBUG_HEADER}. Без {@code recommendation.tracing.server-timing.enabled}
+ * заголовок игнорируется.
+ */
+@Component
+public class ServerTimingInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String DEBUG_HEADER = "X-Debug-Timing";
+
+    private final boolean enabled;
+
+    public ServerTimingInterceptor(@Value("${recommendation.tracing.server-timing.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (enabled && Boolean.parseBoolean(request.getHeader(DEBUG_HEADER))) {
+            ServerTiming.start();
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        ServerTiming.clear();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        ServerTiming.clear();
+    }
+}
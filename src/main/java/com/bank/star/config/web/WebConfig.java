@@ -0,0 +1,35 @@
+package com.bank.star.config.web;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Регистрация перехватчиков запросов.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
+
+    private final DeadlineInterceptor deadlineInterceptor;
+    private final AdmissionControlInterceptor admissionControlInterceptor;
+    private final ServerTimingInterceptor serverTimingInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // Срок устанавливается до допуска, чтобы ожидание в очереди входило в бюджет запроса
+        // Выгрузка и пробное вычисление правила идут минуты: они не ограничиваются сроком
+        // и не влияют на лимит допуска, а число одновременных выгрузок и пробных вычислений
+        // ограничено в их сервисах. Пакетная выдача и объяснение допускаются отдельным лимитом
+        registry.addInterceptor(deadlineInterceptor)
+                .addPathPatterns("/recommendation/**")
+                .excludePathPatterns("/recommendation/export");
+        registry.addInterceptor(admissionControlInterceptor)
+                .addPathPatterns("/recommendation/**", "/rule/**")
+                .excludePathPatterns("/recommendation/export", "/rule/backtest");
+        registry.addInterceptor(serverTimingInterceptor)
+                .addPathPatterns("/recommendation/**")
+                .excludePathPatterns("/recommendation/export");
+    }
+}
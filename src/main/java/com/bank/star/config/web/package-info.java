@@ -0,0 +1,4 @@
+/**
+ * Конфигурация веб-слоя: перехватчики, срок выполнения запроса и разбивка его времени.
+ */
+package com.bank.star.config.web;
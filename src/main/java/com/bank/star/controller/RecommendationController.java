@@ -1,19 +1,43 @@
 package com.bank.star.controller;
 
+import com.bank.star.dto.RecommendationExplainResponseDTO;
 import com.bank.star.dto.ResponseDTO;
+import com.bank.star.service.RecommendationExportService;
+import com.bank.star.service.RecommendationExportService.ExportPermit;
 import com.bank.star.service.RecommendationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 
 /**
  * REST-контроллер для работы с банковскими рекомендациями.
@@ -25,10 +49,23 @@ public class RecommendationController {
 
     private static final Logger log = LoggerFactory.getLogger(RecommendationController.class);
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final MediaType GZIP = MediaType.parseMediaType("application/gzip");
+    private static final String EXPORT_INTERCEPTOR = RecommendationController.class.getName() + ".export";
+
     private final RecommendationService recommendationService;
+    private final RecommendationExportService recommendationExportService;
+    private final ObjectMapper objectMapper;
+    private final Duration exportTimeout;
 
-    public RecommendationController(RecommendationService recommendationService) {
+    public RecommendationController(RecommendationService recommendationService,
+                                    RecommendationExportService recommendationExportService,
+                                    ObjectMapper objectMapper,
+                                    @Value("${recommendation.export.timeout:2h}") Duration exportTimeout) {
         this.recommendationService = recommendationService;
+        this.recommendationExportService = recommendationExportService;
+        this.objectMapper = objectMapper;
+        this.exportTimeout = exportTimeout;
     }
 
     /**
@@ -50,4 +87,118 @@ public class RecommendationController {
         log.info("Received recommendation request for user_id: {}", userId);
         return recommendationService.getRecommendationsResponse(userId);
     }
+
+    /**
+     * Возвращает разбор вычисления рекомендаций для клиента.
+     */
+    @GetMapping("/recommendation/{user_id}/explain")
+    @Operation(summary = "Разобрать вычисление рекомендаций",
+            description = "Возвращает результат, источник данных и время вычисления каждого зашитого правила "
+                    + "и каждого условия динамических правил для указанного пользователя")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "400", description = "Неверный формат UUID пользователя"),
+            @ApiResponse(responseCode = "500", description = "Внутренняя ошибка сервера")
+    })
+    public RecommendationExplainResponseDTO explainRecommendations(
+            @Parameter(description = "Идентификатор пользователя в формате UUID",
+                    example = "cd515076-5d8a-44be-930e-8d4fcb79f42d")
+            @PathVariable("user_id") UUID userId) {
+
+        log.info("Received recommendation explain request for user_id: {}", userId);
+        return recommendationService.explain(userId);
+    }
+
+    /**
+     * Возвращает рекомендации для списка клиентов.
+     * Ответы отдаются потоком в виде JSON-массива в порядке входного списка.
+     */
+    @PostMapping("/recommendation/batch")
+    @Operation(summary = "Получить рекомендации для списка пользователей",
+            description = "Возвращает массив ответов рекомендательной системы для каждого переданного пользователя")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "400", description = "Неверный формат или слишком большой список UUID"),
+            @ApiResponse(responseCode = "500", description = "Внутренняя ошибка сервера")
+    })
+    public ResponseEntity<StreamingResponseBody> getBatchRecommendations(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "Список идентификаторов пользователей")
+            @RequestBody List<UUID> userIds) {
+
+        log.info("Received batch recommendation request for {} users", userIds.size());
+        recommendationService.validateBatch(userIds);
+
+        StreamingResponseBody body = out -> {
+            try (SequenceWriter writer = objectMapper.writer().writeValuesAsArray(out)) {
+                recommendationService.streamRecommendationsResponses(userIds, response -> {
+                    try {
+                        writer.write(response);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * Выгружает рекомендации всех клиентов в формате NDJSON.
+     * Выгрузка выполняется асинхронно со своим таймаутом {@code recommendation.export.timeout};
+     * если заняты все места для выгрузки, возвращается 503.
+     */
+    @GetMapping("/recommendation/export")
+    @Operation(summary = "Выгрузить рекомендации всех пользователей",
+            description = "Возвращает поток NDJSON: по одному ответу рекомендательной системы на строку")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "503", description = "Уже выполняется другая выгрузка"),
+            @ApiResponse(responseCode = "500", description = "Внутренняя ошибка сервера")
+    })
+    public ResponseEntity<StreamingResponseBody> exportRecommendations(
+            @Parameter(description = "Сжать выгрузку gzip")
+            @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+            HttpServletRequest request) {
+
+        log.info("Received recommendation export request, gzip={}", gzip);
+        ExportPermit permit = recommendationExportService.acquirePermit();
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(EXPORT_INTERCEPTOR,
+                exportInterceptor(permit));
+
+        StreamingResponseBody body = out -> {
+            try (permit) {
+                recommendationExportService.export(out, gzip);
+            }
+        };
+
+        String fileName = gzip ? "recommendations.ndjson.gz" : "recommendations.ndjson";
+        return ResponseEntity.ok()
+                .contentType(gzip ? GZIP : NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(fileName).build().toString())
+                .body(body);
+    }
+
+    /**
+     * Задаёт выгрузке собственный таймаут вместо общего таймаута асинхронных запросов
+     * и освобождает место, даже если выгрузка не началась (таймаут, обрыв соединения)
+     */
+    private CallableProcessingInterceptor exportInterceptor(ExportPermit permit) {
+        return new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest webRequest, Callable<T> task) {
+                if (webRequest instanceof AsyncWebRequest asyncWebRequest) {
+                    asyncWebRequest.setTimeout(exportTimeout.toMillis());
+                }
+            }
+
+            @Override
+            public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                permit.close();
+            }
+        };
+    }
 }
@@ -2,7 +2,11 @@ package com.bank.star.controller;
 
 import com.bank.star.dto.DynamicRuleRequestDTO;
 import com.bank.star.dto.DynamicRuleResponseDTO;
+import com.bank.star.dto.RuleBacktestResponseDTO;
+import com.bank.star.dto.RuleStatsResponseDTO;
 import com.bank.star.service.DynamicRuleService;
+import com.bank.star.service.RuleBacktestService;
+import com.bank.star.service.RuleStatsService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -26,9 +30,14 @@ public class RuleController {
     private static final Logger log = LoggerFactory.getLogger(RuleController.class);
 
     private final DynamicRuleService dynamicRuleService;
+    private final RuleBacktestService ruleBacktestService;
+    private final RuleStatsService ruleStatsService;
 
-    public RuleController(DynamicRuleService dynamicRuleService) {
+    public RuleController(DynamicRuleService dynamicRuleService, RuleBacktestService ruleBacktestService,
+                          RuleStatsService ruleStatsService) {
         this.dynamicRuleService = dynamicRuleService;
+        this.ruleBacktestService = ruleBacktestService;
+        this.ruleStatsService = ruleStatsService;
     }
 
     @PostMapping
@@ -41,6 +50,19 @@ public class RuleController {
         return dynamicRuleService.createRuleAndConvert(request);
     }
 
+    @PostMapping("/backtest")
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Проверить правило по всем клиентам без сохранения",
+            description = "Возвращает число клиентов, которым правило выдаст рекомендацию, и стоимость вычисления")
+    public RuleBacktestResponseDTO backtestRule(
+            @Valid @RequestBody DynamicRuleRequestDTO request,
+            @Parameter(description = "Сколько идентификаторов подходящих клиентов вернуть")
+            @RequestParam(value = "sample", defaultValue = "0") int sample) {
+
+        log.info("Backtesting dynamic rule for productId {}", request.getProductId());
+        return ruleBacktestService.backtest(request, sample);
+    }
+
     @GetMapping
     @ResponseStatus(HttpStatus.OK)
     @Operation(summary = "Получить все правила")
@@ -48,6 +70,14 @@ public class RuleController {
         return dynamicRuleService.getAllRulesResponse();
     }
 
+    @GetMapping("/stats")
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Получить статистику срабатывания правил",
+            description = "Возвращает, сколько раз каждый продукт был рекомендован клиентам")
+    public RuleStatsResponseDTO getRuleStats() {
+        return ruleStatsService.getStats();
+    }
+
     @DeleteMapping("/{product_id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @Operation(summary = "Удалить правило")
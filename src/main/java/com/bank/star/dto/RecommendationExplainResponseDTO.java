@@ -0,0 +1,136 @@
+package com.bank.star.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * DTO для разбора вычисления рекомендаций клиента
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "Разбор вычисления рекомендаций: результат и время каждого правила и условия")
+public class RecommendationExplainResponseDTO {
+
+    /**
+     * Откуда берётся результат
+     */
+    public enum Source {
+        RESPONSE_CACHE, PRECOMPUTED, PROFILE_CACHE, DATABASE
+    }
+
+    @Schema(description = "Идентификатор пользователя", example = "cd515076-5d8a-44be-930e-8d4fcb79f42d")
+    @JsonProperty("user_id")
+    private UUID userId;
+
+    @Schema(description = "Пользователь есть в базе транзакций; для неизвестного правила не вычисляются")
+    @JsonProperty("user_known")
+    private boolean userKnown;
+
+    @Schema(description = "Версия набора правил")
+    @JsonProperty("rule_set_version")
+    private String ruleSetVersion;
+
+    @Schema(description = "Откуда обычный запрос сейчас взял бы ответ: RESPONSE_CACHE, PRECOMPUTED или DATABASE")
+    @JsonProperty("served_from")
+    private Source servedFrom;
+
+    @Schema(description = "Откуда загружен профиль транзакций: PROFILE_CACHE или DATABASE")
+    @JsonProperty("profile_source")
+    private Source profileSource;
+
+    @Schema(description = "Время получения профиля транзакций, нс")
+    @JsonProperty("profile_elapsed_ns")
+    private long profileElapsedNs;
+
+    @Schema(description = "Зашитые наборы правил")
+    @JsonProperty("rule_sets")
+    private List<RuleExplainDTO> ruleSets;
+
+    @Schema(description = "Динамические правила с результатом каждого условия")
+    @JsonProperty("dynamic_rules")
+    private List<RuleExplainDTO> dynamicRules;
+
+    @Schema(description = "Итоговые рекомендации")
+    private List<RecommendationDTO> recommendations;
+
+    @Schema(description = "Общее время разбора, мс")
+    @JsonProperty("elapsed_ms")
+    private long elapsedMs;
+
+    /**
+     * DTO для результата одного правила
+     */
+    @Getter
+    @Builder
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Schema(description = "Результат правила продукта")
+    public static class RuleExplainDTO {
+
+        @Schema(description = "Идентификатор продукта", example = "ab138afb-f3ba-4a93-b74f-0fcee86d447f")
+        @JsonProperty("product_id")
+        private UUID productId;
+
+        @Schema(description = "Название продукта (только для динамических правил)")
+        @JsonProperty("product_name")
+        private String productName;
+
+        @Schema(description = "Правило сработало")
+        private boolean matched;
+
+        @Schema(description = "Откуда взяты данные для вычисления: PROFILE_CACHE или DATABASE")
+        private Source source;
+
+        @Schema(description = "Время вычисления правила, нс")
+        @JsonProperty("elapsed_ns")
+        private long elapsedNs;
+
+        @Schema(description = "Условия правила (только для динамических правил)")
+        private List<ConditionExplainDTO> conditions;
+    }
+
+    /**
+     * DTO для результата одного условия динамического правила
+     */
+    @Getter
+    @Builder
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Schema(description = "Результат условия динамического правила")
+    public static class ConditionExplainDTO {
+
+        @Schema(description = "Тип запроса", example = "USER_OF")
+        private String query;
+
+        @Schema(description = "Аргументы запроса")
+        private List<String> arguments;
+
+        @Schema(description = "Инвертировать результат запроса")
+        private boolean negate;
+
+        @Schema(description = "Результат запроса без учёта инвертирования")
+        @JsonProperty("query_result")
+        private boolean queryResult;
+
+        @Schema(description = "Итог условия с учётом инвертирования")
+        private boolean result;
+
+        @Schema(description = "Откуда взяты данные для вычисления: PROFILE_CACHE или DATABASE")
+        private Source source;
+
+        @Schema(description = "Время вычисления условия, нс")
+        @JsonProperty("elapsed_ns")
+        private long elapsedNs;
+    }
+}
@@ -14,6 +14,11 @@ public class ResponseDTO {
     private UUID userId;
     private List<RecommendationDTO> recommendations;
 
+    /**
+     * Рекомендации неполные: часть правил не успела выполниться в срок запроса
+     */
+    private boolean partial;
+
     public ResponseDTO() {
         // пустой конструктор
     }
@@ -23,6 +28,12 @@ public class ResponseDTO {
         this.recommendations = recommendations;
     }
 
+    public ResponseDTO(UUID userId, List<RecommendationDTO> recommendations, boolean partial) {
+        this.userId = userId;
+        this.recommendations = recommendations;
+        this.partial = partial;
+    }
+
     public UUID getUserId() {
         return userId;
     }
@@ -38,4 +49,12 @@ public class ResponseDTO {
     public void setRecommendations(List<RecommendationDTO> recommendations) {
         this.recommendations = recommendations;
     }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
 }
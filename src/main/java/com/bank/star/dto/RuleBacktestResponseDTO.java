@@ -0,0 +1,43 @@
+package com.bank.star.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * DTO для ответа пробного вычисления правила по всем клиентам
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "Результат пробного вычисления правила по всем клиентам")
+public class RuleBacktestResponseDTO {
+
+    @Schema(description = "Идентификатор продукта", example = "ab138afb-f3ba-4a93-b74f-0fcee86d447f")
+    @JsonProperty("product_id")
+    private UUID productId;
+
+    @Schema(description = "Количество клиентов, которым правило выдаст рекомендацию")
+    @JsonProperty("matched_users")
+    private long matchedUsers;
+
+    @Schema(description = "Случайная выборка идентификаторов подходящих клиентов")
+    @JsonProperty("sample_user_ids")
+    private List<UUID> sampleUserIds;
+
+    @Schema(description = "Условия правила, которых нет в опубликованных правилах: "
+            + "каждое добавляет вычисление к каждому запросу рекомендаций")
+    @JsonProperty("new_predicates")
+    private int newPredicates;
+
+    @Schema(description = "Время вычисления по всем клиентам, мс")
+    @JsonProperty("elapsed_ms")
+    private long elapsedMs;
+}
@@ -0,0 +1,40 @@
+package com.bank.star.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * DTO для ответа со статистикой срабатывания правил
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "Статистика срабатывания правил")
+public class RuleStatsResponseDTO {
+
+    @Schema(description = "Счётчики по продуктам")
+    private List<RuleStatDTO> stats;
+
+    /**
+     * DTO для счётчика одного продукта
+     */
+    @Getter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Schema(description = "Счётчик срабатывания правила продукта")
+    public static class RuleStatDTO {
+
+        @Schema(description = "Идентификатор продукта", example = "ab138afb-f3ba-4a93-b74f-0fcee86d447f")
+        @JsonProperty("product_id")
+        private UUID productId;
+
+        @Schema(description = "Сколько раз продукт был рекомендован")
+        private long count;
+    }
+}
@@ -0,0 +1,15 @@
+package com.bank.star.exception;
+
+/**
+ * Исключение при исчерпании срока выполнения запроса
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException() {
+        super("Истёк срок выполнения запроса");
+    }
+
+    public DeadlineExceededException(Throwable cause) {
+        super("Истёк срок выполнения запроса", cause);
+    }
+}
@@ -1,8 +1,10 @@
 package com.bank.star.exception;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
@@ -78,6 +80,38 @@ public class GlobalExceptionHandler {
         );
     }
 
+    /**
+     * Обработка исчерпания срока выполнения запроса
+     */
+    @ExceptionHandler(DeadlineExceededException.class)
+    public ResponseEntity<Map<String, Object>> handleDeadlineExceededException(DeadlineExceededException ex) {
+        log.warn("Request deadline exceeded");
+
+        return buildErrorResponse(
+                HttpStatus.GATEWAY_TIMEOUT,
+                "Превышено время ожидания",
+                ex.getMessage(),
+                null
+        );
+    }
+
+    /**
+     * Обработка отказа из-за перегрузки сервиса
+     */
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<Map<String, Object>> handleServiceOverloadedException(ServiceOverloadedException ex) {
+        ResponseEntity<Map<String, Object>> response = buildErrorResponse(
+                HttpStatus.SERVICE_UNAVAILABLE,
+                "Сервис перегружен",
+                ex.getMessage(),
+                null
+        );
+
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(response.getBody());
+    }
+
     /**
      * Обработка IllegalArgumentException
      */
@@ -116,6 +150,22 @@ public class GlobalExceptionHandler {
         );
     }
 
+    /**
+     * Обработка HttpMessageNotReadableException (например, невалидный JSON в теле запроса)
+     */
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<Map<String, Object>> handleHttpMessageNotReadableException(
+            HttpMessageNotReadableException ex) {
+        log.warn("Malformed request body: {}", ex.getMessage());
+
+        return buildErrorResponse(
+                HttpStatus.BAD_REQUEST,
+                "Неверное тело запроса",
+                "Тело запроса не удалось разобрать",
+                null
+        );
+    }
+
     /**
      * Общая обработка всех остальных исключений
      */
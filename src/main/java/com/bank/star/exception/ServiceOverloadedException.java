@@ -0,0 +1,18 @@
+package com.bank.star.exception;
+
+/**
+ * Исключение при отказе в обработке запроса из-за перегрузки
+ */
+public class ServiceOverloadedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public ServiceOverloadedException(long retryAfterSeconds) {
+        super("Сервис перегружен, повторите запрос позже");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,34 @@
+package com.bank.star.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Поиск в кэше профилей или готовых рекомендаций; при промахе кэша профилей
+ * длительность включает загрузку профиля. Попадание в кэш короче порога по умолчанию,
+ * поэтому пишутся в основном промахи с загрузкой из базы; все поиски видны при пороге 0.
+ */
+@Name("com.bank.star.CacheLookup")
+@Label("Cache Lookup")
+@Category({"BankStar", "Recommendation"})
+@Description("Поиск записи клиента в кэше")
+@Enabled(false)
+@Threshold("1 ms")
+@StackTrace(false)
+public class CacheLookupEvent extends Event {
+
+    @Label("Cache")
+    public String cache;
+
+    @Label("User ID Hash")
+    public int userIdHash;
+
+    @Label("From Cache")
+    public boolean fromCache;
+}
@@ -0,0 +1,37 @@
+package com.bank.star.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Вычисление атомарного условия динамического правила по профилю клиента.
+ * Проверка занимает доли микросекунды, поэтому с порогом по умолчанию пишутся только
+ * аномально медленные; чтобы увидеть все, порог снижают до 0 на время короткой записи.
+ */
+@Name("com.bank.star.ConditionEvaluation")
+@Label("Condition Evaluation")
+@Category({"BankStar", "Recommendation"})
+@Description("Вычисление условия динамического правила")
+@Enabled(false)
+@Threshold("100 us")
+@StackTrace(false)
+public class ConditionEvaluationEvent extends Event {
+
+    @Label("User ID Hash")
+    public int userIdHash;
+
+    @Label("Query Kind")
+    public String queryKind;
+
+    @Label("Product Type")
+    public String productType;
+
+    @Label("Result")
+    public boolean result;
+}
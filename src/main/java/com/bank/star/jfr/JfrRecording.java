@@ -0,0 +1,81 @@
+package com.bank.star.jfr;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Непрерывная запись JFR, запускаемая приложением.
+ * <p>
+ * Включается {@code recommendation.jfr.enabled}: стандартные настройки JDK {@code default}
+ * дополняются событиями из {@code jfr/bankstar.jfc}. Запись хранит последние
+ * {@code recommendation.jfr.max-age} (не больше {@code recommendation.jfr.max-size})
+ * и сбрасывается в {@code recommendation.jfr.file} при остановке приложения;
+ * в любой момент её можно выгрузить через {@code jcmd <pid> JFR.dump name=bankstar}.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "recommendation.jfr.enabled", havingValue = "true")
+@Slf4j
+public class JfrRecording {
+
+    private static final String SETTINGS = "jfr/bankstar.jfc";
+
+    @Value("${recommendation.jfr.max-age:1h}")
+    private Duration maxAge;
+
+    @Value("${recommendation.jfr.max-size:256MB}")
+    private DataSize maxSize;
+
+    @Value("${recommendation.jfr.file:bankstar.jfr}")
+    private Path file;
+
+    private Recording recording;
+
+    @PostConstruct
+    public void start() throws IOException, ParseException {
+        Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+        try (Reader reader = new InputStreamReader(new ClassPathResource(SETTINGS).getInputStream(),
+                StandardCharsets.UTF_8)) {
+            settings.putAll(Configuration.create(reader).getSettings());
+        }
+
+        recording = new Recording(settings);
+        recording.setName("bankstar");
+        recording.setToDisk(true);
+        recording.setMaxAge(maxAge);
+        recording.setMaxSize(maxSize.toBytes());
+        recording.setDestination(file);
+        recording.start();
+        log.info("Continuous JFR recording started: max age {}, dump file {}", maxAge, file.toAbsolutePath());
+    }
+
+    /**
+     * Останавливает запись; остановленная запись пишется в {@code recommendation.jfr.file}
+     */
+    @PreDestroy
+    public void stop() {
+        if (recording != null) {
+            recording.stop();
+            recording.close();
+            log.info("Continuous JFR recording written to {}", file.toAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.bank.star.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Запрос профилей транзакций к шарду; для пакетного запроса хеш клиента не заполняется
+ */
+@Name("com.bank.star.RepositoryQuery")
+@Label("Repository Query")
+@Category({"BankStar", "Recommendation"})
+@Description("SQL-запрос профилей транзакций")
+@Enabled(false)
+@Threshold("10 ms")
+public class RepositoryQueryEvent extends Event {
+
+    @Label("Statement")
+    public String statement;
+
+    @Label("Shard")
+    public String shard;
+
+    @Label("User ID Hash")
+    public int userIdHash;
+
+    @Label("Users")
+    public int users;
+}
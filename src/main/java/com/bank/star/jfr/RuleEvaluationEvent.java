@@ -0,0 +1,32 @@
+package com.bank.star.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Вычисление зашитого набора правил или матрицы динамических правил ({@code productId=dynamic})
+ */
+@Name("com.bank.star.RuleEvaluation")
+@Label("Rule Evaluation")
+@Category({"BankStar", "Recommendation"})
+@Description("Вычисление правила по профилю клиента")
+@Enabled(false)
+@Threshold("1 ms")
+@StackTrace(false)
+public class RuleEvaluationEvent extends Event {
+
+    @Label("User ID Hash")
+    public int userIdHash;
+
+    @Label("Product ID")
+    public String productId;
+
+    @Label("Matched Rules")
+    public int matchedRules;
+}
@@ -0,0 +1,11 @@
+/**
+ * События Java Flight Recorder для вычисления рекомендаций.
+ * <p>
+ * Все события по умолчанию выключены и не записываются даже в стандартных настройках
+ * {@code default}/{@code profile}. Настройки с порогами длительности лежат в
+ * {@code jfr/bankstar.jfc}: их можно передать JVM
+ * ({@code -XX:StartFlightRecording:settings=default,settings=<путь>/bankstar.jfc})
+ * или включить непрерывную запись из приложения ({@link com.bank.star.jfr.JfrRecording}).
+ * </p>
+ */
+package com.bank.star.jfr;
@@ -0,0 +1,50 @@
+package com.bank.star.model;
+
+/**
+ * Оператор сравнения, допустимый в условиях динамических правил
+ */
+public enum ComparisonOperator {
+    GREATER(">"),
+    LESS("<"),
+    EQUAL("="),
+    GREATER_OR_EQUAL(">="),
+    LESS_OR_EQUAL("<=");
+
+    private final String symbol;
+
+    ComparisonOperator(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Сравнивает два значения данным оператором
+     */
+    public boolean test(long left, long right) {
+        return switch (this) {
+            case GREATER -> left > right;
+            case LESS -> left < right;
+            case EQUAL -> left == right;
+            case GREATER_OR_EQUAL -> left >= right;
+            case LESS_OR_EQUAL -> left <= right;
+        };
+    }
+
+    /**
+     * Находит оператор по его символьному представлению
+     *
+     * @param symbol символ оператора, например {@code ">="}
+     * @throws IllegalArgumentException если оператор не поддерживается
+     */
+    public static ComparisonOperator fromSymbol(String symbol) {
+        for (ComparisonOperator operator : values()) {
+            if (operator.symbol.equals(symbol)) {
+                return operator;
+            }
+        }
+        throw new IllegalArgumentException("Неподдерживаемый оператор сравнения: " + symbol);
+    }
+}
@@ -0,0 +1,11 @@
+package com.bank.star.model;
+
+/**
+ * Тип банковского продукта (столбец PRODUCTS.TYPE)
+ */
+public enum ProductType {
+    DEBIT,
+    SAVING,
+    INVEST,
+    CREDIT
+}
@@ -0,0 +1,9 @@
+package com.bank.star.model;
+
+/**
+ * Тип транзакции (столбец TRANSACTIONS.TYPE)
+ */
+public enum TransactionType {
+    DEPOSIT,
+    WITHDRAW
+}
@@ -0,0 +1,116 @@
+package com.bank.star.model;
+
+import java.util.UUID;
+
+/**
+ * Агрегированный профиль транзакций клиента.
+ * <p>
+ * Содержит признак существования клиента, а также количество и сумму
+ * транзакций для каждой пары «тип продукта × тип транзакции».
+ * Строится одним группирующим запросом и позволяет вычислять
+ * все правила в памяти без дополнительных обращений к базе.
+ * </p>
+ */
+public final class UserTransactionProfile {
+
+    private static final int TRANSACTION_TYPES = TransactionType.values().length;
+    private static final int CELLS = ProductType.values().length * TRANSACTION_TYPES;
+
+    private final UUID userId;
+    private final boolean userExists;
+    private final long[] counts;
+    private final long[] sums;
+
+    private UserTransactionProfile(UUID userId, boolean userExists, long[] counts, long[] sums) {
+        this.userId = userId;
+        this.userExists = userExists;
+        this.counts = counts;
+        this.sums = sums;
+    }
+
+    /**
+     * Профиль клиента, которого нет в базе
+     */
+    public static UserTransactionProfile unknown(UUID userId) {
+        return new UserTransactionProfile(userId, false, new long[CELLS], new long[CELLS]);
+    }
+
+    public static Builder builder(UUID userId) {
+        return new Builder(userId);
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public boolean isUserExists() {
+        return userExists;
+    }
+
+    /**
+     * Количество транзакций по продукту данного типа
+     */
+    public long count(ProductType productType) {
+        long total = 0;
+        for (TransactionType transactionType : TransactionType.values()) {
+            total += counts[index(productType, transactionType)];
+        }
+        return total;
+    }
+
+    public long count(ProductType productType, TransactionType transactionType) {
+        return counts[index(productType, transactionType)];
+    }
+
+    public long sum(ProductType productType, TransactionType transactionType) {
+        return sums[index(productType, transactionType)];
+    }
+
+    /**
+     * Есть ли у клиента хотя бы одна транзакция по продукту данного типа
+     */
+    public boolean uses(ProductType productType) {
+        return count(productType) > 0;
+    }
+
+    /**
+     * Разница между суммой пополнений и суммой трат по продукту
+     */
+    public long balance(ProductType productType) {
+        return sum(productType, TransactionType.DEPOSIT) - sum(productType, TransactionType.WITHDRAW);
+    }
+
+    private static int index(ProductType productType, TransactionType transactionType) {
+        return productType.ordinal() * TRANSACTION_TYPES + transactionType.ordinal();
+    }
+
+    /**
+     * Построитель профиля по строкам группирующего запроса
+     */
+    public static final class Builder {
+        private final UUID userId;
+        private final long[] counts = new long[CELLS];
+        private final long[] sums = new long[CELLS];
+        private boolean userExists;
+
+        private Builder(UUID userId) {
+            this.userId = userId;
+        }
+
+        public Builder userExists(boolean userExists) {
+            this.userExists = userExists;
+            return this;
+        }
+
+        public Builder add(ProductType productType, TransactionType transactionType, long count, long sum) {
+            int index = index(productType, transactionType);
+            counts[index] += count;
+            sums[index] += sum;
+            return this;
+        }
+
+        public UserTransactionProfile build() {
+            return new UserTransactionProfile(userId, userExists, counts.clone(), sums.clone());
+        }
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * Доменная модель транзакционных данных клиента.
+ * <p>
+ * Содержит типы продуктов и транзакций, операторы сравнения
+ * и агрегированный профиль клиента, по которому вычисляются правила.
+ * </p>
+ */
+package com.bank.star.model;
@@ -0,0 +1,313 @@
+package com.bank.star.repository;
+
+import com.bank.star.exception.DatabaseQueryException;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.model.UserTransactionProfile;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Колоночное хранилище транзакций в памяти.
+ * <p>
+ * База транзакций доступна только для чтения, поэтому при старте она один раз
+ * читается потоком и раскладывается в примитивные массивы, отсортированные по клиенту:
+ * порядковый номер типа продукта, порядковый номер типа транзакции и сумма.
+ * Идентификаторы клиентов хранятся парами long, для каждого клиента известно
+ * смещение его транзакций. Профили строятся из массивов без обращений к JDBC.
+ * </p>
+ * При шардировании в память загружаются все шарды. Клиент и его транзакции берутся
+ * только с шарда, которому клиент принадлежит по {@link ShardRouter}, как и при чтении
+ * профиля через SQL: копии, оставшиеся на других шардах после перераспределения слотов,
+ * пропускаются и не дублируют клиента.
+ * Включается свойством {@code recommendation.backend=columnar}.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "recommendation.backend", havingValue = "columnar")
+public class ColumnarTransactionStore implements TransactionProfileSource {
+    private static final Logger logger = LoggerFactory.getLogger(ColumnarTransactionStore.class);
+
+    private static final ProductType[] PRODUCT_TYPES = ProductType.values();
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+    private static final int FETCH_SIZE = 10_000;
+
+    /**
+     * Все клиенты: зарегистрированные и встречающиеся только в транзакциях
+     */
+    private static final String USERS_SQL = """
+            SELECT u.id AS user_id, TRUE AS registered FROM public.users u
+            UNION ALL
+            SELECT DISTINCT t.USER_ID, FALSE FROM TRANSACTIONS t
+            WHERE NOT EXISTS (SELECT 1 FROM public.users u WHERE u.id = t.USER_ID)
+            """;
+
+    private static final String TRANSACTIONS_SQL = """
+            SELECT t.USER_ID AS user_id, p.TYPE AS product_type, t.TYPE AS transaction_type, t.AMOUNT AS amount
+            FROM TRANSACTIONS t JOIN PRODUCTS p ON t.PRODUCT_ID = p.ID
+            """;
+
+    private static final Comparator<UUID> USER_ORDER = Comparator
+            .comparingLong(UUID::getMostSignificantBits)
+            .thenComparingLong(UUID::getLeastSignificantBits);
+
+    private final ShardRouter shardRouter;
+    private final List<JdbcTemplate> shardTemplates;
+
+    private volatile Columns columns;
+
+    public ColumnarTransactionStore(ShardRouter transactionShardRouter) {
+        this.shardRouter = transactionShardRouter;
+        this.shardTemplates = transactionShardRouter.streamingTemplates(FETCH_SIZE);
+    }
+
+    /**
+     * Загружает базу транзакций в колоночные массивы
+     */
+    @PostConstruct
+    public void load() {
+        long startedAt = System.nanoTime();
+        try {
+            Columns loaded = readColumns();
+            this.columns = loaded;
+            logger.info("Columnar transaction store loaded: {} users, {} transactions in {} ms",
+                    loaded.userCount(), loaded.amounts.length, (System.nanoTime() - startedAt) / 1_000_000);
+
+        } catch (DataAccessException e) {
+            logger.error("Error loading columnar transaction store", e);
+            throw new DatabaseQueryException("Ошибка при загрузке транзакций в память", e);
+        }
+    }
+
+    @Override
+    public UserTransactionProfile findUserTransactionProfile(UUID userId) {
+        return columns.profile(userId);
+    }
+
+    @Override
+    public Map<UUID, UserTransactionProfile> findUserTransactionProfiles(Collection<UUID> userIds) {
+        Columns snapshot = columns;
+        Map<UUID, UserTransactionProfile> profiles = new LinkedHashMap<>();
+        for (UUID userId : userIds) {
+            profiles.computeIfAbsent(userId, snapshot::profile);
+        }
+        return profiles;
+    }
+
+    private Columns readColumns() {
+        List<UUID> userIds = new ArrayList<>();
+        Set<UUID> unregistered = new HashSet<>();
+        long[] foreignUsers = new long[1];
+        for (int shard = 0; shard < shardTemplates.size(); shard++) {
+            int owner = shard;
+            shardTemplates.get(shard).query(USERS_SQL, (RowCallbackHandler) rs -> {
+                UUID userId = rs.getObject("user_id", UUID.class);
+                if (shardRouter.shardIndexOf(userId) != owner) {
+                    foreignUsers[0]++;
+                    return;
+                }
+                userIds.add(userId);
+                if (!rs.getBoolean("registered")) {
+                    unregistered.add(userId);
+                }
+            });
+        }
+        if (foreignUsers[0] > 0) {
+            logger.warn("Skipped {} users found on a shard that does not own them", foreignUsers[0]);
+        }
+
+        UUID[] sortedUsers = userIds.toArray(UUID[]::new);
+        Arrays.sort(sortedUsers, USER_ORDER);
+
+        int userCount = sortedUsers.length;
+        long[] mostSigBits = new long[userCount];
+        long[] leastSigBits = new long[userCount];
+        BitSet registered = new BitSet(userCount);
+        for (int i = 0; i < userCount; i++) {
+            mostSigBits[i] = sortedUsers[i].getMostSignificantBits();
+            leastSigBits[i] = sortedUsers[i].getLeastSignificantBits();
+            registered.set(i, !unregistered.contains(sortedUsers[i]));
+        }
+
+        TransactionBuffer buffer = new TransactionBuffer();
+        for (int shard = 0; shard < shardTemplates.size(); shard++) {
+            shardTemplates.get(shard).query(TRANSACTIONS_SQL,
+                    transactionHandler(shard, buffer, mostSigBits, leastSigBits));
+        }
+
+        return buffer.toColumns(mostSigBits, leastSigBits, registered);
+    }
+
+    /**
+     * Раскладывает транзакции клиентов шарда {@code owner} в буфер; транзакции клиентов
+     * других шардов пропускаются
+     */
+    private RowCallbackHandler transactionHandler(int owner, TransactionBuffer buffer, long[] mostSigBits,
+                                                  long[] leastSigBits) {
+        return rs -> {
+            UUID userId = rs.getObject("user_id", UUID.class);
+            if (shardRouter.shardIndexOf(userId) != owner) {
+                return;
+            }
+            int user = indexOf(mostSigBits, leastSigBits,
+                    userId.getMostSignificantBits(), userId.getLeastSignificantBits());
+            if (user < 0) {
+                logger.warn("Skipping transaction of unknown User {}", userId);
+                return;
+            }
+            String productType = rs.getString("product_type");
+            String transactionType = rs.getString("transaction_type");
+            if (productType == null || transactionType == null) {
+                logger.warn("Skipping transaction without product/transaction type: {}/{}", productType,
+                        transactionType);
+                return;
+            }
+            try {
+                buffer.add(user, ProductType.valueOf(productType), TransactionType.valueOf(transactionType),
+                        rs.getLong("amount"));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Skipping unknown product/transaction type: {}/{}", productType, transactionType);
+            }
+        };
+    }
+
+    /**
+     * Бинарный поиск клиента в отсортированных массивах старших и младших битов UUID
+     */
+    private static int indexOf(long[] mostSigBits, long[] leastSigBits, long msb, long lsb) {
+        int low = 0;
+        int high = mostSigBits.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compare(mostSigBits[mid], msb);
+            if (cmp == 0) {
+                cmp = Long.compare(leastSigBits[mid], lsb);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Неизменяемые колоночные массивы; транзакции клиента {@code i}
+     * лежат в диапазоне {@code [offsets[i], offsets[i + 1])}
+     */
+    private static final class Columns {
+        private final long[] mostSigBits;
+        private final long[] leastSigBits;
+        private final BitSet registered;
+        private final int[] offsets;
+        private final byte[] productTypes;
+        private final byte[] transactionTypes;
+        private final long[] amounts;
+
+        private Columns(long[] mostSigBits, long[] leastSigBits, BitSet registered, int[] offsets,
+                        byte[] productTypes, byte[] transactionTypes, long[] amounts) {
+            this.mostSigBits = mostSigBits;
+            this.leastSigBits = leastSigBits;
+            this.registered = registered;
+            this.offsets = offsets;
+            this.productTypes = productTypes;
+            this.transactionTypes = transactionTypes;
+            this.amounts = amounts;
+        }
+
+        int userCount() {
+            return mostSigBits.length;
+        }
+
+        UserTransactionProfile profile(UUID userId) {
+            int user = indexOf(mostSigBits, leastSigBits,
+                    userId.getMostSignificantBits(), userId.getLeastSignificantBits());
+            if (user < 0) {
+                return UserTransactionProfile.unknown(userId);
+            }
+
+            UserTransactionProfile.Builder builder = UserTransactionProfile.builder(userId)
+                    .userExists(registered.get(user));
+            for (int i = offsets[user]; i < offsets[user + 1]; i++) {
+                builder.add(PRODUCT_TYPES[productTypes[i]], TRANSACTION_TYPES[transactionTypes[i]], 1, amounts[i]);
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * Растущий буфер транзакций в порядке чтения из базы
+     */
+    private static final class TransactionBuffer {
+        private int size;
+        private int[] users = new int[1024];
+        private byte[] productTypes = new byte[1024];
+        private byte[] transactionTypes = new byte[1024];
+        private long[] amounts = new long[1024];
+
+        void add(int user, ProductType productType, TransactionType transactionType, long amount) {
+            if (size == users.length) {
+                int capacity = size * 2;
+                users = Arrays.copyOf(users, capacity);
+                productTypes = Arrays.copyOf(productTypes, capacity);
+                transactionTypes = Arrays.copyOf(transactionTypes, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+            }
+            users[size] = user;
+            productTypes[size] = (byte) productType.ordinal();
+            transactionTypes[size] = (byte) transactionType.ordinal();
+            amounts[size] = amount;
+            size++;
+        }
+
+        /**
+         * Раскладывает транзакции по клиентам сортировкой подсчётом
+         */
+        Columns toColumns(long[] mostSigBits, long[] leastSigBits, BitSet registered) {
+            int userCount = mostSigBits.length;
+            int[] offsets = new int[userCount + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[users[i] + 1]++;
+            }
+            for (int user = 0; user < userCount; user++) {
+                offsets[user + 1] += offsets[user];
+            }
+
+            int[] cursor = Arrays.copyOf(offsets, userCount);
+            byte[] sortedProductTypes = new byte[size];
+            byte[] sortedTransactionTypes = new byte[size];
+            long[] sortedAmounts = new long[size];
+            for (int i = 0; i < size; i++) {
+                int position = cursor[users[i]]++;
+                sortedProductTypes[position] = productTypes[i];
+                sortedTransactionTypes[position] = transactionTypes[i];
+                sortedAmounts[position] = amounts[i];
+            }
+
+            return new Columns(mostSigBits, leastSigBits, registered, offsets,
+                    sortedProductTypes, sortedTransactionTypes, sortedAmounts);
+        }
+    }
+}
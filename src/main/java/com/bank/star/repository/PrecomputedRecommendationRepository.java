@@ -0,0 +1,219 @@
+package com.bank.star.repository;
+
+import com.bank.star.config.web.RequestDeadline;
+import com.bank.star.dto.RecommendationDTO;
+import com.bank.star.exception.DatabaseQueryException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Предвычисленные рекомендации и контрольные точки пакетного задания в базе правил.
+ * <p>
+ * Рекомендации клиента хранятся одной строкой {@code user_recommendations} в виде JSON
+ * и помечены версией набора правил, по которому вычислены. Задание отмечает каждую
+ * завершённую партицию в {@code recommendation_job_partitions}, чтобы после сбоя
+ * продолжить с незавершённых.
+ * </p>
+ * Поиск записи клиента идёт в онлайн-запросе, поэтому ограничен таймаутом
+ * {@code recommendation.precomputed.query-timeout} и сроком запроса, если он задан.
+ */
+@Repository
+public class PrecomputedRecommendationRepository {
+    private static final Logger logger = LoggerFactory.getLogger(PrecomputedRecommendationRepository.class);
+
+    /**
+     * Ключ рекомендательной блокировки PostgreSQL, не дающей заданию выполняться на нескольких экземплярах
+     */
+    private static final long JOB_LOCK_KEY = 0x62616e6b_73746172L;
+
+    private static final TypeReference<List<RecommendationDTO>> RECOMMENDATIONS_TYPE = new TypeReference<>() {
+    };
+
+    private static final String FIND_SQL = """
+            SELECT recommendations
+            FROM user_recommendations
+            WHERE user_id = ? AND rule_set_version = ? AND computed_at > ?
+            """;
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO user_recommendations (user_id, rule_set_version, recommendations, computed_at)
+            VALUES (?, ?, CAST(? AS JSONB), CURRENT_TIMESTAMP)
+            ON CONFLICT (user_id) DO UPDATE
+            SET rule_set_version = EXCLUDED.rule_set_version,
+                recommendations = EXCLUDED.recommendations,
+                computed_at = EXCLUDED.computed_at
+            """;
+
+    private static final String LATEST_JOB_SQL = """
+            SELECT id, rule_set_version, partitions, status
+            FROM recommendation_jobs
+            ORDER BY id DESC
+            LIMIT 1
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final int findTimeoutSeconds;
+
+    public PrecomputedRecommendationRepository(@Qualifier("postgresDataSource") DataSource postgresDataSource,
+                                               ObjectMapper objectMapper,
+                                               @Value("${recommendation.precomputed.query-timeout:1s}")
+                                               Duration findTimeout) {
+        this.jdbcTemplate = new JdbcTemplate(postgresDataSource);
+        this.objectMapper = objectMapper;
+        this.findTimeoutSeconds = (int) Math.max(1, findTimeout.toSeconds());
+    }
+
+    /**
+     * Предвычисленные рекомендации клиента
+     *
+     * @param ruleSetVersion версия набора правил, по которой должна быть вычислена запись
+     * @param computedAfter  запись старше этого момента не используется
+     * @return рекомендации или пустой результат, если подходящей записи нет
+     * @throws com.bank.star.exception.DeadlineExceededException если срок запроса уже истёк
+     */
+    public Optional<List<RecommendationDTO>> find(UUID userId, String ruleSetVersion, LocalDateTime computedAfter) {
+        int deadlineTimeout = RequestDeadline.queryTimeoutSeconds();
+        int queryTimeout = deadlineTimeout > 0 ? Math.min(deadlineTimeout, findTimeoutSeconds) : findTimeoutSeconds;
+        try {
+            List<String> rows = jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement(FIND_SQL);
+                ps.setQueryTimeout(queryTimeout);
+                ps.setObject(1, userId);
+                ps.setString(2, ruleSetVersion);
+                ps.setTimestamp(3, Timestamp.valueOf(computedAfter));
+                return ps;
+            }, (rs, rowNum) -> rs.getString("recommendations"));
+            return rows.isEmpty() ? Optional.empty() : Optional.of(objectMapper.readValue(rows.get(0),
+                    RECOMMENDATIONS_TYPE));
+        } catch (DataAccessException | JsonProcessingException e) {
+            logger.error("Error reading precomputed recommendations for user: {}", userId, e);
+            throw new DatabaseQueryException("Ошибка при чтении предвычисленных рекомендаций", e);
+        }
+    }
+
+    /**
+     * Сохраняет рекомендации набора клиентов одним пакетом JDBC
+     */
+    public void saveAll(Map<UUID, List<RecommendationDTO>> recommendations, String ruleSetVersion) {
+        try {
+            List<Object[]> rows = new ArrayList<>(recommendations.size());
+            for (Map.Entry<UUID, List<RecommendationDTO>> entry : recommendations.entrySet()) {
+                rows.add(new Object[]{entry.getKey(), ruleSetVersion, objectMapper.writeValueAsString(entry.getValue())});
+            }
+            jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+        } catch (DataAccessException | JsonProcessingException e) {
+            logger.error("Error saving {} precomputed recommendations", recommendations.size(), e);
+            throw new DatabaseQueryException("Ошибка при сохранении предвычисленных рекомендаций", e);
+        }
+    }
+
+    /**
+     * Последнее незавершённое задание с той же версией правил и тем же числом партиций
+     */
+    public Optional<Long> findResumableJob(String ruleSetVersion, int partitions) {
+        List<Long> jobs = jdbcTemplate.query(LATEST_JOB_SQL, (rs, rowNum) -> resumableJobId(rs, ruleSetVersion,
+                partitions));
+        return jobs.stream().filter(Objects::nonNull).findFirst();
+    }
+
+    private static Long resumableJobId(ResultSet rs, String ruleSetVersion, int partitions) throws SQLException {
+        boolean resumable = !JobStatus.COMPLETED.name().equals(rs.getString("status"))
+                && ruleSetVersion.equals(rs.getString("rule_set_version"))
+                && rs.getInt("partitions") == partitions;
+        return resumable ? rs.getLong("id") : null;
+    }
+
+    public long createJob(String ruleSetVersion, int partitions) {
+        return jdbcTemplate.queryForObject(
+                "INSERT INTO recommendation_jobs (rule_set_version, partitions, status) VALUES (?, ?, ?) RETURNING id",
+                Long.class, ruleSetVersion, partitions, JobStatus.RUNNING.name());
+    }
+
+    public void updateJobStatus(long jobId, JobStatus status) {
+        jdbcTemplate.update("UPDATE recommendation_jobs SET status = ?, finished_at = "
+                        + (status == JobStatus.RUNNING ? "NULL" : "CURRENT_TIMESTAMP") + " WHERE id = ?",
+                status.name(), jobId);
+    }
+
+    /**
+     * Номера партиций задания, завершённых до сбоя
+     */
+    public Set<Integer> findCompletedPartitions(long jobId) {
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT partition_no FROM recommendation_job_partitions WHERE job_id = ?", Integer.class, jobId));
+    }
+
+    public void markPartitionCompleted(long jobId, int partition, long users) {
+        jdbcTemplate.update("""
+                INSERT INTO recommendation_job_partitions (job_id, partition_no, users)
+                VALUES (?, ?, ?)
+                ON CONFLICT (job_id, partition_no) DO NOTHING
+                """, jobId, partition, users);
+    }
+
+    /**
+     * Выполняет задание под сессионной рекомендательной блокировкой.
+     * Соединение с блокировкой удерживается до конца задания.
+     *
+     * @return false, если задание уже выполняется на другом экземпляре
+     */
+    public boolean runExclusively(Runnable job) {
+        Boolean executed = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            if (!advisoryLock(connection, "SELECT pg_try_advisory_lock(?)")) {
+                return false;
+            }
+            try {
+                job.run();
+                return true;
+            } finally {
+                advisoryLock(connection, "SELECT pg_advisory_unlock(?)");
+            }
+        });
+        return Boolean.TRUE.equals(executed);
+    }
+
+    private static boolean advisoryLock(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setLong(1, JOB_LOCK_KEY);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    /**
+     * Состояние пакетного задания
+     */
+    public enum JobStatus {
+        RUNNING,
+        FAILED,
+        COMPLETED
+    }
+}
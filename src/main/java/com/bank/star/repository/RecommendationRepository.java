@@ -1,227 +1,261 @@
 package com.bank.star.repository;
 
+import com.bank.star.config.tracing.RequestTracer;
+import com.bank.star.config.web.RequestDeadline;
 import com.bank.star.exception.DatabaseQueryException;
+import com.bank.star.exception.DeadlineExceededException;
+import com.bank.star.jfr.RepositoryQueryEvent;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.model.UserTransactionProfile;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.stereotype.Repository;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Репозиторий для выполнения SQL-запросов рекомендательной системы
+ * Репозиторий для выполнения SQL-запросов рекомендательной системы.
+ * <p>
+ * Набор SQL-текстов фиксирован: значения передаются только параметрами,
+ * а список клиентов — одним параметром-массивом. Поэтому каждый текст
+ * разбирается H2 один раз на соединение пула и далее берётся из кэша
+ * команд сессии ({@code QUERY_CACHE_SIZE}). Время подготовки и выполнения
+ * запросов публикуется метриками {@code bankstar.sql.prepare} и {@code bankstar.sql.execute}.
+ * Если у запроса задан срок ({@link RequestDeadline}), остаток передаётся
+ * в JDBC как таймаут запроса. Запрос направляется на шард клиента ({@link ShardRouter}),
+ * а внутри шарда — на наименее загруженную реплику с хеджированием медленных запросов.
+ * Каждый вызов замеряется {@link RequestTracer} как участок {@code sql.<запрос>},
+ * а запрос к шарду при включённой записи JFR пишется событием {@link RepositoryQueryEvent}.
+ * </p>
  */
 @Repository
-public class RecommendationRepository {
+public class RecommendationRepository implements TransactionProfileSource {
     private static final Logger logger = LoggerFactory.getLogger(RecommendationRepository.class);
 
-    private final JdbcTemplate jdbcTemplate;
+    /**
+     * Вид строки профиля: строка-признак существования клиента
+     */
+    private static final String USER_ROW = "U";
+
+    /**
+     * Первая строка (вида {@value #USER_ROW}) сообщает, существует ли клиент,
+     * остальные — количество и сумму транзакций по каждой паре типов. Вид строки задан
+     * явно, так как продукт с пустым типом даёт строку с тем же пустым {@code product_type}.
+     */
+    private static final String USER_TRANSACTION_PROFILE_SQL = """
+            SELECT 'U' AS row_kind, CAST(NULL AS VARCHAR) AS product_type, CAST(NULL AS VARCHAR) AS transaction_type,
+                   COUNT(*) AS tx_count, CAST(0 AS BIGINT) AS tx_sum
+            FROM public.users u WHERE u.id = ?
+            UNION ALL
+            SELECT 'T', p.TYPE, t.TYPE, COUNT(*), COALESCE(SUM(t.AMOUNT), 0)
+            FROM TRANSACTIONS t JOIN PRODUCTS p ON t.PRODUCT_ID = p.ID
+            WHERE t.USER_ID = ?
+            GROUP BY p.TYPE, t.TYPE
+            """;
+
+    /**
+     * Тот же профиль для набора клиентов: строки дополнительно содержат идентификатор клиента.
+     * Клиенты передаются массивом UUID, поэтому текст запроса не зависит от размера набора.
+     */
+    private static final String USER_TRANSACTION_PROFILES_SQL = """
+            SELECT u.id AS user_id, 'U' AS row_kind, CAST(NULL AS VARCHAR) AS product_type,
+                   CAST(NULL AS VARCHAR) AS transaction_type, CAST(1 AS BIGINT) AS tx_count, CAST(0 AS BIGINT) AS tx_sum
+            FROM public.users u WHERE u.id = ANY(?)
+            UNION ALL
+            SELECT t.USER_ID, 'T', p.TYPE, t.TYPE, COUNT(*), COALESCE(SUM(t.AMOUNT), 0)
+            FROM TRANSACTIONS t JOIN PRODUCTS p ON t.PRODUCT_ID = p.ID
+            WHERE t.USER_ID = ANY(?)
+            GROUP BY t.USER_ID, p.TYPE, t.TYPE
+            """;
+
+    private final ShardRouter shardRouter;
+    private final TimedStatement profileStatement;
+    private final TimedStatement profilesStatement;
+    private final RequestTracer requestTracer;
 
     @Autowired
 
-    public RecommendationRepository(JdbcTemplate jdbcTemplate) {
-        this.jdbcTemplate = jdbcTemplate;
+    public RecommendationRepository(ShardRouter transactionShardRouter, MeterRegistry meterRegistry,
+                                    RequestTracer requestTracer) {
+        this.shardRouter = transactionShardRouter;
+        this.requestTracer = requestTracer;
+        this.profileStatement = new TimedStatement("profile", USER_TRANSACTION_PROFILE_SQL, meterRegistry);
+        this.profilesStatement = new TimedStatement("profiles", USER_TRANSACTION_PROFILES_SQL, meterRegistry);
     }
 
     /**
-     * Проверяет правила для продукта "Invest 500"
-     *
-     * @param userId идентификатор пользователя
-     * @return true если правило выполняется
+     * Загружает агрегированный профиль транзакций клиента за один запрос
      */
-    public boolean checkInvest500Rule(UUID userId) {
+    @Override
+    public UserTransactionProfile findUserTransactionProfile(UUID userId) {
+        return requestTracer.trace("sql." + profileStatement.name, null, () -> loadUserTransactionProfile(userId));
+    }
+
+    private UserTransactionProfile loadUserTransactionProfile(UUID userId) {
         try {
-            String sql = """
-                    SELECT EXISTS (SELECT 1 FROM public.users WHERE id = ?)
-                    AND EXISTS (SELECT 1 FROM TRANSACTIONS t JOIN PRODUCTS p ON t.PRODUCT_ID = p.ID WHERE t.USER_ID = ? AND p.TYPE = 'DEBIT')
-                    AND NOT EXISTS (SELECT 1 FROM TRANSACTIONS t JOIN PRODUCTS p ON t.PRODUCT_ID = p.ID WHERE t.USER_ID = ? AND p.TYPE = 'INVEST')
-                    AND COALESCE((SELECT SUM(t.AMOUNT) FROM TRANSACTIONS t JOIN PRODUCTS p ON t.PRODUCT_ID = p.ID WHERE t.USER_ID = ? AND p.TYPE = 'SAVING' AND t.TYPE = 'DEPOSIT'), 0) > ? AS result
-                    """;
-
-            Boolean result = jdbcTemplate.queryForObject(
-                    sql,
-                    Boolean.class,
-                    userId,
-                    userId,
-                    userId,
-                    userId,
-                    1000);
-            logger.debug("Invest500 rule check for User {}: {}", userId, result);
-            return Boolean.TRUE.equals(result);
+            UserTransactionProfile profile = query(shardRouter.shardFor(userId), profileStatement, userId, 1, rs -> {
+                UserTransactionProfile.Builder builder = UserTransactionProfile.builder(userId);
+                while (rs.next()) {
+                    appendRow(builder, rs);
+                }
+                return builder.build();
+            }, userId, userId);
 
+            logger.debug("Transaction profile loaded for User {}: exists={}", userId, profile.isUserExists());
+            return profile;
+
+        } catch (QueryTimeoutException e) {
+            logger.warn("Transaction profile query for User {} exceeded request deadline", userId);
+            throw new DeadlineExceededException(e);
         } catch (DataAccessException e) {
-            logger.error("Error checking Invest500 rule for User {}", userId, e);
+            logger.error("Error loading transaction profile for User {}", userId, e);
             throw new DatabaseQueryException(
-                    String.format("Ошибка при проверке правила Invest500 для пользователя %s", userId), e);
+                    String.format("Ошибка при загрузке профиля транзакций для пользователя %s", userId), e);
         }
     }
 
     /**
-     * Проверяет правило для продукта Top Saving
-     *
-     * @param userId идентификатор пользователя
-     * @return true если правило выполняется
+     * Загружает профили транзакций набора клиентов: по одному запросу на каждый затронутый шард,
+     * запросы к разным шардам выполняются параллельно
      */
-    public boolean checkTopSavingRule(UUID userId) {
-        try {
-            String sql = """
-                    SELECT (EXISTS (SELECT 1 FROM public.users u WHERE u.id = ?)
-                    AND EXISTS (SELECT 1 FROM TRANSACTIONS t JOIN PRODUCTS p ON t.PRODUCT_ID = p.ID WHERE t.USER_ID = ? AND p.TYPE = 'DEBIT')
-                    AND ((SELECT COALESCE(SUM(t.amount), 0) FROM TRANSACTIONS t JOIN PRODUCTS p ON p.id = t.product_id WHERE p.type = 'DEBIT' AND t.type = 'DEPOSIT' AND t.user_id = ?) >= ?
-                    OR (SELECT COALESCE(SUM(t.amount), 0) FROM TRANSACTIONS t JOIN PRODUCTS p ON p.id = t.product_id WHERE p.type = 'SAVING' AND t.type = 'DEPOSIT' AND t.user_id = ?) >= ?)
-                    AND (SELECT COALESCE(SUM(CASE WHEN t.type = 'DEPOSIT' THEN t.amount ELSE 0 END), 0) - COALESCE(SUM(CASE WHEN t.type = 'WITHDRAW' THEN t.amount ELSE 0 END), 0) FROM transactions t JOIN products p ON p.id = t.product_id WHERE p.type = 'DEBIT' AND t.user_id = ?) > 0) AS result
-                    """;
-
-            Boolean result = jdbcTemplate.queryForObject(
-                    sql,
-                    Boolean.class,
-                    userId,
-                    userId,
-                    userId,
-                    50000,
-                    userId,
-                    50000,
-                    userId
-            );
-            logger.debug("TopSaving rule check for User {}: {}", userId, result);
-            return Boolean.TRUE.equals(result);
-
-        } catch (DataAccessException e) {
-            logger.error("Error checking TopSaving rule for User {}", userId, e);
-            throw new DatabaseQueryException(
-                    String.format("Ошибка при проверке правила TopSaving для пользователя %s", userId), e);
+    @Override
+    public Map<UUID, UserTransactionProfile> findUserTransactionProfiles(Collection<UUID> userIds) {
+        if (userIds.isEmpty()) {
+            return Map.of();
         }
+        return requestTracer.trace("sql." + profilesStatement.name, null, () -> loadUserTransactionProfiles(userIds));
     }
 
-    /**
-     * Проверяет правило для продукта Простой кредит
-     *
-     * @param userId идентификатор пользователя
-     * @return true если правило выполняется
-     */
-    public boolean checkSimpleLoanRule(UUID userId) {
+    private Map<UUID, UserTransactionProfile> loadUserTransactionProfiles(Collection<UUID> userIds) {
         try {
-            String sql = """
-                    SELECT EXISTS (SELECT NULL FROM public.users u WHERE u.id = ?)
-                    AND NOT EXISTS (SELECT NULL FROM public.transactions t JOIN public.products p ON p.id = t.product_id WHERE p.TYPE = 'CREDIT' AND t.user_id = ?)
-                    AND 0 < (SELECT COALESCE(SUM(CASE t.TYPE WHEN 'DEPOSIT' THEN t.amount ELSE 0 END), 0) - COALESCE(SUM(CASE t.TYPE WHEN 'WITHDRAW' THEN t.amount ELSE 0 END), 0) FROM public.transactions t JOIN public.products p ON p.id = t.product_id WHERE p.TYPE = 'DEBIT' AND t.user_id = ?)
-                    AND ? < (SELECT COALESCE(SUM(t.amount), 0) FROM public.transactions t JOIN public.products p ON p.id = t.product_id WHERE p.TYPE = 'DEBIT' AND t.TYPE = 'WITHDRAW' AND t.user_id = ?) AS result
-                    """;
-
-            Boolean result = jdbcTemplate.queryForObject(
-                    sql,
-                    Boolean.class,
-                    userId,
-                    userId,
-                    userId,
-                    100000,
-                    userId
-            );
-            logger.debug("SimpleLoan rule check for User {}: {}", userId, result);
-            return Boolean.TRUE.equals(result);
+            List<UUID> distinctIds = userIds.stream().distinct().toList();
+            Map<UUID, UserTransactionProfile> profiles = shardRouter.queryPartitioned(distinctIds, this::queryProfiles);
 
+            logger.debug("Transaction profiles loaded for {} users", profiles.size());
+            return profiles;
+
+        } catch (QueryTimeoutException e) {
+            logger.warn("Transaction profiles query for {} users exceeded request deadline", userIds.size());
+            throw new DeadlineExceededException(e);
         } catch (DataAccessException e) {
-            logger.error("Error checking SimpleLoan rule for User {}", userId, e);
+            logger.error("Error loading transaction profiles for {} users", userIds.size(), e);
             throw new DatabaseQueryException(
-                    String.format("Ошибка при проверке правила SimpleLoan для пользователя %s", userId), e);
+                    String.format("Ошибка при загрузке профилей транзакций для %d пользователей", userIds.size()), e);
         }
     }
 
-    /**
-     * Проверка USER_OF запроса
-     */
-    public boolean checkUserOf(UUID userId, String productType) {
-        try {
-            String sql = """
-                SELECT EXISTS (
-                    SELECT 1 FROM TRANSACTIONS t 
-                    JOIN PRODUCTS p ON t.PRODUCT_ID = p.ID 
-                    WHERE t.USER_ID = ? AND p.TYPE = ?
-                ) AS result
-                """;
-
-            Boolean result = jdbcTemplate.queryForObject(sql, Boolean.class, userId, productType);
-            return Boolean.TRUE.equals(result);
-        } catch (DataAccessException e) {
-            logger.error("Error checking USER_OF query for User {} and productType {}", userId, productType, e);
-            throw new DatabaseQueryException(
-                    String.format("Ошибка при проверке USER_OF запроса для пользователя %s и типа продукта %s",
-                            userId, productType), e);
-        }
+    private Map<UUID, UserTransactionProfile> queryProfiles(ReplicaSet shard, List<UUID> userIds) {
+        UUID[] ids = userIds.toArray(UUID[]::new);
+        return query(shard, profilesStatement, null, ids.length, rs -> {
+            Map<UUID, UserTransactionProfile.Builder> builders = new LinkedHashMap<>();
+            for (UUID userId : ids) {
+                builders.put(userId, UserTransactionProfile.builder(userId));
+            }
+            while (rs.next()) {
+                appendRow(builders.get(rs.getObject("user_id", UUID.class)), rs);
+            }
+
+            Map<UUID, UserTransactionProfile> built = new LinkedHashMap<>();
+            builders.forEach((userId, builder) -> built.put(userId, builder.build()));
+            return built;
+        }, ids, ids);
     }
 
     /**
-     * Проверка ACTIVE_USER_OF запроса
+     * Выполняет фиксированный запрос на наборе реплик шарда, отдельно замеряя подготовку и выполнение.
+     * {@code extractor} собирает результат с нуля, так как при хеджировании может выполниться дважды.
+     *
+     * @param userId клиент запроса по одному клиенту, для события JFR; {@code null} для пакетного запроса
+     * @param users  число клиентов в запросе
      */
-    public boolean checkActiveUserOf(UUID userId, String productType) {
-        try {
-            String sql = """
-                    SELECT COUNT(*) >= 5 AS result
-                    FROM TRANSACTIONS t 
-                    JOIN PRODUCTS p ON t.PRODUCT_ID = p.ID 
-                    WHERE t.USER_ID = ? AND p.TYPE = ?
-                    """;
-
-            Boolean result = jdbcTemplate.queryForObject(sql, Boolean.class, userId, productType);
-            return Boolean.TRUE.equals(result);
-        } catch (DataAccessException e) {
-            logger.error("Error checking ACTIVE_USER_OF query for User {} and productType {}", userId, productType, e);
-            throw new DatabaseQueryException(
-                    String.format("Ошибка при проверке ACTIVE_USER_OF запроса для пользователя %s и типа продукта %s",
-                            userId, productType), e);
+    private <T> T query(ReplicaSet shard, TimedStatement statement, UUID userId, int users,
+                        ResultSetExtractor<T> extractor, Object... args) {
+        RepositoryQueryEvent event = new RepositoryQueryEvent();
+        event.begin();
+        int queryTimeout = RequestDeadline.queryTimeoutSeconds();
+        AtomicLong prepareNanos = new AtomicLong(-1);
+        long startedAt = System.nanoTime();
+        T result = shard.query(statement.name, con -> {
+            long prepareStartedAt = System.nanoTime();
+            PreparedStatement ps = con.prepareStatement(statement.sql);
+            prepareNanos.compareAndSet(-1, System.nanoTime() - prepareStartedAt);
+            new ArgumentPreparedStatementSetter(args).setValues(ps);
+            if (queryTimeout > 0) {
+                ps.setQueryTimeout(queryTimeout);
+            }
+            return ps;
+        }, extractor);
+
+        long prepared = Math.max(prepareNanos.get(), 0);
+        statement.prepareTimer.record(prepared, TimeUnit.NANOSECONDS);
+        statement.executeTimer.record(System.nanoTime() - startedAt - prepared, TimeUnit.NANOSECONDS);
+        if (event.shouldCommit()) {
+            event.statement = statement.name;
+            event.shard = shard.getName();
+            event.userIdHash = userId == null ? 0 : userId.hashCode();
+            event.users = users;
+            event.commit();
         }
+        return result;
     }
 
-    /**
-     * Проверка TRANSACTION_SUM_COMPARE запроса
-     */
-    public boolean checkTransactionSumCompare(UUID userId, String productType,
-                                              String transactionType, String operator,
-                                              int constant) {
+    private void appendRow(UserTransactionProfile.Builder builder, ResultSet rs) throws SQLException {
+        if (USER_ROW.equals(rs.getString("row_kind"))) {
+            builder.userExists(rs.getLong("tx_count") > 0);
+            return;
+        }
+
+        String productType = rs.getString("product_type");
+        String transactionType = rs.getString("transaction_type");
+        if (productType == null || transactionType == null) {
+            logger.warn("Skipping transactions without product/transaction type: {}/{}", productType, transactionType);
+            return;
+        }
         try {
-            String sql = String.format("""
-                    SELECT SUM(amount) %s ? AS result
-                    FROM TRANSACTIONS t 
-                    JOIN PRODUCTS p ON t.PRODUCT_ID = p.ID 
-                    WHERE t.USER_ID = ? AND p.TYPE = ? AND t.TYPE = ?
-                    """, operator);
-
-            Boolean result = jdbcTemplate.queryForObject(sql, Boolean.class, constant, userId, productType, transactionType);
-            return Boolean.TRUE.equals(result);
-        } catch (DataAccessException e) {
-            logger.error("Error checking TRANSACTION_SUM_COMPARE query for User {}: productType={}, transactionType={}, operator={}, constant={}",
-                    userId, productType, transactionType, operator, constant, e);
-            throw new DatabaseQueryException(
-                    String.format("Ошибка при проверке TRANSACTION_SUM_COMPARE запроса для пользователя %s", userId), e);
+            builder.add(ProductType.valueOf(productType), TransactionType.valueOf(transactionType),
+                    rs.getLong("tx_count"), rs.getLong("tx_sum"));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Skipping unknown product/transaction type: {}/{}", productType, transactionType);
         }
     }
 
     /**
-     * Проверка TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW запроса
+     * SQL-текст с таймерами подготовки и выполнения
      */
-    public boolean checkTransactionSumCompareDepositWithdraw(UUID userId, String productType, String operator) {
-        try {
-            String sql = String.format("""
-                    SELECT (SELECT COALESCE(SUM(amount), 0) 
-                            FROM TRANSACTIONS t 
-                            JOIN PRODUCTS p ON t.PRODUCT_ID = p.ID 
-                            WHERE t.USER_ID = ? AND p.TYPE = ? AND t.TYPE = 'DEPOSIT')
-                           %s
-                           (SELECT COALESCE(SUM(amount), 0) 
-                            FROM TRANSACTIONS t 
-                            JOIN PRODUCTS p ON t.PRODUCT_ID = p.ID 
-                            WHERE t.USER_ID = ? AND p.TYPE = ? AND t.TYPE = 'WITHDRAW') AS result
-                    """, operator);
-
-            Boolean result = jdbcTemplate.queryForObject(sql, Boolean.class, userId, productType, userId, productType);
-            return Boolean.TRUE.equals(result);
-        } catch (DataAccessException e) {
-            logger.error("Error checking TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW query for User {}: productType={}, operator={}",
-                    userId, productType, operator, e);
-            throw new DatabaseQueryException(
-                    String.format("Ошибка при проверке TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW запроса для пользователя %s", userId), e);
+    private static final class TimedStatement {
+        private final String name;
+        private final String sql;
+        private final Timer prepareTimer;
+        private final Timer executeTimer;
+
+        private TimedStatement(String name, String sql, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.sql = sql;
+            this.prepareTimer = Timer.builder("bankstar.sql.prepare")
+                                     .description("Время подготовки SQL-запроса")
+                                     .tag("statement", name)
+                                     .register(meterRegistry);
+            this.executeTimer = Timer.builder("bankstar.sql.execute")
+                                     .description("Время выполнения SQL-запроса и чтения результата")
+                                     .tag("statement", name)
+                                     .register(meterRegistry);
         }
     }
-}
\ No newline at end of file
+}
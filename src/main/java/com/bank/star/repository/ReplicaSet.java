@@ -0,0 +1,353 @@
+package com.bank.star.repository;
+
+import com.bank.star.config.web.RequestDeadline;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Набор реплик базы транзакций, доступной только для чтения.
+ * <p>
+ * Запрос направляется на наименее загруженную реплику (по числу выполняющихся запросов).
+ * Если реплик несколько и включено хеджирование, запрос, не завершившийся за
+ * {@code percentile} времени выполнения этого же запроса, повторяется на другой реплике;
+ * используется первый успешный ответ, а второй запрос отменяется: ещё не начавшаяся попытка
+ * не готовит и не выполняет запрос, а выполняющаяся прерывается через
+ * {@link java.sql.Statement#cancel()}. Ошибка первой попытки сразу переводит запрос
+ * на другую реплику.
+ * </p>
+ * Метрики с тегом {@code set}: датчик {@code bankstar.replica.in_flight} по каждой реплике,
+ * счётчики {@code bankstar.sql.hedge.attempts} и {@code bankstar.sql.hedge.wins} по запросам.
+ */
+public final class ReplicaSet implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaSet.class);
+
+    /**
+     * Минимум замеров, после которого задержка хеджирования считается по процентилю
+     */
+    private static final int MIN_SAMPLES = 32;
+
+    private final String name;
+    private final List<Replica> replicas;
+    private final boolean ownsPrimary;
+    private final boolean hedging;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, HedgeStatistics> statistics = new ConcurrentHashMap<>();
+    private final AtomicInteger rotation = new AtomicInteger();
+
+    /**
+     * @param dataSources реплики; первая считается основной
+     * @param ownsPrimary закрывать ли основной пул вместе с набором; остальные пулы закрываются всегда
+     */
+    public ReplicaSet(String name, List<DataSource> dataSources, boolean ownsPrimary, boolean hedging,
+                      double percentile, long minDelayNanos, MeterRegistry meterRegistry) {
+        if (dataSources.isEmpty()) {
+            throw new IllegalArgumentException("Набор реплик не может быть пустым");
+        }
+        this.name = name;
+        this.ownsPrimary = ownsPrimary;
+        this.hedging = hedging && dataSources.size() > 1;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelayNanos;
+        this.meterRegistry = meterRegistry;
+
+        List<Replica> list = new ArrayList<>();
+        int threads = 0;
+        for (int i = 0; i < dataSources.size(); i++) {
+            DataSource dataSource = dataSources.get(i);
+            Replica replica = new Replica(i, dataSource, new JdbcTemplate(dataSource), new AtomicInteger());
+            list.add(replica);
+            threads += dataSource instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize() : 10;
+            Gauge.builder("bankstar.replica.in_flight", replica.inFlight(), AtomicInteger::get)
+                 .description("Запросы, выполняющиеся на реплике")
+                 .tag("set", name)
+                 .tag("replica", String.valueOf(i))
+                 .register(meterRegistry);
+        }
+        this.replicas = List.copyOf(list);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = this.hedging
+                ? new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                        runnable -> {
+                            Thread thread = new Thread(runnable, name + "-hedge-" + threadNumber.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        },
+                        new ThreadPoolExecutor.CallerRunsPolicy())
+                : null;
+
+        logger.info("Replica set {}: {} replicas, hedging={}", name, replicas.size(), this.hedging);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Основной пул набора: для потоковых выгрузок, которым не нужно хеджирование
+     */
+    public DataSource primaryDataSource() {
+        return replicas.get(0).dataSource();
+    }
+
+    /**
+     * Выполняет запрос на наименее загруженной реплике, при необходимости хеджируя его.
+     * {@code extractor} должен собирать результат в собственное состояние,
+     * так как при хеджировании выполняется дважды.
+     */
+    public <T> T query(String statement, PreparedStatementCreator creator, ResultSetExtractor<T> extractor) {
+        HedgeStatistics stats = statistics.computeIfAbsent(statement, this::newStatistics);
+        if (!hedging) {
+            Replica replica = leastLoaded(null);
+            return run(replica, creator, extractor, stats, new Cancellation());
+        }
+
+        Attempt<T> first = start(leastLoaded(null), creator, extractor, stats);
+        try {
+            return first.future().get(stats.delayNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            logger.debug("Hedging {} query after {} us", statement, stats.delayNanos() / 1_000);
+        } catch (ExecutionException e) {
+            logger.warn("Query {} failed on replica {}, retrying on another replica", statement,
+                    first.replica().index(), e.getCause());
+        } catch (InterruptedException e) {
+            first.cancel();
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Ожидание результата прервано");
+        }
+
+        stats.attempts().increment();
+        Attempt<T> second = start(leastLoaded(first.replica()), creator, extractor, stats);
+        Attempt<T> winner = firstSuccessful(first, second);
+        if (winner == second) {
+            stats.wins().increment();
+        }
+        return winner.future().join();
+    }
+
+    private <T> Attempt<T> start(Replica replica, PreparedStatementCreator creator, ResultSetExtractor<T> extractor,
+                                 HedgeStatistics stats) {
+        Cancellation cancellation = new Cancellation();
+        Supplier<T> task = RequestDeadline.propagate(() -> run(replica, creator, extractor, stats, cancellation));
+        return new Attempt<>(replica, cancellation, CompletableFuture.supplyAsync(task, executor));
+    }
+
+    /**
+     * Выполняет запрос на реплике. Отмена проверяется перед подготовкой запроса
+     * и непосредственно перед его выполнением; выполняющийся запрос отменяет {@link Cancellation}.
+     */
+    private <T> T run(Replica replica, PreparedStatementCreator creator, ResultSetExtractor<T> extractor,
+                      HedgeStatistics stats, Cancellation cancellation) {
+        cancellation.check();
+        replica.inFlight().incrementAndGet();
+        long startedAt = System.nanoTime();
+        try {
+            T result = replica.jdbcTemplate().query(con -> {
+                cancellation.check();
+                PreparedStatement ps = creator.createPreparedStatement(con);
+                cancellation.statement = ps;
+                return ps;
+            }, ps -> cancellation.check(), extractor);
+            stats.record(System.nanoTime() - startedAt);
+            return result;
+        } finally {
+            replica.inFlight().decrementAndGet();
+        }
+    }
+
+    /**
+     * Ждёт первую успешную попытку и отменяет оставшуюся.
+     * Если обе попытки неудачны, пробрасывает ошибку последней.
+     */
+    private <T> Attempt<T> firstSuccessful(Attempt<T> first, Attempt<T> second) {
+        CompletableFuture<Attempt<T>> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (Attempt<T> attempt : List.of(first, second)) {
+            attempt.future().whenComplete((result, error) -> {
+                if (error == null) {
+                    winner.complete(attempt);
+                } else if (failures.incrementAndGet() == 2) {
+                    winner.completeExceptionally(error);
+                }
+            });
+        }
+
+        try {
+            Attempt<T> result = winner.get();
+            (result == first ? second : first).cancel();
+            return result;
+        } catch (InterruptedException e) {
+            first.cancel();
+            second.cancel();
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Ожидание результата прервано");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Наименее загруженная реплика; при равенстве — по кругу, чтобы нагрузка распределялась
+     */
+    private Replica leastLoaded(Replica excluded) {
+        int start = Math.floorMod(rotation.getAndIncrement(), replicas.size());
+        Replica best = null;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica candidate = replicas.get((start + i) % replicas.size());
+            if (candidate != excluded && (best == null || candidate.inFlight().get() < best.inFlight().get())) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private HedgeStatistics newStatistics(String statement) {
+        return new HedgeStatistics(percentile, minDelayNanos,
+                Counter.builder("bankstar.sql.hedge.attempts")
+                       .description("Повторные (хеджирующие) попытки запроса")
+                       .tag("set", name)
+                       .tag("statement", statement)
+                       .register(meterRegistry),
+                Counter.builder("bankstar.sql.hedge.wins")
+                       .description("Хеджирующие попытки, ответившие первыми")
+                       .tag("set", name)
+                       .tag("statement", statement)
+                       .register(meterRegistry));
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        for (Replica replica : replicas.subList(ownsPrimary ? 0 : 1, replicas.size())) {
+            if (replica.dataSource() instanceof HikariDataSource hikari) {
+                hikari.close();
+            }
+        }
+    }
+
+    private record Replica(int index, DataSource dataSource, JdbcTemplate jdbcTemplate, AtomicInteger inFlight) {
+    }
+
+    private record Attempt<T>(Replica replica, Cancellation cancellation, CompletableFuture<T> future) {
+
+        /**
+         * {@link CompletableFuture#cancel(boolean)} не прерывает задачу, поэтому она
+         * останавливается по флагу отмены или отменой выполняющегося запроса
+         */
+        void cancel() {
+            future.cancel(false);
+            cancellation.cancel(replica);
+        }
+    }
+
+    /**
+     * Отмена одной попытки; задача попытки проверяет флаг и публикует подготовленный запрос
+     */
+    private static final class Cancellation {
+        private volatile boolean cancelled;
+        private volatile PreparedStatement statement;
+
+        void check() {
+            if (cancelled) {
+                throw new CancellationException("Попытка запроса отменена");
+            }
+        }
+
+        void cancel(Replica replica) {
+            cancelled = true;
+            PreparedStatement ps = statement;
+            if (ps != null) {
+                try {
+                    ps.cancel();
+                } catch (SQLException e) {
+                    logger.debug("Failed to cancel hedged query on replica {}", replica.index(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Скользящее окно времени выполнения запроса и вычисленная по нему задержка хеджирования
+     */
+    private static final class HedgeStatistics {
+        private final double percentile;
+        private final long minDelayNanos;
+        private final Counter attempts;
+        private final Counter wins;
+        private final long[] samples = new long[256];
+        private int size;
+        private int next;
+        private int sinceUpdate;
+        private volatile long delayNanos = Long.MAX_VALUE;
+
+        private HedgeStatistics(double percentile, long minDelayNanos, Counter attempts, Counter wins) {
+            this.percentile = percentile;
+            this.minDelayNanos = minDelayNanos;
+            this.attempts = attempts;
+            this.wins = wins;
+        }
+
+        Counter attempts() {
+            return attempts;
+        }
+
+        Counter wins() {
+            return wins;
+        }
+
+        /**
+         * Задержка хеджирования; пока замеров мало, хеджирование не выполняется
+         */
+        long delayNanos() {
+            return delayNanos;
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+            if (size >= MIN_SAMPLES && ++sinceUpdate >= 16) {
+                sinceUpdate = 0;
+                long[] sorted = Arrays.copyOf(samples, size);
+                Arrays.sort(sorted);
+                int index = Math.max(0, (int) Math.ceil(percentile * size) - 1);
+                delayNanos = Math.max(minDelayNanos, sorted[index]);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.bank.star.repository;
+
+import com.bank.star.exception.DatabaseQueryException;
+import com.bank.star.model.TransactionType;
+import com.bank.star.service.rule.AtomicPredicate;
+import com.bank.star.service.rule.CompiledCondition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Проверка условий правила сразу по всем клиентам базы транзакций.
+ * <p>
+ * Условия компилируются в один запрос на шард: транзакции агрегируются по клиенту
+ * только в нужных правилу разрезах (количество и сумма по типу продукта и транзакции),
+ * а условия правила становятся фильтром по агрегатам. Семантика совпадает
+ * с вычислением правил по профилю клиента в {@code QueryService}. Типы и операторы
+ * берутся из перечислений, константы передаются параметрами.
+ * </p>
+ * Запрос только читает транзакции и выполняется на основном пуле каждого шарда
+ * с таймаутом {@code recommendation.backtest.query-timeout}.
+ */
+@Repository
+public class RuleBacktestRepository {
+    private static final Logger logger = LoggerFactory.getLogger(RuleBacktestRepository.class);
+
+    private static final int FETCH_SIZE = 10_000;
+
+    /**
+     * Порог активного клиента, как в {@code QueryService}
+     */
+    private static final long ACTIVE_USER_MIN_TRANSACTIONS = 5;
+
+    private final List<JdbcTemplate> shardTemplates;
+
+    public RuleBacktestRepository(ShardRouter transactionShardRouter,
+                                  @Value("${recommendation.backtest.query-timeout:60s}") Duration queryTimeout) {
+        this.shardTemplates = transactionShardRouter.streamingTemplates(FETCH_SIZE);
+        this.shardTemplates.forEach(template -> template.setQueryTimeout((int) queryTimeout.toSeconds()));
+    }
+
+    /**
+     * Считает клиентов, для которых выполнены все условия, и выбирает из них
+     * равномерную случайную выборку
+     *
+     * @param conditions условия правила; без условий правило не срабатывает
+     * @param sampleSize размер выборки идентификаторов
+     */
+    public Matches findMatches(List<CompiledCondition> conditions, int sampleSize) {
+        if (conditions.isEmpty()) {
+            return new Matches(0, List.of());
+        }
+
+        List<Object> args = new ArrayList<>();
+        String sql = buildSql(conditions, args);
+        Reservoir reservoir = new Reservoir(sampleSize);
+        try {
+            for (JdbcTemplate jdbcTemplate : shardTemplates) {
+                jdbcTemplate.query(sql, (RowCallbackHandler) rs -> reservoir.add(rs.getObject("user_id", UUID.class)),
+                        args.toArray());
+            }
+        } catch (DataAccessException e) {
+            logger.error("Error evaluating rule conditions over all users", e);
+            throw new DatabaseQueryException("Ошибка при проверке правила по всем клиентам", e);
+        }
+        return new Matches(reservoir.seen, List.copyOf(reservoir.sample));
+    }
+
+    /**
+     * Строит запрос; параметры добавляются в {@code args} в порядке появления в тексте
+     */
+    static String buildSql(List<CompiledCondition> conditions, List<Object> args) {
+        Map<String, Measure> measures = new LinkedHashMap<>();
+        List<String> filters = new ArrayList<>();
+        List<Object> filterArgs = new ArrayList<>();
+
+        for (CompiledCondition condition : conditions) {
+            AtomicPredicate predicate = condition.predicate();
+            String productType = predicate.productType().name();
+            String filter = switch (predicate.kind()) {
+                case USER_OF -> measure(measures, productType, null, false) + " > 0";
+                case ACTIVE_USER_OF -> {
+                    filterArgs.add(ACTIVE_USER_MIN_TRANSACTIONS);
+                    yield measure(measures, productType, null, false) + " >= ?";
+                }
+                case TRANSACTION_SUM_COMPARE -> {
+                    String transactionType = predicate.transactionType().name();
+                    filterArgs.add(predicate.constant());
+                    yield "(" + measure(measures, productType, transactionType, false) + " > 0 AND "
+                            + measure(measures, productType, transactionType, true) + " "
+                            + predicate.operator().getSymbol() + " ?)";
+                }
+                case TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW ->
+                        measure(measures, productType, TransactionType.DEPOSIT.name(), true) + " "
+                                + predicate.operator().getSymbol() + " "
+                                + measure(measures, productType, TransactionType.WITHDRAW.name(), true);
+            };
+            filters.add(condition.negate() ? "NOT (" + filter + ")" : filter);
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT u.id AS user_id\nFROM public.users u\nLEFT JOIN (\n")
+                .append("    SELECT t.USER_ID AS user_id");
+        for (Measure measure : measures.values()) {
+            sql.append(",\n           SUM(CASE WHEN p.TYPE = ?")
+               .append(measure.transactionType() == null ? "" : " AND t.TYPE = ?")
+               .append(measure.amount() ? " THEN t.AMOUNT" : " THEN 1")
+               .append(" ELSE 0 END) AS ").append(measure.alias());
+            args.add(measure.productType());
+            if (measure.transactionType() != null) {
+                args.add(measure.transactionType());
+            }
+        }
+
+        List<String> productTypes = measures.values().stream().map(Measure::productType).distinct().toList();
+        sql.append("\n    FROM TRANSACTIONS t JOIN PRODUCTS p ON t.PRODUCT_ID = p.ID\n")
+           .append("    WHERE p.TYPE IN (").append(String.join(", ", productTypes.stream().map(type -> "?").toList()))
+           .append(")\n    GROUP BY t.USER_ID\n) a ON a.user_id = u.id\nWHERE ")
+           .append(String.join("\n  AND ", filters));
+        args.addAll(productTypes);
+        args.addAll(filterArgs);
+        return sql.toString();
+    }
+
+    /**
+     * Выражение агрегата по клиенту; одинаковые агрегаты разных условий вычисляются один раз
+     */
+    private static String measure(Map<String, Measure> measures, String productType, String transactionType,
+                                  boolean amount) {
+        String key = productType + "/" + transactionType + "/" + amount;
+        Measure measure = measures.computeIfAbsent(key,
+                k -> new Measure("m" + measures.size(), productType, transactionType, amount));
+        return "COALESCE(a." + measure.alias() + ", 0)";
+    }
+
+    /**
+     * Результат проверки: число подходящих клиентов и случайная выборка их идентификаторов
+     */
+    public record Matches(long count, List<UUID> sample) {
+    }
+
+    /**
+     * Агрегат по клиенту: количество или сумма транзакций типа продукта (и типа транзакции)
+     */
+    private record Measure(String alias, String productType, String transactionType, boolean amount) {
+    }
+
+    /**
+     * Равномерная выборка фиксированного размера из потока неизвестной длины
+     */
+    private static final class Reservoir {
+        private final int size;
+        private final List<UUID> sample = new ArrayList<>();
+        private long seen;
+
+        private Reservoir(int size) {
+            this.size = size;
+        }
+
+        void add(UUID userId) {
+            seen++;
+            if (sample.size() < size) {
+                sample.add(userId);
+                return;
+            }
+            long index = ThreadLocalRandom.current().nextLong(seen);
+            if (index < size) {
+                sample.set((int) index, userId);
+            }
+        }
+    }
+}
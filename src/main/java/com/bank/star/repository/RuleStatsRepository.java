@@ -0,0 +1,77 @@
+package com.bank.star.repository;
+
+import com.bank.star.exception.DatabaseQueryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Накопленные счётчики срабатывания правил в базе правил.
+ * Приращения нескольких экземпляров приложения складываются в одной строке продукта.
+ * Пакет приращений сохраняется в одной транзакции: при ошибке не сохраняется ни одно,
+ * и повторная попытка не учитывает их дважды.
+ */
+@Repository
+public class RuleStatsRepository {
+    private static final Logger logger = LoggerFactory.getLogger(RuleStatsRepository.class);
+
+    private static final String ADD_SQL = """
+            INSERT INTO rule_stats (product_id, fire_count, updated_at)
+            VALUES (?, ?, CURRENT_TIMESTAMP)
+            ON CONFLICT (product_id) DO UPDATE
+            SET fire_count = rule_stats.fire_count + EXCLUDED.fire_count,
+                updated_at = EXCLUDED.updated_at
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public RuleStatsRepository(@Qualifier("postgresDataSource") DataSource postgresDataSource,
+                               @Qualifier("postgresTransactionManager") PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = new JdbcTemplate(postgresDataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Прибавляет приращения счётчиков одним пакетом JDBC в одной транзакции
+     */
+    public void addAll(Map<UUID, Long> deltas) {
+        try {
+            List<Object[]> rows = new ArrayList<>(deltas.size());
+            deltas.forEach((productId, delta) -> rows.add(new Object[]{productId, delta}));
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(ADD_SQL, rows));
+        } catch (DataAccessException | TransactionException e) {
+            logger.error("Error saving {} rule stats deltas", deltas.size(), e);
+            throw new DatabaseQueryException("Ошибка при сохранении статистики правил", e);
+        }
+    }
+
+    /**
+     * Сохранённые значения всех счётчиков
+     */
+    public Map<UUID, Long> findAll() {
+        try {
+            Map<UUID, Long> counts = new HashMap<>();
+            jdbcTemplate.query("SELECT product_id, fire_count FROM rule_stats", (RowCallbackHandler) rs ->
+                    counts.put(rs.getObject("product_id", UUID.class), rs.getLong("fire_count")));
+            return counts;
+        } catch (DataAccessException e) {
+            logger.error("Error reading rule stats", e);
+            throw new DatabaseQueryException("Ошибка при чтении статистики правил", e);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.bank.star.repository;
+
+import com.bank.star.config.web.RequestDeadline;
+import com.bank.star.exception.ServiceOverloadedException;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Маршрутизация клиентов по шардам базы транзакций.
+ * <p>
+ * Идентификатор клиента хэшируется в один из {@value #SLOTS} слотов, а слоты
+ * распределяются по шардам диапазонами. По умолчанию диапазоны равные; для
+ * перебалансировки диапазон переназначается другому шарду в настройках
+ * ({@code "0-8191:0,8192-16383:1"}). Функция хэширования определяет размещение
+ * данных, поэтому её изменение равносильно переносу данных.
+ * </p>
+ * Каждый шард — {@link ReplicaSet} со своим пулом соединений. Запросы по набору
+ * клиентов разбиваются по шардам и выполняются параллельно в ограниченном пуле:
+ * потоков не больше, чем соединений в основных пулах шардов, очередь ограничена
+ * {@code queueCapacity}. Если очередь заполнена, запрос сразу отклоняется
+ * с {@link ServiceOverloadedException}.
+ */
+public final class ShardRouter implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ShardRouter.class);
+
+    public static final int SLOTS = 16384;
+
+    private final List<ReplicaSet> shards;
+    private final short[] slotToShard;
+    private final boolean ownsShards;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param shards     шарды в порядке номеров
+     * @param ranges     назначения диапазонов слотов вида {@code "from-to:shard"}; пустой список — равные диапазоны
+     * @param ownsShards    закрывать ли шарды вместе с маршрутизатором
+     * @param queueCapacity очередь запросов к шардам, ожидающих свободного потока
+     */
+    public ShardRouter(List<ReplicaSet> shards, List<String> ranges, boolean ownsShards, int queueCapacity) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("Должен быть задан хотя бы один шард");
+        }
+        this.shards = List.copyOf(shards);
+        this.slotToShard = ranges.isEmpty() ? evenSlots(shards.size()) : parseRanges(ranges, shards.size());
+        this.ownsShards = ownsShards;
+
+        this.executor = shards.size() > 1 ? newExecutor(shards, queueCapacity) : null;
+
+        logger.info("Transaction shards: {}", shards.size());
+    }
+
+    /**
+     * Поток на каждое соединение основных пулов шардов: больше одновременных запросов пулы всё равно не примут
+     */
+    private static ThreadPoolExecutor newExecutor(List<ReplicaSet> shards, int queueCapacity) {
+        int threads = 0;
+        for (ReplicaSet shard : shards) {
+            threads += shard.primaryDataSource() instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize() : 10;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "shard-query-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public List<ReplicaSet> shards() {
+        return shards;
+    }
+
+    /**
+     * Шаблоны основного пула каждого шарда для потоковых выгрузок
+     */
+    public List<JdbcTemplate> streamingTemplates(int fetchSize) {
+        return shards.stream()
+                     .map(shard -> {
+                         JdbcTemplate template = new JdbcTemplate(shard.primaryDataSource());
+                         template.setFetchSize(fetchSize);
+                         return template;
+                     })
+                     .toList();
+    }
+
+    public ReplicaSet shardFor(UUID userId) {
+        return shards.get(shardIndexOf(userId));
+    }
+
+    public int shardIndexOf(UUID userId) {
+        return slotToShard[slotOf(userId)];
+    }
+
+    /**
+     * Слот клиента: младшие биты {@link UuidHash#mix}
+     */
+    public static int slotOf(UUID userId) {
+        return UuidHash.mix(userId.getMostSignificantBits(), userId.getLeastSignificantBits()) & (SLOTS - 1);
+    }
+
+    /**
+     * Выполняет запрос по набору клиентов: отдельно на каждом затронутом шарде,
+     * параллельно, и объединяет результаты в порядке {@code userIds}.
+     * Ошибка на любом шарде отменяет ожидание остальных и пробрасывается.
+     *
+     * @throws ServiceOverloadedException если очередь запросов к шардам заполнена
+     */
+    public <T> Map<UUID, T> queryPartitioned(Collection<UUID> userIds,
+                                             BiFunction<ReplicaSet, List<UUID>, Map<UUID, T>> query) {
+        if (userIds.isEmpty()) {
+            return Map.of();
+        }
+
+        List<List<UUID>> partitions = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            partitions.add(new ArrayList<>());
+        }
+        for (UUID userId : userIds) {
+            partitions.get(shardIndexOf(userId)).add(userId);
+        }
+
+        List<CompletableFuture<Map<UUID, T>>> futures = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            List<UUID> partition = partitions.get(i);
+            ReplicaSet shard = shards.get(i);
+            if (partition.size() == userIds.size()) {
+                return query.apply(shard, partition);
+            }
+            try {
+                futures.add(partition.isEmpty()
+                        ? CompletableFuture.completedFuture(Map.of())
+                        : CompletableFuture.supplyAsync(RequestDeadline.propagate(() -> query.apply(shard, partition)),
+                                executor));
+            } catch (RejectedExecutionException e) {
+                futures.forEach(future -> future.cancel(true));
+                logger.warn("Shard query queue is full ({} queued), rejecting request", executor.getQueue().size());
+                throw new ServiceOverloadedException(1);
+            }
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+            Map<UUID, T> merged = new LinkedHashMap<>();
+            for (UUID userId : userIds) {
+                T value = futures.get(shardIndexOf(userId)).join().get(userId);
+                if (value != null) {
+                    merged.put(userId, value);
+                }
+            }
+            return merged;
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (CancellationException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+    }
+
+    private static short[] evenSlots(int shardCount) {
+        short[] slots = new short[SLOTS];
+        for (int slot = 0; slot < SLOTS; slot++) {
+            slots[slot] = (short) ((long) slot * shardCount / SLOTS);
+        }
+        return slots;
+    }
+
+    /**
+     * Разбирает назначения диапазонов; диапазоны должны покрывать все слоты без пересечений
+     */
+    static short[] parseRanges(List<String> ranges, int shardCount) {
+        short[] slots = new short[SLOTS];
+        Arrays.fill(slots, (short) -1);
+        for (String range : ranges) {
+            String[] parts = range.trim().split("[-:]");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Неверный формат диапазона слотов: " + range);
+            }
+            int from = Integer.parseInt(parts[0].trim());
+            int to = Integer.parseInt(parts[1].trim());
+            int shard = Integer.parseInt(parts[2].trim());
+            if (from < 0 || to >= SLOTS || from > to || shard < 0 || shard >= shardCount) {
+                throw new IllegalArgumentException("Неверный диапазон слотов: " + range);
+            }
+            for (int slot = from; slot <= to; slot++) {
+                if (slots[slot] != -1) {
+                    throw new IllegalArgumentException("Слот " + slot + " назначен нескольким шардам");
+                }
+                slots[slot] = (short) shard;
+            }
+        }
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (slots[slot] == -1) {
+                throw new IllegalArgumentException("Слот " + slot + " не назначен ни одному шарду");
+            }
+        }
+        return slots;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (ownsShards) {
+            shards.forEach(ReplicaSet::close);
+        }
+    }
+}
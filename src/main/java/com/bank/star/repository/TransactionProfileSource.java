@@ -0,0 +1,33 @@
+package com.bank.star.repository;
+
+import com.bank.star.model.UserTransactionProfile;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Источник агрегированных профилей транзакций клиентов.
+ * <p>
+ * По умолчанию профили строятся SQL-запросами к базе транзакций,
+ * при {@code recommendation.backend=columnar} — из колоночного хранилища в памяти.
+ * </p>
+ */
+public interface TransactionProfileSource {
+
+    /**
+     * Профиль транзакций одного клиента
+     *
+     * @param userId идентификатор пользователя
+     * @return профиль клиента; для отсутствующего клиента признак существования равен false
+     */
+    UserTransactionProfile findUserTransactionProfile(UUID userId);
+
+    /**
+     * Профили транзакций набора клиентов
+     *
+     * @param userIds идентификаторы пользователей
+     * @return профили по идентификатору; для каждого переданного клиента есть запись
+     */
+    Map<UUID, UserTransactionProfile> findUserTransactionProfiles(Collection<UUID> userIds);
+}
@@ -0,0 +1,172 @@
+package com.bank.star.repository;
+
+import com.bank.star.exception.DatabaseQueryException;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Индекс существования клиентов в памяти.
+ * <p>
+ * База транзакций доступна только для чтения, поэтому все идентификаторы
+ * из {@code public.users} загружаются один раз при старте в хэш-таблицу
+ * с открытой адресацией, где UUID хранится парой long. Проверка неизвестного
+ * клиента не требует обращения к базе.
+ * </p>
+ * Отключается свойством {@code recommendation.user-index.enabled=false}:
+ * тогда {@link #contains(UUID)} всегда возвращает true.
+ */
+@Repository
+public class UserIdIndex {
+    private static final Logger logger = LoggerFactory.getLogger(UserIdIndex.class);
+
+    private static final String USER_IDS_SQL = "SELECT u.id AS user_id FROM public.users u";
+    private static final int FETCH_SIZE = 10_000;
+
+    private final List<JdbcTemplate> shardTemplates;
+    private final boolean enabled;
+
+    private volatile Table table;
+
+    public UserIdIndex(ShardRouter transactionShardRouter,
+                       @Value("${recommendation.user-index.enabled:true}") boolean enabled) {
+        this.shardTemplates = transactionShardRouter.streamingTemplates(FETCH_SIZE);
+        this.enabled = enabled;
+    }
+
+    /**
+     * Загружает идентификаторы всех клиентов со всех шардов
+     */
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            logger.info("User id index disabled");
+            return;
+        }
+
+        long startedAt = System.nanoTime();
+        try {
+            long[][] ids = {new long[1024], new long[1024]};
+            int[] size = {0};
+            for (JdbcTemplate jdbcTemplate : shardTemplates) {
+                jdbcTemplate.query(USER_IDS_SQL, (RowCallbackHandler) rs -> {
+                    UUID userId = rs.getObject("user_id", UUID.class);
+                    if (size[0] == ids[0].length) {
+                        ids[0] = Arrays.copyOf(ids[0], size[0] * 2);
+                        ids[1] = Arrays.copyOf(ids[1], size[0] * 2);
+                    }
+                    ids[0][size[0]] = userId.getMostSignificantBits();
+                    ids[1][size[0]] = userId.getLeastSignificantBits();
+                    size[0]++;
+                });
+            }
+
+            this.table = Table.build(ids[0], ids[1], size[0]);
+            logger.info("User id index loaded: {} users in {} ms", size[0], (System.nanoTime() - startedAt) / 1_000_000);
+
+        } catch (DataAccessException e) {
+            logger.error("Error loading user id index", e);
+            throw new DatabaseQueryException("Ошибка при загрузке индекса клиентов", e);
+        }
+    }
+
+    /**
+     * Перебирает идентификаторы всех клиентов со всех шардов потоковой выборкой,
+     * независимо от того, включён ли индекс
+     */
+    public void forEachUserId(Consumer<UUID> action) {
+        try {
+            for (JdbcTemplate jdbcTemplate : shardTemplates) {
+                jdbcTemplate.query(USER_IDS_SQL, (RowCallbackHandler) rs -> action.accept(rs.getObject("user_id", UUID.class)));
+            }
+        } catch (DataAccessException e) {
+            logger.error("Error reading user ids", e);
+            throw new DatabaseQueryException("Ошибка при чтении списка клиентов", e);
+        }
+    }
+
+    /**
+     * Есть ли клиент в базе
+     *
+     * @param userId идентификатор пользователя
+     * @return true, если клиент существует или индекс отключён
+     */
+    public boolean contains(UUID userId) {
+        Table current = table;
+        return current == null || current.contains(userId.getMostSignificantBits(), userId.getLeastSignificantBits());
+    }
+
+    /**
+     * Хэш-таблица с линейным пробированием; пустой слот — пара (0, 0),
+     * поэтому нулевой UUID учитывается отдельным флагом
+     */
+    private static final class Table {
+        private final long[] mostSigBits;
+        private final long[] leastSigBits;
+        private final int mask;
+        private final boolean containsNil;
+
+        private Table(long[] mostSigBits, long[] leastSigBits, boolean containsNil) {
+            this.mostSigBits = mostSigBits;
+            this.leastSigBits = leastSigBits;
+            this.mask = mostSigBits.length - 1;
+            this.containsNil = containsNil;
+        }
+
+        static Table build(long[] msb, long[] lsb, int size) {
+            int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+            Table table = new Table(new long[capacity], new long[capacity], containsNil(msb, lsb, size));
+            for (int i = 0; i < size; i++) {
+                if (msb[i] != 0 || lsb[i] != 0) {
+                    table.insert(msb[i], lsb[i]);
+                }
+            }
+            return table;
+        }
+
+        private static boolean containsNil(long[] msb, long[] lsb, int size) {
+            for (int i = 0; i < size; i++) {
+                if (msb[i] == 0 && lsb[i] == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void insert(long msb, long lsb) {
+            int slot = UuidHash.mix(msb, lsb) & mask;
+            while (mostSigBits[slot] != 0 || leastSigBits[slot] != 0) {
+                if (mostSigBits[slot] == msb && leastSigBits[slot] == lsb) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            mostSigBits[slot] = msb;
+            leastSigBits[slot] = lsb;
+        }
+
+        boolean contains(long msb, long lsb) {
+            if (msb == 0 && lsb == 0) {
+                return containsNil;
+            }
+            int slot = UuidHash.mix(msb, lsb) & mask;
+            while (mostSigBits[slot] != 0 || leastSigBits[slot] != 0) {
+                if (mostSigBits[slot] == msb && leastSigBits[slot] == lsb) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+    }
+}
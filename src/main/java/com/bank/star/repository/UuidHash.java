@@ -0,0 +1,23 @@
+package com.bank.star.repository;
+
+/**
+ * Хэш идентификатора клиента для слотов шардирования и таблицы {@link UserIdIndex}
+ */
+final class UuidHash {
+
+    private UuidHash() {
+    }
+
+    /**
+     * Финализатор MurmurHash3 поверх обеих половин UUID
+     */
+    static int mix(long msb, long lsb) {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -6,15 +6,23 @@ import com.bank.star.entity.DynamicRuleEntity;
 import com.bank.star.exception.RuleAlreadyExistsException;
 import com.bank.star.exception.RuleNotFoundException;
 import com.bank.star.repository.RuleRepository;
+import com.bank.star.service.rule.CompiledRule;
+import com.bank.star.service.rule.RuleCompiler;
+import com.bank.star.service.rule.RuleSnapshot;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Сервис для работы с динамическими правилами рекомендаций
@@ -25,6 +33,10 @@ import java.util.UUID;
 public class DynamicRuleService {
 
     private final RuleRepository ruleRepository;
+    private final RuleCompiler ruleCompiler;
+    private final RuleMetrics ruleMetrics;
+
+    private final AtomicReference<RuleSnapshot> snapshot = new AtomicReference<>();
 
     @Cacheable("allRules")
     public List<DynamicRuleEntity> getAllRules() {
@@ -44,6 +56,40 @@ public class DynamicRuleService {
         return response;
     }
 
+    /**
+     * Текущий снимок скомпилированных правил.
+     * Загружается из базы при первом обращении, далее обновляется фоновой задачей
+     * {@link #refreshRuleSnapshot()}, поэтому запросы не ждут чтения правил.
+     */
+    public RuleSnapshot getRuleSnapshot() {
+        RuleSnapshot current = snapshot.get();
+        return current != null ? current : loadInitialSnapshot();
+    }
+
+    /**
+     * Перечитывает правила раз в {@code recommendation.rules.refresh-interval},
+     * чтобы подхватывать изменения, сделанные другими экземплярами приложения.
+     * При ошибке чтения остаётся прежний снимок.
+     */
+    @Scheduled(fixedDelayString = "${recommendation.rules.refresh-interval:5m}",
+            initialDelayString = "${recommendation.rules.refresh-interval:5m}")
+    public void refreshRuleSnapshot() {
+        try {
+            reloadRuleSnapshot();
+        } catch (RuntimeException e) {
+            log.warn("Dynamic rule snapshot refresh failed, keeping the previous snapshot", e);
+        }
+    }
+
+    /**
+     * Компилирует правило из запроса без сохранения
+     *
+     * @throws IllegalArgumentException если условия правила заданы неверно
+     */
+    public CompiledRule compileRule(DynamicRuleRequestDTO request) {
+        return ruleCompiler.compile(fromRequest(request));
+    }
+
     @Transactional
     @CacheEvict(value = "allRules", allEntries = true)
     public DynamicRuleResponseDTO.DynamicRuleDTO createRuleAndConvert(DynamicRuleRequestDTO request) {
@@ -51,7 +97,11 @@ public class DynamicRuleService {
             throw new RuleAlreadyExistsException(request.getProductId());
         }
 
-        DynamicRuleEntity entity = ruleRepository.save(fromRequest(request));
+        DynamicRuleEntity entity = fromRequest(request);
+        CompiledRule compiled = ruleCompiler.compile(entity);
+
+        entity = ruleRepository.save(entity);
+        afterCommit(() -> snapshot.updateAndGet(current -> current == null ? null : current.withRule(compiled)));
         return convertToDTO(entity);
     }
 
@@ -62,6 +112,59 @@ public class DynamicRuleService {
             throw new RuleNotFoundException(productId);
         }
         ruleRepository.deleteByProductId(productId);
+        afterCommit(() -> {
+            snapshot.updateAndGet(current -> current == null ? null : current.withoutRule(productId));
+            ruleMetrics.forget(productId);
+        });
+    }
+
+    private synchronized RuleSnapshot loadInitialSnapshot() {
+        RuleSnapshot current = snapshot.get();
+        return current != null ? current : reloadRuleSnapshot();
+    }
+
+    /**
+     * Перечитывает и компилирует все правила.
+     * Номер версии растёт, только если изменился отпечаток набора правил.
+     * Правила, которые не удаётся скомпилировать, пропускаются. Если снимок изменился
+     * во время чтения (правило создано или удалено), результат отбрасывается:
+     * он мог быть прочитан до фиксации изменения.
+     */
+    private synchronized RuleSnapshot reloadRuleSnapshot() {
+        RuleSnapshot current = snapshot.get();
+
+        List<CompiledRule> rules = new ArrayList<>();
+        for (DynamicRuleEntity entity : ruleRepository.findAll()) {
+            try {
+                rules.add(ruleCompiler.compile(entity));
+            } catch (IllegalArgumentException e) {
+                log.warn("Skipping invalid dynamic rule for productId {}: {}", entity.getProductId(), e.getMessage());
+            }
+        }
+
+        RuleSnapshot reloaded = new RuleSnapshot(current == null ? 1 : current.version(), rules, System.nanoTime());
+        if (current != null && !current.fingerprint().equals(reloaded.fingerprint())) {
+            reloaded = new RuleSnapshot(current.version() + 1, reloaded.rules(), reloaded.loadedAt(),
+                    reloaded.matrix(), reloaded.fingerprint());
+        }
+
+        if (!snapshot.compareAndSet(current, reloaded)) {
+            return snapshot.get();
+        }
+        log.debug("Dynamic rule snapshot v{} loaded: {} rules", reloaded.version(), rules.size());
+        return reloaded;
+    }
+
+    /**
+     * Выполняет действие после фиксации текущей транзакции
+     */
+    private static void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
     /**
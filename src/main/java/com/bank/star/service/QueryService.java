@@ -1,68 +1,169 @@
 package com.bank.star.service;
 
-import com.bank.star.repository.RecommendationRepository;
-import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
+import com.bank.star.jfr.CacheLookupEvent;
+import com.bank.star.jfr.ConditionEvaluationEvent;
+import com.bank.star.model.ComparisonOperator;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.model.UserTransactionProfile;
+import com.bank.star.repository.TransactionProfileSource;
+import com.bank.star.service.rule.AtomicPredicate;
+import com.bank.star.service.rule.QueryKind;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
 
 /**
- * Сервис для выполнения запросов динамических правил с кэшированием
+ * Сервис для выполнения запросов динамических правил с кэшированием.
+ * <p>
+ * Профиль транзакций клиента загружается одним запросом и кэшируется как «сырой» факт
+ * по ключу UUID (две long-половины, без строк и SpEL). Все условия, включая отрицание,
+ * вычисляются по профилю уже после чтения из кэша, поэтому условие и его отрицание
+ * используют одну запись.
+ * </p>
+ * Число вычисленных условий учитывается счётчиком {@code bankstar.query.checks} с тегом {@code kind};
+ * время не замеряется: проверка по профилю дешевле самого замера, а общее время покрывает
+ * таймер матрицы динамических правил ({@link RuleMetrics}).
+ * При включённой записи JFR медленные вычисления условий и поиски в кэше профилей пишутся
+ * событиями {@link ConditionEvaluationEvent} и {@link CacheLookupEvent}.
  */
 @Service
-@RequiredArgsConstructor
-@Slf4j
 public class QueryService {
 
-    private final RecommendationRepository recommendationRepository;
+    public static final String PROFILE_CACHE = "userTransactionProfile";
+
+    private static final long ACTIVE_USER_MIN_TRANSACTIONS = 5;
+
+    private final TransactionProfileSource transactionProfileSource;
+    private final Cache<Object, Object> profileCache;
+    private final Function<Object, Object> profileLoader;
+    private final Map<QueryKind, Counter> checkCounters = new EnumMap<>(QueryKind.class);
+
+    @SuppressWarnings("unchecked")
+    public QueryService(TransactionProfileSource transactionProfileSource, CacheManager cacheManager,
+                        MeterRegistry meterRegistry) {
+        this.transactionProfileSource = transactionProfileSource;
+        this.profileCache = (Cache<Object, Object>) Objects.requireNonNull(cacheManager.getCache(PROFILE_CACHE))
+                                                           .getNativeCache();
+        this.profileLoader = userId -> transactionProfileSource.findUserTransactionProfile((UUID) userId);
+        for (QueryKind kind : QueryKind.values()) {
+            checkCounters.put(kind, Counter.builder("bankstar.query.checks")
+                                           .description("Число вычисленных условий динамических правил")
+                                           .tag("kind", kind.name())
+                                           .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Загрузка профиля транзакций клиента с кэшированием
+     */
+    public UserTransactionProfile loadProfile(UUID userId) {
+        CacheLookupEvent event = new CacheLookupEvent();
+        if (!event.isEnabled()) {
+            return (UserTransactionProfile) profileCache.get(userId, profileLoader);
+        }
+
+        boolean[] loaded = new boolean[1];
+        event.begin();
+        UserTransactionProfile profile = (UserTransactionProfile) profileCache.get(userId, key -> {
+            loaded[0] = true;
+            return profileLoader.apply(key);
+        });
+        if (event.shouldCommit()) {
+            event.cache = PROFILE_CACHE;
+            event.userIdHash = userId.hashCode();
+            event.fromCache = !loaded[0];
+            event.commit();
+        }
+        return profile;
+    }
+
+    /**
+     * Профиль клиента из кэша без обращения к базе
+     */
+    public Optional<UserTransactionProfile> cachedProfile(UUID userId) {
+        return Optional.ofNullable((UserTransactionProfile) profileCache.getIfPresent(userId));
+    }
+
+    /**
+     * Загрузка профилей транзакций набора клиентов одним запросом.
+     * Пакетные выборки идут мимо кэша, чтобы не вытеснять из него профили активных клиентов.
+     */
+    public Map<UUID, UserTransactionProfile> loadProfiles(Collection<UUID> userIds) {
+        return transactionProfileSource.findUserTransactionProfiles(userIds);
+    }
+
+    /**
+     * Вычисление атомарного предиката по профилю (без учёта отрицания)
+     */
+    public boolean test(UserTransactionProfile profile, AtomicPredicate predicate) {
+        ConditionEvaluationEvent event = new ConditionEvaluationEvent();
+        event.begin();
+        boolean result = evaluate(profile, predicate);
+        checkCounters.get(predicate.kind()).increment();
+        if (event.shouldCommit()) {
+            event.userIdHash = profile.getUserId().hashCode();
+            event.queryKind = predicate.kind().name();
+            event.productType = predicate.productType().name();
+            event.result = result;
+            event.commit();
+        }
+        return result;
+    }
+
+    private boolean evaluate(UserTransactionProfile profile, AtomicPredicate predicate) {
+        return switch (predicate.kind()) {
+            case USER_OF -> checkUserOf(profile, predicate.productType());
+            case ACTIVE_USER_OF -> checkActiveUserOf(profile, predicate.productType());
+            case TRANSACTION_SUM_COMPARE -> checkTransactionSumCompare(profile, predicate.productType(),
+                    predicate.transactionType(), predicate.operator(), predicate.constant());
+            case TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW -> checkTransactionSumCompareDepositWithdraw(profile,
+                    predicate.productType(), predicate.operator());
+        };
+    }
 
     /**
-     * Проверка USER_OF запроса с кэшированием
+     * Проверка USER_OF запроса
      */
-    @Cacheable(value = "userOfQuery", key = "#userId.toString() + '_' + #productType")
-    public boolean checkUserOf(UUID userId, String productType, boolean negate) {
-        log.debug("Checking USER_OF query for userId: {}, productType: {}", userId, productType);
-        boolean result = recommendationRepository.checkUserOf(userId, productType);
-        return negate != result;
+    public boolean checkUserOf(UserTransactionProfile profile, ProductType productType) {
+        return profile.uses(productType);
     }
 
     /**
-     * Проверка ACTIVE_USER_OF запроса с кэшированием
+     * Проверка ACTIVE_USER_OF запроса
      */
-    @Cacheable(value = "activeUserOfQuery", key = "#userId.toString() + '_' + #productType")
-    public boolean checkActiveUserOf(UUID userId, String productType, boolean negate) {
-        log.debug("Checking ACTIVE_USER_OF query for userId: {}, productType: {}", userId, productType);
-        boolean result = recommendationRepository.checkActiveUserOf(userId, productType);
-        return negate != result;
+    public boolean checkActiveUserOf(UserTransactionProfile profile, ProductType productType) {
+        return profile.count(productType) >= ACTIVE_USER_MIN_TRANSACTIONS;
     }
 
     /**
-     * Проверка TRANSACTION_SUM_COMPARE запроса с кэшированием
+     * Проверка TRANSACTION_SUM_COMPARE запроса.
+     * Как и SUM в SQL, при отсутствии транзакций сравнение ложно.
      */
-    @Cacheable(value = "transactionSumCompareQuery",
-            key = "#userId.toString() + '_' + #productType + '_' + #transactionType + '_' + #operator + '_' + #constant")
-    public boolean checkTransactionSumCompare(UUID userId, String productType,
-                                              String transactionType, String operator,
-                                              int constant, boolean negate) {
-        log.debug("Checking TRANSACTION_SUM_COMPARE for userId: {}, productType: {}, transactionType: {}, operator: {}, constant: {}",
-                userId, productType, transactionType, operator, constant);
-        boolean result = recommendationRepository.checkTransactionSumCompare(userId, productType,
-                transactionType, operator, constant);
-        return negate != result;
+    public boolean checkTransactionSumCompare(UserTransactionProfile profile, ProductType productType,
+                                              TransactionType transactionType, ComparisonOperator operator,
+                                              int constant) {
+        return profile.count(productType, transactionType) > 0
+                && operator.test(profile.sum(productType, transactionType), constant);
     }
 
     /**
-     * Проверка TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW запроса с кэшированием
+     * Проверка TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW запроса
      */
-    @Cacheable(value = "transactionSumCompareDepositWithdrawQuery",
-            key = "#userId.toString() + '_' + #productType + '_' + #operator")
-    public boolean checkTransactionSumCompareDepositWithdraw(UUID userId, String productType,
-                                                             String operator, boolean negate) {
-        log.debug("Checking TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW for userId: {}, productType: {}, operator: {}",
-                userId, productType, operator);
-        boolean result = recommendationRepository.checkTransactionSumCompareDepositWithdraw(userId, productType, operator);
-        return negate != result;
+    public boolean checkTransactionSumCompareDepositWithdraw(UserTransactionProfile profile, ProductType productType,
+                                                             ComparisonOperator operator) {
+        return operator.test(
+                profile.sum(productType, TransactionType.DEPOSIT),
+                profile.sum(productType, TransactionType.WITHDRAW));
     }
 }
@@ -0,0 +1,248 @@
+package com.bank.star.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Ограниченный пул для параллельной обработки порций клиентов.
+ * <p>
+ * Включается свойством {@code recommendation.concurrent.enabled}. Число потоков
+ * ({@code recommendation.concurrent.threads}) по умолчанию равно половине пула соединений H2:
+ * пакетные запросы, выгрузка и загрузки со сроком вместе занимают не больше этого числа
+ * соединений, остальные остаются запросам отдельных клиентов. Один вызов {@link #mapOrdered}
+ * держит не больше {@code recommendation.concurrent.max-per-call} задач (по умолчанию
+ * четверть пула), чтобы один пакетный запрос не занимал все потоки.
+ * Результаты выдаются строго в порядке входных элементов; при ошибке любой задачи
+ * оставшиеся отменяются, а исключение пробрасывается вызывающему.
+ * Переполненный пул отклоняет задачи: ожидание со сроком считает это истёкшим сроком,
+ * а упорядоченный конвейер сначала дожидается своих задач и только без них выполняет
+ * отклонённую задачу в потоке вызывающего, как в последовательном режиме.
+ * Время ожидания в очереди и время выполнения публикуются отдельными таймерами
+ * {@code bankstar.executor.queue} и {@code bankstar.executor.execution}.
+ * </p>
+ */
+@Component
+@Slf4j
+public class RecommendationExecutor {
+
+    private final boolean enabled;
+    private final int parallelism;
+    private final int maxPerCall;
+    private final ThreadPoolExecutor executor;
+    private final Timer queueTimer;
+    private final Timer executionTimer;
+
+    public RecommendationExecutor(DataSource dataSource,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${recommendation.concurrent.enabled:false}") boolean enabled,
+                                  @Value("${recommendation.concurrent.threads:0}") int threads,
+                                  @Value("${recommendation.concurrent.max-per-call:0}") int maxPerCall,
+                                  @Value("${recommendation.concurrent.queue-capacity:100}") int queueCapacity) {
+        int poolSize = dataSource instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize() : 10;
+        this.enabled = enabled;
+        this.parallelism = threads > 0 ? threads : Math.max(1, poolSize / 2);
+        this.maxPerCall = Math.min(parallelism, maxPerCall > 0 ? maxPerCall : Math.max(1, poolSize / 4));
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "recommendation-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.queueTimer = Timer.builder("bankstar.executor.queue")
+                               .description("Время ожидания задачи в очереди пула рекомендаций")
+                               .register(meterRegistry);
+        this.executionTimer = Timer.builder("bankstar.executor.execution")
+                                   .description("Время выполнения задачи в пуле рекомендаций")
+                                   .register(meterRegistry);
+
+        log.info("Recommendation executor: concurrent={}, threads={}, max-per-call={}, connection pool={}",
+                enabled, parallelism, this.maxPerCall, poolSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Применяет {@code work} к каждому элементу и передаёт результаты в {@code sink}
+     * в порядке элементов. В параллельном режиме одновременно выполняется не больше
+     * {@code recommendation.concurrent.max-per-call} задач одного вызова; {@code sink}
+     * всегда вызывается в потоке вызывающего.
+     */
+    public <T, R> void mapOrdered(List<T> items, Function<T, R> work, Consumer<R> sink) {
+        if (!enabled || items.size() < 2) {
+            items.forEach(item -> sink.accept(work.apply(item)));
+            return;
+        }
+
+        OrderedPipeline<R> pipeline = pipeline(sink, maxPerCall);
+        try {
+            for (T item : items) {
+                pipeline.submit(() -> work.apply(item));
+            }
+            pipeline.finish();
+        } catch (RuntimeException e) {
+            pipeline.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Конвейер для заранее неизвестного числа задач: результаты передаются в {@code sink}
+     * в порядке отправки, одновременно выполняется не больше {@code maxInFlight} задач
+     * (но не больше {@code parallelism}). При {@code maxInFlight <= 1} задачи выполняются
+     * в потоке вызывающего.
+     */
+    public <R> OrderedPipeline<R> pipeline(Consumer<R> sink, int maxInFlight) {
+        return new OrderedPipeline<>(sink, Math.min(maxInFlight, parallelism));
+    }
+
+    /**
+     * Выполняет задачу в пуле и ждёт результат не дольше {@code timeoutNanos}.
+     * По истечении времени задача продолжает выполняться, а вызов возвращает пустой результат.
+     * Если пул переполнен, задача не выполняется и вызов сразу возвращает пустой результат:
+     * выполнение в потоке вызывающего не уложилось бы в срок.
+     */
+    public <R> Optional<R> callWithin(Supplier<R> task, long timeoutNanos) {
+        if (timeoutNanos <= 0) {
+            return Optional.empty();
+        }
+        Future<R> future;
+        try {
+            future = submit(task);
+        } catch (RejectedExecutionException e) {
+            log.debug("Recommendation executor saturated, task with deadline rejected");
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(future.get(timeoutNanos, TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Ожидание результата прервано");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private <R> Future<R> submit(Supplier<R> task) {
+        long submittedAt = System.nanoTime();
+        return executor.submit(() -> {
+            long startedAt = System.nanoTime();
+            queueTimer.record(startedAt - submittedAt, TimeUnit.NANOSECONDS);
+            try {
+                return task.get();
+            } finally {
+                executionTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    private static <R> R await(Future<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Ожидание результата прервано");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Окно выполняющихся задач с упорядоченной выдачей результатов.
+     * Используется одним потоком; {@link #submit(Supplier)} блокируется, пока окно заполнено,
+     * и сам выдаёт готовые результаты в {@code sink}.
+     */
+    public final class OrderedPipeline<R> {
+        private final Consumer<R> sink;
+        private final int maxInFlight;
+        private final Deque<Future<R>> inFlight = new ArrayDeque<>();
+
+        private OrderedPipeline(Consumer<R> sink, int maxInFlight) {
+            this.sink = sink;
+            this.maxInFlight = maxInFlight;
+        }
+
+        public void submit(Supplier<R> task) {
+            if (maxInFlight <= 1) {
+                sink.accept(task.get());
+                return;
+            }
+            if (inFlight.size() == maxInFlight) {
+                sink.accept(await(inFlight.removeFirst()));
+            }
+            while (true) {
+                try {
+                    inFlight.addLast(RecommendationExecutor.this.submit(task));
+                    return;
+                } catch (RejectedExecutionException e) {
+                    if (inFlight.isEmpty()) {
+                        inFlight.addLast(CompletableFuture.completedFuture(task.get()));
+                        return;
+                    }
+                    sink.accept(await(inFlight.removeFirst()));
+                }
+            }
+        }
+
+        /**
+         * Дожидается оставшихся задач и выдаёт их результаты
+         */
+        public void finish() {
+            while (!inFlight.isEmpty()) {
+                sink.accept(await(inFlight.removeFirst()));
+            }
+        }
+
+        /**
+         * Отменяет невыданные задачи
+         */
+        public void cancel() {
+            inFlight.forEach(future -> future.cancel(true));
+            inFlight.clear();
+        }
+    }
+}
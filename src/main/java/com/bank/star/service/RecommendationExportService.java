@@ -0,0 +1,236 @@
+package com.bank.star.service;
+
+import com.bank.star.dto.RecommendationDTO;
+import com.bank.star.dto.ResponseDTO;
+import com.bank.star.exception.ServiceOverloadedException;
+import com.bank.star.repository.UserIdIndex;
+import com.bank.star.service.RecommendationExecutor.OrderedPipeline;
+import com.bank.star.service.rule.RuleSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Выгрузка рекомендаций всех клиентов в формате NDJSON — по одному {@link ResponseDTO} на строку.
+ * <p>
+ * Идентификаторы клиентов читаются потоковой выборкой с ограниченным {@code fetchSize}
+ * и собираются в порции по {@code recommendation.export.chunk-size}. Порции вычисляются
+ * параллельно в {@link RecommendationExecutor} (не больше {@code recommendation.export.parallelism}
+ * одновременно) и записываются в порядке чтения, поэтому в памяти находится лишь несколько
+ * порций независимо от числа клиентов.
+ * </p>
+ * <p>
+ * Выгрузка держит соединение потоковой выборки и несколько задач в общем пуле, поэтому
+ * по HTTP одновременно выполняется не больше {@code recommendation.export.max-concurrent}
+ * выгрузок ({@link #acquirePermit()}), остальные получают 503.
+ * </p>
+ * Скорость выгрузки пишется в журнал каждые {@code recommendation.export.progress-interval}
+ * и учитывается счётчиком {@code bankstar.export.users}.
+ */
+@Service
+@Slf4j
+public class RecommendationExportService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final RecommendationService recommendationService;
+    private final DynamicRuleService dynamicRuleService;
+    private final UserIdIndex userIdIndex;
+    private final RecommendationExecutor executor;
+    private final ObjectWriter writer;
+    private final Counter exportedUsers;
+    private final Semaphore permits;
+
+    @Value("${recommendation.export.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${recommendation.export.parallelism:4}")
+    private int parallelism;
+
+    @Value("${recommendation.export.progress-interval:10s}")
+    private Duration progressInterval;
+
+    @Value("${recommendation.admission.retry-after:1s}")
+    private Duration retryAfter;
+
+    public RecommendationExportService(RecommendationService recommendationService,
+                                       DynamicRuleService dynamicRuleService,
+                                       UserIdIndex userIdIndex,
+                                       RecommendationExecutor executor,
+                                       ObjectMapper objectMapper,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${recommendation.export.max-concurrent:1}") int maxConcurrent) {
+        this.recommendationService = recommendationService;
+        this.dynamicRuleService = dynamicRuleService;
+        this.userIdIndex = userIdIndex;
+        this.executor = executor;
+        this.writer = objectMapper.writerFor(ResponseDTO.class);
+        this.exportedUsers = Counter.builder("bankstar.export.users")
+                                    .description("Клиенты, выгруженные в NDJSON")
+                                    .register(meterRegistry);
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Занимает место для выгрузки
+     *
+     * @return разрешение; освобождается закрытием, повторное закрытие ничего не делает
+     * @throws ServiceOverloadedException если заняты все места
+     */
+    public ExportPermit acquirePermit() {
+        if (!permits.tryAcquire()) {
+            log.warn("Rejecting recommendation export: the maximum number of exports is already running");
+            throw new ServiceOverloadedException(Math.max(1, retryAfter.toSeconds()));
+        }
+        return new ExportPermit();
+    }
+
+    /**
+     * Выгружает рекомендации всех клиентов в поток. Поток не закрывается.
+     *
+     * @param gzip сжимать ли вывод
+     * @return число выгруженных клиентов
+     */
+    public long export(OutputStream out, boolean gzip) throws IOException {
+        RuleSnapshot rules = dynamicRuleService.getRuleSnapshot();
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+        OutputStream target = new BufferedOutputStream(compressed != null ? compressed : out, BUFFER_SIZE);
+        Progress progress = new Progress(System.nanoTime());
+
+        OrderedPipeline<List<ResponseDTO>> pipeline = executor.pipeline(responses -> {
+            write(target, responses);
+            progress.add(responses.size());
+        }, parallelism);
+
+        log.info("Starting recommendation export: gzip={}", gzip);
+        List<UUID> chunk = new ArrayList<>(chunkSize);
+        try {
+            userIdIndex.forEachUserId(userId -> {
+                chunk.add(userId);
+                if (chunk.size() == chunkSize) {
+                    List<UUID> full = List.copyOf(chunk);
+                    chunk.clear();
+                    pipeline.submit(() -> evaluate(full, rules));
+                }
+            });
+            if (!chunk.isEmpty()) {
+                List<UUID> last = List.copyOf(chunk);
+                pipeline.submit(() -> evaluate(last, rules));
+            }
+            pipeline.finish();
+        } catch (UncheckedIOException e) {
+            pipeline.cancel();
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            pipeline.cancel();
+            throw e;
+        }
+
+        target.flush();
+        if (compressed != null) {
+            compressed.finish();
+        }
+        out.flush();
+
+        long seconds = Math.max(1, (System.nanoTime() - progress.startedAt) / 1_000_000_000);
+        log.info("Recommendation export completed: {} users in {} s ({} users/s)", progress.users, seconds,
+                progress.users / seconds);
+        return progress.users;
+    }
+
+    /**
+     * Выгружает рекомендации всех клиентов в файл; файл с расширением {@code .gz} сжимается
+     *
+     * @return число выгруженных клиентов
+     */
+    public long export(Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            return export(out, file.getFileName().toString().endsWith(".gz"));
+        }
+    }
+
+    private List<ResponseDTO> evaluate(List<UUID> userIds, RuleSnapshot rules) {
+        Map<UUID, List<RecommendationDTO>> recommendations = recommendationService.computeRecommendations(userIds,
+                rules);
+        List<ResponseDTO> responses = new ArrayList<>(userIds.size());
+        for (UUID userId : userIds) {
+            responses.add(new ResponseDTO(userId, recommendations.getOrDefault(userId, List.of())));
+        }
+        return responses;
+    }
+
+    private void write(OutputStream target, List<ResponseDTO> responses) {
+        try {
+            for (ResponseDTO response : responses) {
+                target.write(writer.writeValueAsBytes(response));
+                target.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Занятое место для выгрузки
+     */
+    public final class ExportPermit implements AutoCloseable {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private ExportPermit() {
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Счётчик выгрузки; используется только в потоке, записывающем результат
+     */
+    private final class Progress {
+        private final long startedAt;
+        private long users;
+        private long reportedAt;
+        private long reportedUsers;
+
+        private Progress(long startedAt) {
+            this.startedAt = startedAt;
+            this.reportedAt = startedAt;
+        }
+
+        void add(int count) {
+            users += count;
+            exportedUsers.increment(count);
+
+            long now = System.nanoTime();
+            if (now - reportedAt >= progressInterval.toNanos()) {
+                long rate = (users - reportedUsers) * 1_000_000_000L / (now - reportedAt);
+                log.info("Recommendation export: {} users, {} users/s", users, rate);
+                reportedAt = now;
+                reportedUsers = users;
+            }
+        }
+    }
+}
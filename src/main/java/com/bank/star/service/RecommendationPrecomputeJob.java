@@ -0,0 +1,213 @@
+package com.bank.star.service;
+
+import com.bank.star.dto.RecommendationDTO;
+import com.bank.star.repository.PrecomputedRecommendationRepository;
+import com.bank.star.repository.PrecomputedRecommendationRepository.JobStatus;
+import com.bank.star.repository.ShardRouter;
+import com.bank.star.repository.UserIdIndex;
+import com.bank.star.service.rule.RuleSnapshot;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ночное задание предвычисления рекомендаций всех клиентов.
+ * <p>
+ * Клиенты из {@code public.users} делятся на {@code recommendation.precompute.partitions}
+ * партиций по слоту {@link ShardRouter#slotOf(UUID)}, поэтому состав партиции не зависит
+ * от порядка выборки. Партиции обрабатываются параллельно в
+ * {@code recommendation.precompute.threads} потоках: профили порции загружаются одним запросом,
+ * а рекомендации записываются пакетом JDBC в {@code user_recommendations}.
+ * </p>
+ * <p>
+ * Завершённая партиция фиксируется в базе. Если предыдущий запуск с той же версией
+ * правил не завершился, следующий продолжает его и пропускает готовые партиции.
+ * Прогресс пишется в журнал после каждой партиции и доступен в датчиках
+ * {@code bankstar.precompute.users} с тегом {@code state=total|processed}.
+ * </p>
+ */
+@Service
+@Slf4j
+public class RecommendationPrecomputeJob {
+
+    private final RecommendationService recommendationService;
+    private final DynamicRuleService dynamicRuleService;
+    private final UserIdIndex userIdIndex;
+    private final PrecomputedRecommendationRepository precomputedRepository;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong totalUsers = new AtomicLong();
+    private final AtomicLong processedUsers = new AtomicLong();
+
+    @Value("${recommendation.precompute.enabled:false}")
+    private boolean enabled;
+
+    @Value("${recommendation.precompute.partitions:64}")
+    private int partitions;
+
+    @Value("${recommendation.precompute.threads:4}")
+    private int threads;
+
+    @Value("${recommendation.precompute.chunk-size:1000}")
+    private int chunkSize;
+
+    public RecommendationPrecomputeJob(RecommendationService recommendationService,
+                                       DynamicRuleService dynamicRuleService,
+                                       UserIdIndex userIdIndex,
+                                       PrecomputedRecommendationRepository precomputedRepository,
+                                       MeterRegistry meterRegistry) {
+        this.recommendationService = recommendationService;
+        this.dynamicRuleService = dynamicRuleService;
+        this.userIdIndex = userIdIndex;
+        this.precomputedRepository = precomputedRepository;
+
+        Gauge.builder("bankstar.precompute.users", totalUsers, AtomicLong::get)
+             .description("Клиенты текущего запуска предвычисления")
+             .tag("state", "total")
+             .register(meterRegistry);
+        Gauge.builder("bankstar.precompute.users", processedUsers, AtomicLong::get)
+             .description("Клиенты текущего запуска предвычисления")
+             .tag("state", "processed")
+             .register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${recommendation.precompute.cron:0 0 3 * * *}")
+    public void scheduledRun() {
+        if (enabled) {
+            run();
+        }
+    }
+
+    /**
+     * Запускает или продолжает задание. На всех экземплярах приложения одновременно
+     * выполняется не более одного запуска.
+     */
+    public void run() {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Precompute job is already running");
+            return;
+        }
+        try {
+            if (!precomputedRepository.runExclusively(this::execute)) {
+                log.info("Precompute job is running on another instance, skipping");
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void execute() {
+        RuleSnapshot rules = dynamicRuleService.getRuleSnapshot();
+        String ruleSetVersion = recommendationService.ruleSetVersion(rules);
+
+        Optional<Long> resumable = precomputedRepository.findResumableJob(ruleSetVersion, partitions);
+        long jobId;
+        Set<Integer> completed;
+        if (resumable.isPresent()) {
+            jobId = resumable.get();
+            completed = precomputedRepository.findCompletedPartitions(jobId);
+            precomputedRepository.updateJobStatus(jobId, JobStatus.RUNNING);
+            log.info("Resuming precompute job {}: {} of {} partitions already completed", jobId, completed.size(),
+                    partitions);
+        } else {
+            jobId = precomputedRepository.createJob(ruleSetVersion, partitions);
+            completed = Set.of();
+            log.info("Starting precompute job {} for rule set {}", jobId, ruleSetVersion);
+        }
+
+        List<List<UUID>> buckets = partitionUsers(completed);
+        totalUsers.set(buckets.stream().mapToLong(List::size).sum());
+        processedUsers.set(0);
+
+        long startedAt = System.nanoTime();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "recommendation-precompute-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int partition = 0; partition < partitions; partition++) {
+                if (!completed.contains(partition)) {
+                    int partitionNo = partition;
+                    futures.add(pool.submit(() -> processPartition(jobId, partitionNo, buckets.get(partitionNo),
+                            rules, ruleSetVersion)));
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            precomputedRepository.updateJobStatus(jobId, JobStatus.COMPLETED);
+            log.info("Precompute job {} completed: {} users in {} s", jobId, processedUsers.get(),
+                    (System.nanoTime() - startedAt) / 1_000_000_000);
+
+        } catch (ExecutionException e) {
+            pool.shutdownNow();
+            precomputedRepository.updateJobStatus(jobId, JobStatus.FAILED);
+            log.error("Precompute job {} failed after {}/{} users; it will resume on the next run", jobId,
+                    processedUsers.get(), totalUsers.get(), e.getCause());
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            precomputedRepository.updateJobStatus(jobId, JobStatus.FAILED);
+            Thread.currentThread().interrupt();
+            log.warn("Precompute job {} interrupted after {}/{} users", jobId, processedUsers.get(), totalUsers.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Раскладывает клиентов незавершённых партиций по партициям
+     */
+    private List<List<UUID>> partitionUsers(Set<Integer> completed) {
+        List<List<UUID>> buckets = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            buckets.add(new ArrayList<>());
+        }
+        userIdIndex.forEachUserId(userId -> {
+            int partition = (int) ((long) ShardRouter.slotOf(userId) * partitions / ShardRouter.SLOTS);
+            if (!completed.contains(partition)) {
+                buckets.get(partition).add(userId);
+            }
+        });
+        return buckets;
+    }
+
+    private void processPartition(long jobId, int partition, List<UUID> userIds, RuleSnapshot rules,
+                                  String ruleSetVersion) {
+        for (int from = 0; from < userIds.size(); from += chunkSize) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Задание предвычисления остановлено");
+            }
+            List<UUID> chunk = userIds.subList(from, Math.min(from + chunkSize, userIds.size()));
+            Map<UUID, List<RecommendationDTO>> recommendations = recommendationService.computeRecommendations(chunk,
+                    rules);
+            precomputedRepository.saveAll(recommendations, ruleSetVersion);
+            processedUsers.addAndGet(chunk.size());
+        }
+
+        precomputedRepository.markPartitionCompleted(jobId, partition, userIds.size());
+        log.info("Precompute job {}: partition {} done ({} users), progress {}/{}", jobId, partition,
+                userIds.size(), processedUsers.get(), totalUsers.get());
+    }
+}
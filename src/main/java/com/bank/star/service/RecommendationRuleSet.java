@@ -1,6 +1,7 @@
 package com.bank.star.service;
 
 import com.bank.star.dto.RecommendationDTO;
+import com.bank.star.model.UserTransactionProfile;
 
 import java.util.Optional;
 import java.util.UUID;
@@ -16,8 +17,13 @@ public interface RecommendationRuleSet {
     /**
      * Проверяет, подходит ли продукт для пользователя
      *
-     * @param userId идентификатор пользователя
+     * @param profile агрегированный профиль транзакций пользователя
      * @return Optional с рекомендацией, если правило выполняется
      */
-    Optional<RecommendationDTO> check(UUID userId);
+    Optional<RecommendationDTO> check(UserTransactionProfile profile);
+
+    /**
+     * Идентификатор рекомендуемого продукта
+     */
+    UUID getProductId();
 }
@@ -1,92 +1,491 @@
 package com.bank.star.service;
 
+import com.bank.star.config.tracing.RequestTracer;
+import com.bank.star.config.web.RequestDeadline;
 import com.bank.star.dto.RecommendationDTO;
+import com.bank.star.dto.RecommendationExplainResponseDTO;
+import com.bank.star.dto.RecommendationExplainResponseDTO.ConditionExplainDTO;
+import com.bank.star.dto.RecommendationExplainResponseDTO.RuleExplainDTO;
+import com.bank.star.dto.RecommendationExplainResponseDTO.Source;
 import com.bank.star.dto.ResponseDTO;
-import com.bank.star.entity.DynamicRuleEntity;
-import lombok.RequiredArgsConstructor;
+import com.bank.star.exception.DatabaseQueryException;
+import com.bank.star.exception.DeadlineExceededException;
+import com.bank.star.jfr.CacheLookupEvent;
+import com.bank.star.jfr.RuleEvaluationEvent;
+import com.bank.star.model.UserTransactionProfile;
+import com.bank.star.repository.PrecomputedRecommendationRepository;
+import com.bank.star.repository.UserIdIndex;
+import com.bank.star.service.rule.CompiledCondition;
+import com.bank.star.service.rule.CompiledRule;
+import com.bank.star.service.rule.RuleMatrix;
+import com.bank.star.service.rule.RuleSnapshot;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
- * Сервис для получения рекомендаций продуктов
+ * Сервис для получения рекомендаций продуктов.
+ * <p>
+ * Готовые рекомендации клиента кэшируются по паре «клиент, версия набора правил».
+ * Создание или удаление правила увеличивает версию, и старые записи
+ * перестают находиться без полной очистки кэша.
+ * Одновременные запросы одного клиента при промахе кэша объединяются
+ * через {@link SingleFlight}: профиль загружается и правила вычисляются один раз.
+ * Если у запроса задан срок и профиль не успевает загрузиться, возвращается
+ * неполный ответ с флагом {@code partial}; такие ответы не кэшируются и не передаются
+ * объединённым запросам — они загружают профиль сами, каждый в пределах своего срока.
+ * </p>
+ * <p>
+ * При {@code recommendation.precomputed.enabled} промах кэша сначала ищется в таблице
+ * {@code user_recommendations}, которую заполняет {@link RecommendationPrecomputeJob}.
+ * Запись используется, только если вычислена по текущей версии набора правил
+ * ({@link #ruleSetVersion(RuleSnapshot)}) и не старше {@code recommendation.precomputed.max-age};
+ * иначе рекомендации вычисляются по транзакциям.
+ * </p>
+ * <p>
+ * Рекомендации, выданные клиентам (из кэша или вычисленные), учитываются в {@link RuleStatsService};
+ * выгрузка и предвычисление их не учитывают.
+ * </p>
+ * Исход поиска в кэше, поиск предвычисленной записи, каждый зашитый набор правил и матрица
+ * динамических правил замеряются {@link RequestTracer}.
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class RecommendationService {
 
+    public static final String RESPONSE_CACHE = "recommendationResponse";
+
+    /**
+     * Ревизия зашитых наборов правил ({@link RecommendationRuleSet}); увеличивается при изменении
+     * их логики, чтобы предвычисленные рекомендации по старым правилам перестали использоваться
+     */
+    private static final int HARDCODED_RULES_REVISION = 1;
+
+    /**
+     * Исход поиска готовых рекомендаций в кэше — тег трассы и отметка в {@code Server-Timing}
+     */
+    private static final String CACHE_EVENT = "cache";
+
     private final List<RecommendationRuleSet> ruleSets;
     private final DynamicRuleService dynamicRuleService;
     private final QueryService queryService;
+    private final UserIdIndex userIdIndex;
+    private final RecommendationExecutor executor;
+    private final PrecomputedRecommendationRepository precomputedRepository;
+    private final RuleStatsService ruleStatsService;
+    private final RuleMetrics ruleMetrics;
+    private final RequestTracer requestTracer;
+    private final Cache<Object, Object> responseCache;
+    private final SingleFlight<ResponseCacheKey, Evaluation> responseFlight;
+
+    @Value("${recommendation.batch.chunk-size:500}")
+    private int batchChunkSize;
+
+    @Value("${recommendation.batch.max-users:10000}")
+    private int batchMaxUsers;
+
+    @Value("${recommendation.precomputed.enabled:false}")
+    private boolean precomputedEnabled;
+
+    @Value("${recommendation.precomputed.max-age:36h}")
+    private Duration precomputedMaxAge;
+
+    @SuppressWarnings("unchecked")
+    public RecommendationService(List<RecommendationRuleSet> ruleSets,
+                                 DynamicRuleService dynamicRuleService,
+                                 QueryService queryService,
+                                 UserIdIndex userIdIndex,
+                                 RecommendationExecutor executor,
+                                 PrecomputedRecommendationRepository precomputedRepository,
+                                 RuleStatsService ruleStatsService,
+                                 RuleMetrics ruleMetrics,
+                                 RequestTracer requestTracer,
+                                 CacheManager cacheManager,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${recommendation.single-flight.timeout:2s}") Duration singleFlightTimeout) {
+        this.ruleSets = ruleSets;
+        this.dynamicRuleService = dynamicRuleService;
+        this.queryService = queryService;
+        this.userIdIndex = userIdIndex;
+        this.executor = executor;
+        this.precomputedRepository = precomputedRepository;
+        this.ruleStatsService = ruleStatsService;
+        this.ruleMetrics = ruleMetrics;
+        this.requestTracer = requestTracer;
+        this.responseCache = (Cache<Object, Object>) Objects.requireNonNull(cacheManager.getCache(RESPONSE_CACHE))
+                                                            .getNativeCache();
+        this.responseFlight = new SingleFlight<>("recommendation", singleFlightTimeout, meterRegistry,
+                evaluation -> !evaluation.partial());
+    }
 
     /**
      * Публичный метод для контроллера.
      * Формирует полный ResponseDTO.
      */
     public ResponseDTO getRecommendationsResponse(UUID userId) {
-        List<RecommendationDTO> recommendations = getRecommendations(userId);
-        return new ResponseDTO(userId, recommendations);
+        Evaluation evaluation = getRecommendations(userId);
+        ruleStatsService.recordFired(evaluation.recommendations());
+        return new ResponseDTO(userId, evaluation.recommendations(), evaluation.partial());
     }
 
     /**
-     * Формирует список рекомендаций для клиента
+     * Разбирает вычисление рекомендаций клиента: результат и время каждого зашитого набора правил
+     * и каждого условия динамических правил.
+     * <p>
+     * Правила вычисляются заново по тому же профилю, что и в обычном запросе, мимо кэша ответов
+     * и статистики срабатываний; профиль берётся из кэша профилей или загружается из базы.
+     * Условия вычисляются по загруженному профилю, поэтому их источник совпадает с источником профиля.
+     * </p>
      */
-    private List<RecommendationDTO> getRecommendations(UUID userId) {
-        log.info("Getting recommendations for User {}", userId);
+    public RecommendationExplainResponseDTO explain(UUID userId) {
+        long startedAt = System.nanoTime();
+        log.info("Explaining recommendations for User {}", userId);
 
-        List<RecommendationDTO> recommendations = new ArrayList<>();
+        RuleSnapshot rules = dynamicRuleService.getRuleSnapshot();
+        RecommendationExplainResponseDTO.RecommendationExplainResponseDTOBuilder explanation =
+                RecommendationExplainResponseDTO.builder()
+                                                .userId(userId)
+                                                .ruleSetVersion(ruleSetVersion(rules))
+                                                .ruleSets(List.of())
+                                                .dynamicRules(List.of())
+                                                .recommendations(List.of());
+        if (!userIdIndex.contains(userId)) {
+            return explanation.userKnown(false)
+                              .elapsedMs((System.nanoTime() - startedAt) / 1_000_000)
+                              .build();
+        }
 
+        Source servedFrom;
+        if (responseCache.asMap().containsKey(new ResponseCacheKey(userId, rules.version()))) {
+            servedFrom = Source.RESPONSE_CACHE;
+        } else if (findPrecomputed(userId, rules).isPresent()) {
+            servedFrom = Source.PRECOMPUTED;
+        } else {
+            servedFrom = Source.DATABASE;
+        }
+
+        long profileStartedAt = System.nanoTime();
+        Optional<UserTransactionProfile> cachedProfile = queryService.cachedProfile(userId);
+        UserTransactionProfile profile = cachedProfile.orElseGet(() -> queryService.loadProfile(userId));
+        long profileElapsed = System.nanoTime() - profileStartedAt;
+        Source profileSource = cachedProfile.isPresent() ? Source.PROFILE_CACHE : Source.DATABASE;
+
+        List<RecommendationDTO> recommendations = new ArrayList<>();
+        List<RuleExplainDTO> ruleSetResults = new ArrayList<>();
         for (RecommendationRuleSet ruleSet : ruleSets) {
-            Optional<RecommendationDTO> recommendation = ruleSet.check(userId);
+            long ruleStartedAt = System.nanoTime();
+            Optional<RecommendationDTO> recommendation = ruleSet.check(profile);
+            ruleSetResults.add(RuleExplainDTO.builder()
+                                             .productId(ruleSet.getProductId())
+                                             .matched(recommendation.isPresent())
+                                             .source(profileSource)
+                                             .elapsedNs(System.nanoTime() - ruleStartedAt)
+                                             .build());
             recommendation.ifPresent(recommendations::add);
         }
 
-        List<DynamicRuleEntity> dynamicRules = dynamicRuleService.getAllRules();
-        for (DynamicRuleEntity rule : dynamicRules) {
-            if (evaluateDynamicRule(userId, rule)) {
-                recommendations.add(
-                        new RecommendationDTO(
-                                rule.getProductId(),
-                                rule.getProductName(),
-                                rule.getProductText()
-                        )
-                );
+        List<RuleExplainDTO> dynamicRuleResults = new ArrayList<>();
+        for (CompiledRule rule : rules.rules()) {
+            long ruleStartedAt = System.nanoTime();
+            List<ConditionExplainDTO> conditions = new ArrayList<>();
+            for (CompiledCondition condition : rule.conditions()) {
+                long conditionStartedAt = System.nanoTime();
+                boolean queryResult = queryService.test(profile, condition.predicate());
+                conditions.add(ConditionExplainDTO.builder()
+                                                  .query(condition.predicate().kind().name())
+                                                  .arguments(condition.predicate().arguments())
+                                                  .negate(condition.negate())
+                                                  .queryResult(queryResult)
+                                                  .result(queryResult != condition.negate())
+                                                  .source(profileSource)
+                                                  .elapsedNs(System.nanoTime() - conditionStartedAt)
+                                                  .build());
+            }
+            boolean matched = !conditions.isEmpty() && conditions.stream().allMatch(ConditionExplainDTO::isResult);
+            dynamicRuleResults.add(RuleExplainDTO.builder()
+                                                 .productId(rule.productId())
+                                                 .productName(rule.productName())
+                                                 .matched(matched)
+                                                 .source(profileSource)
+                                                 .elapsedNs(System.nanoTime() - ruleStartedAt)
+                                                 .conditions(conditions)
+                                                 .build());
+            if (matched) {
+                recommendations.add(rule.toRecommendation());
             }
         }
 
+        return explanation.userKnown(true)
+                          .servedFrom(servedFrom)
+                          .profileSource(profileSource)
+                          .profileElapsedNs(profileElapsed)
+                          .ruleSets(ruleSetResults)
+                          .dynamicRules(dynamicRuleResults)
+                          .recommendations(recommendations)
+                          .elapsedMs((System.nanoTime() - startedAt) / 1_000_000)
+                          .build();
+    }
+
+    /**
+     * Проверяет список клиентов пакетного запроса.
+     * Вызывается до начала потоковой отдачи, чтобы ошибка вернулась клиенту как 400.
+     */
+    public void validateBatch(List<UUID> userIds) {
+        if (userIds.size() > batchMaxUsers) {
+            throw new IllegalArgumentException(
+                    String.format("Слишком много пользователей в запросе: %d, максимум %d", userIds.size(), batchMaxUsers));
+        }
+        if (userIds.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Список пользователей содержит пустой идентификатор");
+        }
+    }
+
+    /**
+     * Формирует рекомендации для набора клиентов.
+     * <p>
+     * Клиенты обрабатываются порциями по {@code recommendation.batch.chunk-size}:
+     * на порцию выполняется один запрос к базе. В параллельном режиме
+     * ({@code recommendation.concurrent.enabled}) порции загружаются одновременно
+     * в ограниченном пуле {@link RecommendationExecutor}, иначе последовательно
+     * на одном соединении. Ответы передаются в {@code sink} в порядке исходного
+     * списка по мере готовности.
+     * </p>
+     */
+    public void streamRecommendationsResponses(List<UUID> userIds, Consumer<ResponseDTO> sink) {
+        log.info("Getting recommendations for batch of {} users", userIds.size());
+        RuleSnapshot rules = dynamicRuleService.getRuleSnapshot();
+
+        List<List<UUID>> chunks = new ArrayList<>();
+        for (int from = 0; from < userIds.size(); from += batchChunkSize) {
+            chunks.add(userIds.subList(from, Math.min(from + batchChunkSize, userIds.size())));
+        }
+
+        executor.mapOrdered(chunks, chunk -> evaluateChunk(chunk, rules), responses -> responses.forEach(response -> {
+            ruleStatsService.recordFired(response.getRecommendations());
+            sink.accept(response);
+        }));
+    }
+
+    /**
+     * Загружает профили порции одним запросом и вычисляет для них правила
+     */
+    private List<ResponseDTO> evaluateChunk(List<UUID> chunk, RuleSnapshot rules) {
+        Map<UUID, List<RecommendationDTO>> recommendations = computeRecommendations(
+                chunk.stream().filter(userIdIndex::contains).toList(), rules);
+
+        List<ResponseDTO> responses = new ArrayList<>(chunk.size());
+        for (UUID userId : chunk) {
+            responses.add(new ResponseDTO(userId, recommendations.getOrDefault(userId, List.of())));
+        }
+        return responses;
+    }
+
+    /**
+     * Вычисляет рекомендации набора клиентов по транзакциям, загружая профили одним запросом
+     */
+    public Map<UUID, List<RecommendationDTO>> computeRecommendations(Collection<UUID> userIds, RuleSnapshot rules) {
+        Map<UUID, List<RecommendationDTO>> recommendations = new LinkedHashMap<>();
+        queryService.loadProfiles(userIds).forEach((userId, profile) -> recommendations.put(userId,
+                evaluate(profile, rules)));
         return recommendations;
     }
 
-    private boolean evaluateDynamicRule(UUID userId, DynamicRuleEntity rule) {
-        if (rule.getRule() == null || rule.getRule().isEmpty()) {
-            return false;
+    /**
+     * Версия полного набора правил — зашитых и динамических; совпадает на всех экземплярах
+     */
+    public String ruleSetVersion(RuleSnapshot rules) {
+        return "h" + HARDCODED_RULES_REVISION + "-" + rules.fingerprint();
+    }
+
+    /**
+     * Формирует список рекомендаций для клиента
+     */
+    @SuppressWarnings("unchecked")
+    private Evaluation getRecommendations(UUID userId) {
+        log.info("Getting recommendations for User {}", userId);
+
+        if (!userIdIndex.contains(userId)) {
+            log.debug("Unknown User {}, skipping rule evaluation", userId);
+            requestTracer.event(CACHE_EVENT, "unknown-user");
+            return new Evaluation(List.of(), false);
+        }
+
+        RuleSnapshot rules = dynamicRuleService.getRuleSnapshot();
+        ResponseCacheKey key = new ResponseCacheKey(userId, rules.version());
+        CacheLookupEvent lookup = new CacheLookupEvent();
+        lookup.begin();
+        Object cached = responseCache.getIfPresent(key);
+        if (lookup.shouldCommit()) {
+            lookup.cache = RESPONSE_CACHE;
+            lookup.userIdHash = userId.hashCode();
+            lookup.fromCache = cached != null;
+            lookup.commit();
+        }
+        if (cached != null) {
+            requestTracer.event(CACHE_EVENT, "hit");
+            return new Evaluation((List<RecommendationDTO>) cached, false);
         }
+        requestTracer.event(CACHE_EVENT, "miss");
 
-        for (DynamicRuleEntity.QueryCondition condition : rule.getRule()) {
-            if (!evaluateQueryCondition(userId, condition)) {
-                return false;
+        return responseFlight.execute(key, () -> {
+            Optional<List<RecommendationDTO>> precomputed = requestTracer.trace("precomputed", null,
+                    () -> findPrecomputed(userId, rules));
+            if (precomputed.isPresent()) {
+                responseCache.put(key, precomputed.get());
+                return new Evaluation(precomputed.get(), false);
+            }
+
+            Optional<UserTransactionProfile> profile = loadProfileWithinDeadline(userId);
+            if (profile.isEmpty()) {
+                log.warn("Transaction profile of User {} not loaded within request deadline, returning partial result",
+                        userId);
+                return new Evaluation(List.of(), true);
+            }
+
+            List<RecommendationDTO> recommendations = List.copyOf(evaluate(profile.get(), rules));
+            responseCache.put(key, recommendations);
+            return new Evaluation(recommendations, false);
+        });
+    }
+
+    /**
+     * Предвычисленные рекомендации клиента по текущей версии правил.
+     * Недоступность или медленный ответ базы правил не мешают ответу: запрос ограничен таймаутом,
+     * и рекомендации вычисляются по транзакциям.
+     */
+    private Optional<List<RecommendationDTO>> findPrecomputed(UUID userId, RuleSnapshot rules) {
+        if (!precomputedEnabled) {
+            return Optional.empty();
+        }
+        try {
+            Optional<List<RecommendationDTO>> precomputed = precomputedRepository.find(userId, ruleSetVersion(rules),
+                    LocalDateTime.now().minus(precomputedMaxAge));
+            if (precomputed.isEmpty()) {
+                log.debug("No current precomputed recommendations for User {}, evaluating live", userId);
             }
+            return precomputed;
+        } catch (DatabaseQueryException e) {
+            log.warn("Precomputed recommendations unavailable for User {}, evaluating live", userId);
+            return Optional.empty();
+        } catch (DeadlineExceededException e) {
+            return Optional.empty();
         }
-        return true;
     }
 
-    private boolean evaluateQueryCondition(UUID userId, DynamicRuleEntity.QueryCondition condition) {
+    /**
+     * Загружает профиль клиента с учётом срока запроса.
+     * <p>
+     * Без срока профиль загружается в текущем потоке. Со сроком промах кэша
+     * загружается в пуле {@link RecommendationExecutor} и ожидается не дольше
+     * оставшегося времени; незавершённая загрузка продолжается и заполняет кэш
+     * для следующих запросов, а её JDBC-запрос ограничен тем же сроком.
+     * </p>
+     *
+     * @return профиль или пустой результат, если срок истёк
+     */
+    private Optional<UserTransactionProfile> loadProfileWithinDeadline(UUID userId) {
+        if (!RequestDeadline.isSet()) {
+            return Optional.of(queryService.loadProfile(userId));
+        }
+
+        Optional<UserTransactionProfile> cached = queryService.cachedProfile(userId);
+        if (cached.isPresent()) {
+            return cached;
+        }
+
         try {
-            return switch (condition.getQuery()) {
-                case "USER_OF" ->
-                        queryService.checkUserOf(userId, condition.getArguments().get(0), condition.isNegate());
-                case "ACTIVE_USER_OF" ->
-                        queryService.checkActiveUserOf(userId, condition.getArguments().get(0), condition.isNegate());
-                default -> false;
-            };
-        } catch (Exception e) {
-            log.error("Error evaluating query condition", e);
-            return false;
+            return executor.callWithin(requestTracer.propagate(RequestDeadline.propagate(
+                    () -> queryService.loadProfile(userId))), RequestDeadline.remainingNanos());
+        } catch (DeadlineExceededException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Вычисляет все правила по профилю клиента
+     */
+    private List<RecommendationDTO> evaluate(UserTransactionProfile profile, RuleSnapshot rules) {
+        List<RecommendationDTO> recommendations = new ArrayList<>();
+
+        for (RecommendationRuleSet ruleSet : ruleSets) {
+            Optional<RecommendationDTO> recommendation = requestTracer.trace("rule", ruleSet.getProductId().toString(),
+                    () -> ruleMetrics.evaluationTimer(ruleSet.getProductId()).record(() -> check(ruleSet, profile)));
+            if (recommendation.isPresent()) {
+                ruleMetrics.recordHit(ruleSet.getProductId());
+                recommendations.add(recommendation.get());
+            }
+        }
+
+        requestTracer.trace("rules.dynamic", null,
+                () -> ruleMetrics.dynamicEvaluationTimer().record(() -> match(rules.matrix(), profile, recommendations)));
+
+        return recommendations;
+    }
+
+    private Optional<RecommendationDTO> check(RecommendationRuleSet ruleSet, UserTransactionProfile profile) {
+        RuleEvaluationEvent event = new RuleEvaluationEvent();
+        event.begin();
+        Optional<RecommendationDTO> recommendation = ruleSet.check(profile);
+        if (event.shouldCommit()) {
+            event.userIdHash = profile.getUserId().hashCode();
+            event.productId = ruleSet.getProductId().toString();
+            event.matchedRules = recommendation.isPresent() ? 1 : 0;
+            event.commit();
+        }
+        return recommendation;
+    }
+
+    /**
+     * Вычисляет условия матрицы динамических правил и добавляет рекомендации сработавших правил
+     */
+    private void match(RuleMatrix matrix, UserTransactionProfile profile, List<RecommendationDTO> recommendations) {
+        RuleEvaluationEvent event = new RuleEvaluationEvent();
+        event.begin();
+        int before = recommendations.size();
+
+        long[] facts = matrix.newFacts();
+        for (int bit = 0; bit < matrix.predicateCount(); bit++) {
+            if (queryService.test(profile, matrix.predicate(bit))) {
+                RuleMatrix.setFact(facts, bit);
+            }
         }
+        matrix.match(facts, rule -> {
+            ruleMetrics.recordHit(rule.productId());
+            recommendations.add(rule.toRecommendation());
+        });
+
+        if (event.shouldCommit()) {
+            event.userIdHash = profile.getUserId().hashCode();
+            event.productId = RuleMetrics.DYNAMIC;
+            event.matchedRules = recommendations.size() - before;
+            event.commit();
+        }
+    }
+
+    /**
+     * Результат вычисления рекомендаций; {@code partial} — не все правила вычислены в срок
+     */
+    private record Evaluation(List<RecommendationDTO> recommendations, boolean partial) {
+    }
+
+    /**
+     * Ключ кэша готовых рекомендаций
+     */
+    private record ResponseCacheKey(UUID userId, long ruleSetVersion) {
     }
 }
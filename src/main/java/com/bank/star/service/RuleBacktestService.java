@@ -0,0 +1,101 @@
+package com.bank.star.service;
+
+import com.bank.star.dto.DynamicRuleRequestDTO;
+import com.bank.star.dto.RuleBacktestResponseDTO;
+import com.bank.star.exception.ServiceOverloadedException;
+import com.bank.star.repository.RuleBacktestRepository;
+import com.bank.star.service.rule.AtomicPredicate;
+import com.bank.star.service.rule.CompiledCondition;
+import com.bank.star.service.rule.CompiledRule;
+import com.bank.star.service.rule.RuleMatrix;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Пробное вычисление правила по всем клиентам перед публикацией.
+ * <p>
+ * Правило компилируется так же, как при создании, но не сохраняется: таблица
+ * {@code dynamic_rules} и снимок правил не изменяются. Условия проверяются одним
+ * запросом на шард ({@link RuleBacktestRepository}). Одновременно выполняется не больше
+ * {@code recommendation.backtest.max-concurrent} проверок, остальные получают 503.
+ * </p>
+ */
+@Service
+@Slf4j
+public class RuleBacktestService {
+
+    private final DynamicRuleService dynamicRuleService;
+    private final RuleBacktestRepository ruleBacktestRepository;
+    private final Semaphore permits;
+
+    @Value("${recommendation.backtest.max-sample:1000}")
+    private int maxSample;
+
+    @Value("${recommendation.admission.retry-after:1s}")
+    private Duration retryAfter;
+
+    public RuleBacktestService(DynamicRuleService dynamicRuleService,
+                               RuleBacktestRepository ruleBacktestRepository,
+                               @Value("${recommendation.backtest.max-concurrent:1}") int maxConcurrent) {
+        this.dynamicRuleService = dynamicRuleService;
+        this.ruleBacktestRepository = ruleBacktestRepository;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Вычисляет правило по всем клиентам
+     *
+     * @param sampleSize сколько идентификаторов подходящих клиентов вернуть
+     */
+    public RuleBacktestResponseDTO backtest(DynamicRuleRequestDTO request, int sampleSize) {
+        if (sampleSize < 0 || sampleSize > maxSample) {
+            throw new IllegalArgumentException(
+                    String.format("Размер выборки должен быть от 0 до %d: %d", maxSample, sampleSize));
+        }
+        CompiledRule rule = dynamicRuleService.compileRule(request);
+
+        if (!permits.tryAcquire()) {
+            log.warn("Rejecting rule backtest for productId {}: another backtest is running", rule.productId());
+            throw new ServiceOverloadedException(Math.max(1, retryAfter.toSeconds()));
+        }
+        try {
+            long startedAt = System.nanoTime();
+            RuleBacktestRepository.Matches matches = ruleBacktestRepository.findMatches(rule.conditions(), sampleSize);
+            long elapsedMs = (System.nanoTime() - startedAt) / 1_000_000;
+
+            log.info("Rule backtest for productId {}: {} matching users in {} ms", rule.productId(), matches.count(),
+                    elapsedMs);
+            return RuleBacktestResponseDTO.builder()
+                                          .productId(rule.productId())
+                                          .matchedUsers(matches.count())
+                                          .sampleUserIds(matches.sample())
+                                          .newPredicates(countNewPredicates(rule))
+                                          .elapsedMs(elapsedMs)
+                                          .build();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Условия правила, которых нет в матрице опубликованных правил
+     */
+    private int countNewPredicates(CompiledRule rule) {
+        RuleMatrix matrix = dynamicRuleService.getRuleSnapshot().matrix();
+        Set<AtomicPredicate> published = new HashSet<>();
+        for (int bit = 0; bit < matrix.predicateCount(); bit++) {
+            published.add(matrix.predicate(bit));
+        }
+        return (int) rule.conditions().stream()
+                         .map(CompiledCondition::predicate)
+                         .distinct()
+                         .filter(predicate -> !published.contains(predicate))
+                         .count();
+    }
+}
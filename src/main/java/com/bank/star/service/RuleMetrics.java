@@ -0,0 +1,101 @@
+package com.bank.star.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Метрики вычисления правил.
+ * <p>
+ * {@code bankstar.rule.evaluation} — время вычисления: отдельно для каждого зашитого набора правил
+ * (тег {@code product_id}) и для всей матрицы динамических правил ({@code product_id=dynamic}).
+ * {@code bankstar.rule.hits} — число срабатываний правила продукта. Несрабатывания не считаются,
+ * чтобы запрос не обновлял счётчик каждого динамического правила: их число — это число вычислений
+ * ({@code count} таймера правила или таймера {@code product_id=dynamic}) минус срабатывания.
+ * Значения {@code product_id} ограничены числом правил; защитный предел задаётся в {@code MetricsConfig}.
+ * Метрики удалённого правила снимаются с регистрации ({@link #forget}) и не занимают место под пределом.
+ * </p>
+ */
+@Component
+public class RuleMetrics {
+
+    public static final String METER_PREFIX = "bankstar.rule.";
+    public static final String PRODUCT_ID_TAG = "product_id";
+
+    /**
+     * Значение {@code product_id} для матрицы динамических правил
+     */
+    public static final String DYNAMIC = "dynamic";
+
+    private static final String EVALUATION_TIMER = METER_PREFIX + "evaluation";
+    private static final String HITS_COUNTER = METER_PREFIX + "hits";
+
+    private final MeterRegistry meterRegistry;
+    private final Timer dynamicEvaluationTimer;
+    private final Map<UUID, Timer> evaluationTimers = new ConcurrentHashMap<>();
+    private final Map<UUID, Counter> hits = new ConcurrentHashMap<>();
+
+    public RuleMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.dynamicEvaluationTimer = evaluationTimer(DYNAMIC);
+    }
+
+    /**
+     * Таймер вычисления правила продукта
+     */
+    public Timer evaluationTimer(UUID productId) {
+        Timer timer = evaluationTimers.get(productId);
+        return timer != null ? timer : evaluationTimers.computeIfAbsent(productId, id -> evaluationTimer(id.toString()));
+    }
+
+    /**
+     * Таймер вычисления всей матрицы динамических правил
+     */
+    public Timer dynamicEvaluationTimer() {
+        return dynamicEvaluationTimer;
+    }
+
+    /**
+     * Учитывает срабатывание правила продукта
+     */
+    public void recordHit(UUID productId) {
+        Counter counter = hits.get(productId);
+        if (counter == null) {
+            counter = hits.computeIfAbsent(productId, this::hitCounter);
+        }
+        counter.increment();
+    }
+
+    /**
+     * Удаляет из реестра таймер и счётчик срабатываний удалённого правила
+     */
+    public void forget(UUID productId) {
+        Timer timer = evaluationTimers.remove(productId);
+        if (timer != null) {
+            meterRegistry.remove(timer);
+        }
+        Counter counter = hits.remove(productId);
+        if (counter != null) {
+            meterRegistry.remove(counter);
+        }
+    }
+
+    private Timer evaluationTimer(String productId) {
+        return Timer.builder(EVALUATION_TIMER)
+                    .description("Время вычисления правила")
+                    .tag(PRODUCT_ID_TAG, productId)
+                    .register(meterRegistry);
+    }
+
+    private Counter hitCounter(UUID productId) {
+        return Counter.builder(HITS_COUNTER)
+                      .description("Число срабатываний правила продукта")
+                      .tag(PRODUCT_ID_TAG, productId.toString())
+                      .register(meterRegistry);
+    }
+}
@@ -0,0 +1,114 @@
+package com.bank.star.service;
+
+import com.bank.star.dto.RecommendationDTO;
+import com.bank.star.dto.RuleStatsResponseDTO;
+import com.bank.star.exception.DatabaseQueryException;
+import com.bank.star.repository.RuleStatsRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики срабатывания правил — сколько раз каждый продукт, зашитый или динамический,
+ * был рекомендован клиентам.
+ * <p>
+ * Срабатывание увеличивает {@link LongAdder} продукта: счётчик распределён по ячейкам,
+ * поэтому потоки на разных ядрах не конкурируют за одну переменную, а запрос
+ * не ждёт базы. Фоновая задача раз в {@code recommendation.rule-stats.flush-interval}
+ * забирает накопленные приращения и прибавляет их в {@code rule_stats} одним пакетом в одной транзакции;
+ * при ошибке приращения возвращаются в счётчики и сохраняются следующей попыткой.
+ * Остаток сохраняется при остановке приложения.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RuleStatsService {
+
+    private final RuleStatsRepository ruleStatsRepository;
+    private final DynamicRuleService dynamicRuleService;
+
+    private final ConcurrentHashMap<UUID, LongAdder> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Не даёт чтению статистики увидеть приращения, уже снятые со счётчиков, но ещё не сохранённые
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * Учитывает рекомендации, выданные клиенту
+     */
+    public void recordFired(List<RecommendationDTO> recommendations) {
+        for (RecommendationDTO recommendation : recommendations) {
+            counter(recommendation.getId()).increment();
+        }
+    }
+
+    private LongAdder counter(UUID productId) {
+        LongAdder counter = pending.get(productId);
+        return counter != null ? counter : pending.computeIfAbsent(productId, id -> new LongAdder());
+    }
+
+    /**
+     * Сохраняет накопленные приращения
+     */
+    @Scheduled(fixedDelayString = "${recommendation.rule-stats.flush-interval:10s}",
+            initialDelayString = "${recommendation.rule-stats.flush-interval:10s}")
+    public void flush() {
+        synchronized (flushLock) {
+            Map<UUID, Long> deltas = new HashMap<>();
+            pending.forEach((productId, counter) -> {
+                long delta = counter.sumThenReset();
+                if (delta != 0) {
+                    deltas.put(productId, delta);
+                }
+            });
+            if (deltas.isEmpty()) {
+                return;
+            }
+
+            try {
+                ruleStatsRepository.addAll(deltas);
+                log.debug("Flushed rule stats for {} products", deltas.size());
+            } catch (DatabaseQueryException e) {
+                deltas.forEach((productId, delta) -> counter(productId).add(delta));
+                log.warn("Rule stats flush failed, {} deltas kept for the next attempt", deltas.size());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Сохранённые значения счётчиков вместе с ещё не сохранёнными приращениями.
+     * Динамические правила, ни разу не сработавшие, возвращаются с нулём.
+     */
+    public RuleStatsResponseDTO getStats() {
+        Map<UUID, Long> totals;
+        synchronized (flushLock) {
+            totals = new HashMap<>(ruleStatsRepository.findAll());
+            pending.forEach((productId, counter) -> totals.merge(productId, counter.sum(), Long::sum));
+        }
+        dynamicRuleService.getRuleSnapshot().rules().forEach(rule -> totals.putIfAbsent(rule.productId(), 0L));
+
+        return new RuleStatsResponseDTO(
+                totals.entrySet().stream()
+                      .sorted(Map.Entry.<UUID, Long>comparingByValue(Comparator.reverseOrder()))
+                      .map(entry -> new RuleStatsResponseDTO.RuleStatDTO(entry.getKey(), entry.getValue()))
+                      .toList()
+        );
+    }
+}
@@ -0,0 +1,122 @@
+package com.bank.star.service;
+
+import com.bank.star.config.web.RequestDeadline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одновременных вычислений с одинаковым ключом.
+ * <p>
+ * Первый вызов с ключом выполняет вычисление, остальные на время его выполнения
+ * ждут тот же результат. Ошибку вычисления получают все ожидающие.
+ * Ожидание ограничено {@code timeout} и сроком запроса: по их истечении вызов выполняет
+ * вычисление сам, не задерживая ответ клиенту дольше заданного. Результат, не прошедший
+ * проверку {@code shareable} (например, неполный из-за срока запроса первого вызова),
+ * остаётся у выполнившего вычисление, а ожидающие выполняют вычисление сами.
+ * </p>
+ * Счётчик {@code bankstar.singleflight.calls} с тегом {@code result}:
+ * {@code executed} — вычисление выполнено, {@code coalesced} — результат получен
+ * от чужого вычисления, {@code timed_out} — ожидание прервано по таймауту,
+ * {@code unshared} — чужой результат не подошёл для передачи.
+ * Датчик {@code bankstar.singleflight.in_flight} — число текущих вычислений.
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long timeoutNanos;
+    private final Counter executed;
+    private final Counter coalesced;
+    private final Counter timedOut;
+    private final Counter unshared;
+    private final Predicate<V> shareable;
+
+    public SingleFlight(String name, Duration timeout, MeterRegistry meterRegistry) {
+        this(name, timeout, meterRegistry, value -> true);
+    }
+
+    /**
+     * @param shareable можно ли передать результат ожидающим вызовам
+     */
+    public SingleFlight(String name, Duration timeout, MeterRegistry meterRegistry, Predicate<V> shareable) {
+        this.timeoutNanos = timeout.toNanos();
+        this.shareable = shareable;
+        this.executed = counter(meterRegistry, name, "executed");
+        this.coalesced = counter(meterRegistry, name, "coalesced");
+        this.timedOut = counter(meterRegistry, name, "timed_out");
+        this.unshared = counter(meterRegistry, name, "unshared");
+        Gauge.builder("bankstar.singleflight.in_flight", inFlight, ConcurrentMap::size)
+             .description("Вычисления, выполняющиеся в данный момент")
+             .tag("name", name)
+             .register(meterRegistry);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String name, String result) {
+        return Counter.builder("bankstar.singleflight.calls")
+                      .description("Вызовы с объединением одновременных вычислений")
+                      .tag("name", name)
+                      .tag("result", result)
+                      .register(meterRegistry);
+    }
+
+    /**
+     * Возвращает результат вычисления для ключа, выполняя его не более одного раза
+     * на все одновременные вызовы
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, own);
+        if (existing == null) {
+            return run(key, own, loader);
+        }
+
+        try {
+            V value = existing.get(Math.min(timeoutNanos, RequestDeadline.remainingNanos()), TimeUnit.NANOSECONDS);
+            if (!shareable.test(value)) {
+                unshared.increment();
+                executed.increment();
+                return loader.get();
+            }
+            coalesced.increment();
+            return value;
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            executed.increment();
+            return loader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Ожидание результата прервано");
+        } catch (ExecutionException e) {
+            coalesced.increment();
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private V run(K key, CompletableFuture<V> own, Supplier<V> loader) {
+        executed.increment();
+        try {
+            V value = loader.get();
+            own.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+}
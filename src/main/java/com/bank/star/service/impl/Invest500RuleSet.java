@@ -1,11 +1,12 @@
 package com.bank.star.service.impl;
 
 import com.bank.star.dto.RecommendationDTO;
-import com.bank.star.repository.RecommendationRepository;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.model.UserTransactionProfile;
 import com.bank.star.service.RecommendationRuleSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.Optional;
@@ -25,19 +26,19 @@ public class Invest500RuleSet implements RecommendationRuleSet {
             "взнос в следующем налоговом периоде. Не упустите возможность разнообразить свой портфель, снизить риски и следить за актуальными " +
             "рыночными тенденциями. Откройте ИИС сегодня и станьте ближе к финансовой независимости!";
 
-    private final RecommendationRepository repository;
+    private static final long SAVING_DEPOSIT_THRESHOLD = 1000;
 
-    @Autowired
-
-    public Invest500RuleSet(RecommendationRepository repository) {
-        this.repository = repository;
+    @Override
+    public UUID getProductId() {
+        return PRODUCT_ID;
     }
 
     @Override
-    public Optional<RecommendationDTO> check(UUID userId) {
+    public Optional<RecommendationDTO> check(UserTransactionProfile profile) {
+        UUID userId = profile.getUserId();
         logger.info("Checking Invest500 rule for User {}", userId);
 
-        if (repository.checkInvest500Rule(userId)) {
+        if (matches(profile)) {
             logger.info("Invest500 rule passed for User {}", userId);
             return Optional.of(new RecommendationDTO(PRODUCT_ID, PRODUCT_NAME, PRODUCT_TEXT));
         }
@@ -45,4 +46,11 @@ public class Invest500RuleSet implements RecommendationRuleSet {
         logger.debug("Invest500 rule failed for User {}", userId);
         return Optional.empty();
     }
+
+    private boolean matches(UserTransactionProfile profile) {
+        return profile.isUserExists()
+                && profile.uses(ProductType.DEBIT)
+                && !profile.uses(ProductType.INVEST)
+                && profile.sum(ProductType.SAVING, TransactionType.DEPOSIT) > SAVING_DEPOSIT_THRESHOLD;
+    }
 }
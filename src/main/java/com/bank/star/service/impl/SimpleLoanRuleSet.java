@@ -1,11 +1,12 @@
 package com.bank.star.service.impl;
 
 import com.bank.star.dto.RecommendationDTO;
-import com.bank.star.repository.RecommendationRepository;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.model.UserTransactionProfile;
 import com.bank.star.service.RecommendationRuleSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.Optional;
@@ -27,19 +28,19 @@ public class SimpleLoanRuleSet implements RecommendationRuleSet {
             "Широкий выбор кредитных продуктов. Мы предлагаем кредиты на различные цели: покупку недвижимости, автомобиля, образования, лечения и " +
             "многое другое. Не упустите возможность воспользоваться выгодными условиями кредитования от нашей компании!";
 
-    private final RecommendationRepository repository;
+    private static final long DEBIT_WITHDRAW_THRESHOLD = 100000;
 
-    @Autowired
-
-    public SimpleLoanRuleSet(RecommendationRepository repository) {
-        this.repository = repository;
+    @Override
+    public UUID getProductId() {
+        return PRODUCT_ID;
     }
 
     @Override
-    public Optional<RecommendationDTO> check(UUID userId) {
+    public Optional<RecommendationDTO> check(UserTransactionProfile profile) {
+        UUID userId = profile.getUserId();
         logger.info("Checking SimpleLoan rule for User {}", userId);
 
-        if (repository.checkSimpleLoanRule(userId)) {
+        if (matches(profile)) {
             logger.info("SimpleLoan rule passed for User {}", userId);
             return Optional.of(new RecommendationDTO(PRODUCT_ID, PRODUCT_NAME, PRODUCT_TEXT));
         }
@@ -47,4 +48,11 @@ public class SimpleLoanRuleSet implements RecommendationRuleSet {
         logger.debug("SimpleLoan rule failed for User {}", userId);
         return Optional.empty();
     }
+
+    private boolean matches(UserTransactionProfile profile) {
+        return profile.isUserExists()
+                && !profile.uses(ProductType.CREDIT)
+                && profile.balance(ProductType.DEBIT) > 0
+                && profile.sum(ProductType.DEBIT, TransactionType.WITHDRAW) > DEBIT_WITHDRAW_THRESHOLD;
+    }
 }
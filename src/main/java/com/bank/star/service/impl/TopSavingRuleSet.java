@@ -1,11 +1,12 @@
 package com.bank.star.service.impl;
 
 import com.bank.star.dto.RecommendationDTO;
-import com.bank.star.repository.RecommendationRepository;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.model.UserTransactionProfile;
 import com.bank.star.service.RecommendationRuleSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.Optional;
@@ -28,19 +29,19 @@ public class TopSavingRuleSet implements RecommendationRuleSet {
             "а доступ к ним возможен только через мобильное приложение или интернет-банкинг. Начните использовать «Копилку» уже сегодня и станьте " +
             "ближе к своим финансовым целям!";
 
-    private final RecommendationRepository repository;
+    private static final long DEPOSIT_THRESHOLD = 50000;
 
-    @Autowired
-
-    public TopSavingRuleSet(RecommendationRepository repository) {
-        this.repository = repository;
+    @Override
+    public UUID getProductId() {
+        return PRODUCT_ID;
     }
 
     @Override
-    public Optional<RecommendationDTO> check(UUID userId) {
+    public Optional<RecommendationDTO> check(UserTransactionProfile profile) {
+        UUID userId = profile.getUserId();
         logger.info("Checking TopSaving rule for User {}", userId);
 
-        if (repository.checkTopSavingRule(userId)) {
+        if (matches(profile)) {
             logger.info("TopSaving rule passed for User {}", userId);
             return Optional.of(new RecommendationDTO(PRODUCT_ID, PRODUCT_NAME, PRODUCT_TEXT));
         }
@@ -48,4 +49,12 @@ public class TopSavingRuleSet implements RecommendationRuleSet {
         logger.debug("TopSaving rule failed for User {}", userId);
         return Optional.empty();
     }
+
+    private boolean matches(UserTransactionProfile profile) {
+        return profile.isUserExists()
+                && profile.uses(ProductType.DEBIT)
+                && (profile.sum(ProductType.DEBIT, TransactionType.DEPOSIT) >= DEPOSIT_THRESHOLD
+                || profile.sum(ProductType.SAVING, TransactionType.DEPOSIT) >= DEPOSIT_THRESHOLD)
+                && profile.balance(ProductType.DEBIT) > 0;
+    }
 }
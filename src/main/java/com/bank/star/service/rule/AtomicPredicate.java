@@ -0,0 +1,39 @@
+package com.bank.star.service.rule;
+
+import com.bank.star.model.ComparisonOperator;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+
+import java.util.List;
+
+/**
+ * Атомарный факт о клиенте без учёта отрицания.
+ * <p>
+ * Поля, не используемые данным типом запроса, равны {@code null} (или 0 для константы),
+ * поэтому одинаковые условия разных правил дают равные предикаты.
+ * </p>
+ *
+ * @param kind            тип запроса
+ * @param productType     тип продукта
+ * @param transactionType тип транзакции (только TRANSACTION_SUM_COMPARE)
+ * @param operator        оператор сравнения (только запросы сравнения сумм)
+ * @param constant        константа сравнения (только TRANSACTION_SUM_COMPARE)
+ */
+public record AtomicPredicate(QueryKind kind,
+                              ProductType productType,
+                              TransactionType transactionType,
+                              ComparisonOperator operator,
+                              int constant) {
+
+    /**
+     * Аргументы условия в формате API правил — обратное преобразование к {@code RuleCompiler}
+     */
+    public List<String> arguments() {
+        return switch (kind) {
+            case USER_OF, ACTIVE_USER_OF -> List.of(productType.name());
+            case TRANSACTION_SUM_COMPARE -> List.of(productType.name(), transactionType.name(), operator.getSymbol(),
+                    String.valueOf(constant));
+            case TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW -> List.of(productType.name(), operator.getSymbol());
+        };
+    }
+}
@@ -0,0 +1,7 @@
+package com.bank.star.service.rule;
+
+/**
+ * Условие правила: атомарный предикат и признак отрицания
+ */
+public record CompiledCondition(AtomicPredicate predicate, boolean negate) {
+}
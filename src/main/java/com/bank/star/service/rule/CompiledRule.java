@@ -0,0 +1,24 @@
+package com.bank.star.service.rule;
+
+import com.bank.star.dto.RecommendationDTO;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Скомпилированное динамическое правило.
+ * Срабатывает, если выполнены все условия; правило без условий не срабатывает никогда.
+ */
+public record CompiledRule(UUID productId,
+                           String productName,
+                           String productText,
+                           List<CompiledCondition> conditions) {
+
+    public CompiledRule {
+        conditions = List.copyOf(conditions);
+    }
+
+    public RecommendationDTO toRecommendation() {
+        return new RecommendationDTO(productId, productName, productText);
+    }
+}
@@ -0,0 +1,24 @@
+package com.bank.star.service.rule;
+
+/**
+ * Тип запроса в условии динамического правила
+ */
+public enum QueryKind {
+    USER_OF(1),
+    ACTIVE_USER_OF(1),
+    TRANSACTION_SUM_COMPARE(4),
+    TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW(2);
+
+    private final int argumentCount;
+
+    QueryKind(int argumentCount) {
+        this.argumentCount = argumentCount;
+    }
+
+    /**
+     * Ожидаемое количество аргументов запроса
+     */
+    public int getArgumentCount() {
+        return argumentCount;
+    }
+}
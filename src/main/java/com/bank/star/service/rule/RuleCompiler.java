@@ -0,0 +1,89 @@
+package com.bank.star.service.rule;
+
+import com.bank.star.entity.DynamicRuleEntity;
+import com.bank.star.model.ComparisonOperator;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Компилятор динамических правил в типизированные планы.
+ * <p>
+ * Все ошибки формата (неизвестный запрос, неверное число аргументов,
+ * неизвестный тип продукта, оператор или нечисловая константа)
+ * сообщаются через {@link IllegalArgumentException}.
+ * </p>
+ */
+@Component
+public class RuleCompiler {
+
+    /**
+     * Компилирует правило целиком
+     */
+    public CompiledRule compile(DynamicRuleEntity entity) {
+        List<DynamicRuleEntity.QueryCondition> conditions = entity.getRule() == null ? List.of() : entity.getRule();
+        return new CompiledRule(
+                entity.getProductId(),
+                entity.getProductName(),
+                entity.getProductText(),
+                conditions.stream()
+                          .map(this::compileCondition)
+                          .toList()
+        );
+    }
+
+    /**
+     * Компилирует одно условие правила
+     */
+    public CompiledCondition compileCondition(DynamicRuleEntity.QueryCondition condition) {
+        QueryKind kind = parse(QueryKind.class, condition.getQuery(), "тип запроса");
+        List<String> arguments = condition.getArguments() == null ? List.of() : condition.getArguments();
+        if (arguments.size() != kind.getArgumentCount()) {
+            throw new IllegalArgumentException(String.format(
+                    "Запрос %s ожидает аргументов: %d, получено: %d", kind, kind.getArgumentCount(), arguments.size()));
+        }
+
+        ProductType productType = parse(ProductType.class, arguments.get(0), "тип продукта");
+        AtomicPredicate predicate = switch (kind) {
+            case USER_OF, ACTIVE_USER_OF -> new AtomicPredicate(kind, productType, null, null, 0);
+            case TRANSACTION_SUM_COMPARE -> new AtomicPredicate(
+                    kind,
+                    productType,
+                    parse(TransactionType.class, arguments.get(1), "тип транзакции"),
+                    ComparisonOperator.fromSymbol(arguments.get(2)),
+                    parseConstant(arguments.get(3)));
+            case TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW -> new AtomicPredicate(
+                    kind,
+                    productType,
+                    null,
+                    ComparisonOperator.fromSymbol(arguments.get(1)),
+                    0);
+        };
+        return new CompiledCondition(predicate, condition.isNegate());
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String value, String description) {
+        if (value == null) {
+            throw new IllegalArgumentException("Не указан " + description);
+        }
+        try {
+            return Enum.valueOf(type, value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Неизвестный %s: %s", description, value), e);
+        }
+    }
+
+    private static int parseConstant(String value) {
+        try {
+            int constant = Integer.parseInt(value);
+            if (constant < 0) {
+                throw new IllegalArgumentException("Константа сравнения должна быть неотрицательной: " + value);
+            }
+            return constant;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Константа сравнения должна быть целым числом: " + value, e);
+        }
+    }
+}
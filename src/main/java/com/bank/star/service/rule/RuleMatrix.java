@@ -0,0 +1,127 @@
+package com.bank.star.service.rule;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Битовая матрица набора динамических правил.
+ * <p>
+ * Одинаковые атомарные предикаты всех правил собираются в один список,
+ * и каждый вычисляется для клиента ровно один раз в битовый вектор фактов.
+ * Правило превращается в пару масок: биты, которые должны быть установлены (AND),
+ * и биты, которые должны быть сброшены (ANDNOT). Маски хранятся разреженно —
+ * только затронутые правилом 64-битные слова, — поэтому стоимость проверки правила
+ * зависит от числа его условий, а не от общего числа предикатов.
+ * </p>
+ */
+public final class RuleMatrix {
+
+    private final AtomicPredicate[] predicates;
+    private final CompiledRule[] rules;
+    private final int[] ruleOffsets;
+    private final int[] words;
+    private final long[] required;
+    private final long[] forbidden;
+
+    private RuleMatrix(AtomicPredicate[] predicates, CompiledRule[] rules, int[] ruleOffsets,
+                       int[] words, long[] required, long[] forbidden) {
+        this.predicates = predicates;
+        this.rules = rules;
+        this.ruleOffsets = ruleOffsets;
+        this.words = words;
+        this.required = required;
+        this.forbidden = forbidden;
+    }
+
+    /**
+     * Строит матрицу по скомпилированным правилам.
+     * Правила без условий в матрицу не попадают, так как не срабатывают никогда.
+     */
+    public static RuleMatrix build(List<CompiledRule> compiledRules) {
+        Map<AtomicPredicate, Integer> predicateIndex = new LinkedHashMap<>();
+        List<CompiledRule> rules = new ArrayList<>();
+        List<Integer> ruleOffsets = new ArrayList<>();
+        List<Integer> words = new ArrayList<>();
+        List<Long> required = new ArrayList<>();
+        List<Long> forbidden = new ArrayList<>();
+
+        for (CompiledRule rule : compiledRules) {
+            if (rule.conditions().isEmpty()) {
+                continue;
+            }
+
+            TreeMap<Integer, long[]> masks = new TreeMap<>();
+            for (CompiledCondition condition : rule.conditions()) {
+                int bit = predicateIndex.computeIfAbsent(condition.predicate(), p -> predicateIndex.size());
+                long[] mask = masks.computeIfAbsent(bit >>> 6, w -> new long[2]);
+                mask[condition.negate() ? 1 : 0] |= 1L << bit;
+            }
+
+            rules.add(rule);
+            ruleOffsets.add(words.size());
+            masks.forEach((word, mask) -> {
+                words.add(word);
+                required.add(mask[0]);
+                forbidden.add(mask[1]);
+            });
+        }
+        ruleOffsets.add(words.size());
+
+        return new RuleMatrix(
+                predicateIndex.keySet().toArray(AtomicPredicate[]::new),
+                rules.toArray(CompiledRule[]::new),
+                ruleOffsets.stream().mapToInt(Integer::intValue).toArray(),
+                words.stream().mapToInt(Integer::intValue).toArray(),
+                required.stream().mapToLong(Long::longValue).toArray(),
+                forbidden.stream().mapToLong(Long::longValue).toArray()
+        );
+    }
+
+    /**
+     * Атомарный предикат, соответствующий биту вектора фактов
+     */
+    public AtomicPredicate predicate(int bit) {
+        return predicates[bit];
+    }
+
+    public int predicateCount() {
+        return predicates.length;
+    }
+
+    /**
+     * Пустой битовый вектор фактов под данную матрицу
+     */
+    public long[] newFacts() {
+        return new long[(predicates.length + 63) >>> 6];
+    }
+
+    public static void setFact(long[] facts, int bit) {
+        facts[bit >>> 6] |= 1L << bit;
+    }
+
+    /**
+     * Передаёт в {@code sink} все правила, выполненные для данного вектора фактов,
+     * в исходном порядке правил
+     */
+    public void match(long[] facts, Consumer<CompiledRule> sink) {
+        for (int rule = 0; rule < rules.length; rule++) {
+            if (matches(facts, rule)) {
+                sink.accept(rules[rule]);
+            }
+        }
+    }
+
+    private boolean matches(long[] facts, int rule) {
+        for (int i = ruleOffsets[rule]; i < ruleOffsets[rule + 1]; i++) {
+            long word = facts[words[i]];
+            if ((word & required[i]) != required[i] || (word & forbidden[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
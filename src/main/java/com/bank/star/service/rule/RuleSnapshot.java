@@ -0,0 +1,66 @@
+package com.bank.star.service.rule;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Неизменяемый снимок всех скомпилированных динамических правил.
+ *
+ * @param version     номер версии набора правил; растёт при каждом изменении
+ * @param rules       скомпилированные правила
+ * @param loadedAt    момент загрузки из базы ({@link System#nanoTime()})
+ * @param matrix      битовая матрица правил для вычисления
+ * @param fingerprint SHA-256 содержимого правил; в отличие от {@code version},
+ *                    одинаков на всех экземплярах и после перезапуска
+ */
+public record RuleSnapshot(long version, List<CompiledRule> rules, long loadedAt, RuleMatrix matrix,
+                           String fingerprint) {
+
+    public RuleSnapshot {
+        rules = List.copyOf(rules);
+    }
+
+    public RuleSnapshot(long version, List<CompiledRule> rules, long loadedAt) {
+        this(version, rules, loadedAt, RuleMatrix.build(rules), fingerprint(rules));
+    }
+
+    /**
+     * Снимок с добавленным правилом
+     */
+    public RuleSnapshot withRule(CompiledRule rule) {
+        List<CompiledRule> updated = new ArrayList<>(rules);
+        updated.add(rule);
+        return new RuleSnapshot(version + 1, updated, loadedAt);
+    }
+
+    /**
+     * Снимок без правила для указанного продукта
+     */
+    public RuleSnapshot withoutRule(UUID productId) {
+        List<CompiledRule> updated = rules.stream()
+                                          .filter(rule -> !rule.productId().equals(productId))
+                                          .toList();
+        return new RuleSnapshot(version + 1, updated, loadedAt);
+    }
+
+    /**
+     * Хэш правил, не зависящий от порядка их загрузки
+     */
+    private static String fingerprint(List<CompiledRule> rules) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            rules.stream()
+                 .map(CompiledRule::toString)
+                 .sorted()
+                 .forEach(rule -> digest.update((rule + '\n').getBytes(StandardCharsets.UTF_8)));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
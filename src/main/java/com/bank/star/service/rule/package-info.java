@@ -0,0 +1,9 @@
+/**
+ * Скомпилированные динамические правила.
+ * <p>
+ * Правила из базы один раз разбираются в неизменяемые типизированные планы,
+ * которые публикуются атомарно заменяемым снимком и вычисляются
+ * без обращения к сущностям и строкам.
+ * </p>
+ */
+package com.bank.star.service.rule;
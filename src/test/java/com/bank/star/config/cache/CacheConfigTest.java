@@ -0,0 +1,118 @@
+package com.bank.star.config.cache;
+
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.model.UserTransactionProfile;
+import com.bank.star.repository.TransactionProfileSource;
+import com.bank.star.service.QueryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CacheConfigTest {
+
+    private static final Duration SOFT_TTL = Duration.ofMillis(100);
+    private static final Duration HARD_TTL = Duration.ofMillis(600);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private volatile CountDownLatch loadGate = new CountDownLatch(0);
+    private final CacheConfig cacheConfig = new CacheConfig();
+    private final UUID userId = UUID.randomUUID();
+
+    @AfterEach
+    void shutdown() {
+        cacheConfig.shutdownRefreshExecutor();
+    }
+
+    @Test
+    void servesStaleProfileAfterSoftTtlAndRefreshesInBackground() throws Exception {
+        Cache cache = profileCache();
+        assertThat(loadCount(cache)).isEqualTo(1);
+
+        Thread.sleep(SOFT_TTL.toMillis() + 50);
+        loadGate = new CountDownLatch(1);
+
+        assertThat(loadCount(cache)).as("stale value is served while refreshing").isEqualTo(1);
+        loadGate.countDown();
+        await(() -> loadCount(cache) == 2);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void reloadsSynchronouslyAfterHardTtl() throws Exception {
+        Cache cache = profileCache();
+        assertThat(loadCount(cache)).isEqualTo(1);
+
+        Thread.sleep(HARD_TTL.toMillis() + 100);
+
+        assertThat(loadCount(cache)).as("expired value is never served").isEqualTo(2);
+    }
+
+    @Test
+    void keepsPreviousProfileAndCountsFailedRefresh() throws Exception {
+        Cache cache = profileCache();
+        assertThat(loadCount(cache)).isEqualTo(1);
+        failing.set(true);
+
+        Thread.sleep(SOFT_TTL.toMillis() + 50);
+
+        assertThat(loadCount(cache)).isEqualTo(1);
+        await(() -> meterRegistry.get("bankstar.cache.reload.failures").counter().count() == 1);
+        assertThat(loadCount(cache)).isEqualTo(1);
+    }
+
+    /**
+     * Номер загрузки хранится в сумме профиля, чтобы отличать перечитанное значение
+     */
+    private long loadCount(Cache cache) {
+        Cache.ValueWrapper value = cache.get(userId);
+        assertThat(value).isNotNull();
+        return ((UserTransactionProfile) value.get()).sum(ProductType.DEBIT, TransactionType.DEPOSIT);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cache profileCache() {
+        TransactionProfileSource source = mock(TransactionProfileSource.class);
+        when(source.findUserTransactionProfile(userId)).thenAnswer(invocation -> {
+            loadGate.await(5, TimeUnit.SECONDS);
+            if (failing.get()) {
+                throw new IllegalStateException("replica unavailable");
+            }
+            return UserTransactionProfile.builder(userId)
+                                         .userExists(true)
+                                         .add(ProductType.DEBIT, TransactionType.DEPOSIT, 1,
+                                                 loads.incrementAndGet())
+                                         .build();
+        });
+        ObjectProvider<TransactionProfileSource> provider = mock(ObjectProvider.class);
+        when(provider.getObject()).thenReturn(source);
+
+        CacheManager cacheManager = cacheConfig.cacheManager(provider, meterRegistry, true, SOFT_TTL, HARD_TTL, 1);
+        return cacheManager.getCache(QueryService.PROFILE_CACHE);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not reached in time").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+}
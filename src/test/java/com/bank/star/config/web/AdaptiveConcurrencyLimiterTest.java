@@ -0,0 +1,87 @@
+package com.bank.star.config.web;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofSeconds(1).toNanos();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void rejectsWhenLimitAndQueueAreFull() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 10, 0);
+
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse();
+        assertThat(meterRegistry.get("bankstar.admission.rejected").counter().count()).isEqualTo(1);
+
+        limiter.release(FAST, false);
+        assertThat(limiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void queuedRequestIsAdmittedWhenPermitIsReleased() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, Duration.ofSeconds(5));
+        assertThat(limiter.tryAcquire()).isTrue();
+
+        boolean[] admitted = new boolean[1];
+        Thread waiter = new Thread(() -> {
+            try {
+                admitted[0] = limiter.tryAcquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        while (limiter.getQueued() == 0) {
+            Thread.onSpinWait();
+        }
+
+        limiter.release(FAST, false);
+        waiter.join();
+
+        assertThat(admitted[0]).isTrue();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void growsAdditivelyWhenSaturatedAndShrinksOnSlowRequests() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 10, 0);
+
+        for (int i = 0; i < 4; i++) {
+            int admitted = 0;
+            while (limiter.tryAcquire()) {
+                admitted++;
+            }
+            for (int j = 0; j < admitted; j++) {
+                limiter.release(FAST, false);
+            }
+        }
+        assertThat(limiter.getLimit()).isEqualTo(3);
+
+        limiter.tryAcquire();
+        limiter.release(SLOW, false);
+        limiter.tryAcquire();
+        limiter.release(SLOW, false);
+        limiter.tryAcquire();
+        limiter.release(0, true);
+        assertThat(limiter.getLimit()).isEqualTo(2);
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit, int maxLimit, int queueSize) {
+        return limiter(initialLimit, maxLimit, queueSize, Duration.ofMillis(10));
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit, int maxLimit, int queueSize, Duration queueTimeout) {
+        return new AdaptiveConcurrencyLimiter("test", initialLimit, maxLimit, queueSize,
+                queueTimeout, Duration.ofMillis(100), meterRegistry);
+    }
+}
@@ -0,0 +1,64 @@
+package com.bank.star.config.web;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControlInterceptorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    /**
+     * Любой запрос медленнее порога одиночных запросов и быстрее порога пакетных
+     */
+    private final AdmissionControlInterceptor interceptor = new AdmissionControlInterceptor(meterRegistry, true,
+            Duration.ofNanos(1), Duration.ofMillis(50), Duration.ofSeconds(1), 10, 64, 20, 4, 8, 4, 2, 4, 4,
+            Duration.ofHours(1));
+
+    @Test
+    void batchAndExplainDoNotShrinkRecommendationLimit() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            complete(new MockHttpServletRequest("POST", "/recommendation/batch"));
+            complete(new MockHttpServletRequest("GET", "/recommendation/" + i + "/explain"));
+        }
+        assertThat(limit("recommendation")).isEqualTo(10);
+        assertThat(limit("bulk")).isEqualTo(2);
+
+        complete(new MockHttpServletRequest("GET", "/recommendation/1"));
+        assertThat(limit("recommendation")).isEqualTo(9);
+    }
+
+    @Test
+    void selectsLimiterByPathWithinContext() throws InterruptedException {
+        MockHttpServletRequest rule = new MockHttpServletRequest("GET", "/bank/rule/stats");
+        rule.setContextPath("/bank");
+        MockHttpServletRequest batch = new MockHttpServletRequest("POST", "/bank/recommendation/batch");
+        batch.setContextPath("/bank");
+
+        interceptor.preHandle(rule, response, null);
+        interceptor.preHandle(batch, response, null);
+
+        assertThat(inFlight("rule")).isEqualTo(1);
+        assertThat(inFlight("bulk")).isEqualTo(1);
+        assertThat(inFlight("recommendation")).isZero();
+    }
+
+    private void complete(MockHttpServletRequest request) throws InterruptedException {
+        assertThat(interceptor.preHandle(request, response, null)).isTrue();
+        interceptor.afterCompletion(request, response, null, null);
+    }
+
+    private double limit(String pool) {
+        return meterRegistry.get("bankstar.admission.limit").tag("pool", pool).gauge().value();
+    }
+
+    private double inFlight(String pool) {
+        return meterRegistry.get("bankstar.admission.in_flight").tag("pool", pool).gauge().value();
+    }
+}
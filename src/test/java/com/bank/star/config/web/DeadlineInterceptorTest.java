@@ -0,0 +1,72 @@
+package com.bank.star.config.web;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeadlineInterceptorTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    @AfterEach
+    void clearDeadline() {
+        RequestDeadline.clear();
+    }
+
+    @Test
+    void zeroDefaultBudgetWithoutHeaderSetsNoDeadline() {
+        DeadlineInterceptor interceptor = new DeadlineInterceptor(Duration.ZERO, Duration.ofSeconds(10));
+
+        assertThat(interceptor.preHandle(new MockHttpServletRequest(), response, null)).isTrue();
+        assertThat(RequestDeadline.isSet()).isFalse();
+    }
+
+    @Test
+    void headerOverridesDefaultBudgetUpToMax() {
+        DeadlineInterceptor interceptor = new DeadlineInterceptor(Duration.ofSeconds(5), Duration.ofSeconds(10));
+
+        interceptor.preHandle(request("2000"), response, null);
+        assertThat(RequestDeadline.remainingNanos()).isBetween(SECOND, 2 * SECOND);
+
+        interceptor.preHandle(request("60000"), response, null);
+        assertThat(RequestDeadline.remainingNanos()).isBetween(9 * SECOND, 10 * SECOND);
+    }
+
+    @Test
+    void malformedOrNonPositiveHeaderFallsBackToDefault() {
+        DeadlineInterceptor interceptor = new DeadlineInterceptor(Duration.ofSeconds(5), Duration.ofSeconds(10));
+
+        for (String header : new String[]{"abc", "0", "-100", " "}) {
+            RequestDeadline.clear();
+            interceptor.preHandle(request(header), response, null);
+            assertThat(RequestDeadline.remainingNanos()).as(header).isBetween(4 * SECOND, 5 * SECOND);
+        }
+    }
+
+    @Test
+    void deadlineIsClearedOnCompletionAndAsyncStart() {
+        DeadlineInterceptor interceptor = new DeadlineInterceptor(Duration.ofSeconds(5), Duration.ofSeconds(10));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        interceptor.preHandle(request, response, null);
+        interceptor.afterCompletion(request, response, null, null);
+        assertThat(RequestDeadline.isSet()).isFalse();
+
+        interceptor.preHandle(request, response, null);
+        interceptor.afterConcurrentHandlingStarted(request, response, null);
+        assertThat(RequestDeadline.isSet()).isFalse();
+    }
+
+    private static MockHttpServletRequest request(String timeoutHeader) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(DeadlineInterceptor.TIMEOUT_HEADER, timeoutHeader);
+        return request;
+    }
+}
@@ -0,0 +1,59 @@
+package com.bank.star.config.web;
+
+import com.bank.star.exception.DeadlineExceededException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestDeadlineTest {
+
+    @AfterEach
+    void clearDeadline() {
+        RequestDeadline.clear();
+    }
+
+    @Test
+    void withoutDeadlineNothingIsLimited() {
+        assertThat(RequestDeadline.isSet()).isFalse();
+        assertThat(RequestDeadline.remainingNanos()).isEqualTo(Long.MAX_VALUE);
+        assertThat(RequestDeadline.queryTimeoutSeconds()).isZero();
+    }
+
+    @Test
+    void queryTimeoutIsRoundedUpToWholeSeconds() {
+        RequestDeadline.start(Duration.ofMillis(1500));
+        assertThat(RequestDeadline.queryTimeoutSeconds()).isEqualTo(2);
+
+        RequestDeadline.start(Duration.ofMillis(10));
+        assertThat(RequestDeadline.queryTimeoutSeconds()).isEqualTo(1);
+    }
+
+    @Test
+    void expiredDeadlineFailsQuery() {
+        RequestDeadline.start(Duration.ofMillis(-1));
+
+        assertThat(RequestDeadline.remainingNanos()).isNegative();
+        assertThatThrownBy(RequestDeadline::queryTimeoutSeconds).isInstanceOf(DeadlineExceededException.class);
+    }
+
+    @Test
+    void propagatedTaskSeesDeadlineAndRestoresItsThread() {
+        RequestDeadline.start(Duration.ofSeconds(5));
+        Supplier<Boolean> task = RequestDeadline.propagate(RequestDeadline::isSet);
+
+        assertThat(CompletableFuture.supplyAsync(task).join()).isTrue();
+        assertThat(CompletableFuture.supplyAsync(() -> {
+            task.get();
+            return RequestDeadline.isSet();
+        }).join()).isFalse();
+
+        RequestDeadline.clear();
+        assertThat(RequestDeadline.propagate(RequestDeadline::isSet).get()).isFalse();
+    }
+}
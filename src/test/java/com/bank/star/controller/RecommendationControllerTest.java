@@ -0,0 +1,115 @@
+package com.bank.star.controller;
+
+import com.bank.star.dto.ResponseDTO;
+import com.bank.star.exception.GlobalExceptionHandler;
+import com.bank.star.exception.ServiceOverloadedException;
+import com.bank.star.service.RecommendationExportService;
+import com.bank.star.service.RecommendationExportService.ExportPermit;
+import com.bank.star.service.RecommendationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class RecommendationControllerTest {
+
+    private final RecommendationService recommendationService = mock(RecommendationService.class);
+    private final RecommendationExportService exportService = mock(RecommendationExportService.class);
+    private final MockMvc mockMvc = MockMvcBuilders
+            .standaloneSetup(new RecommendationController(recommendationService, exportService, new ObjectMapper(),
+                    Duration.ofHours(2)))
+            .setControllerAdvice(new GlobalExceptionHandler())
+            .build();
+
+    @Test
+    void batchStreamsResponsesInInputOrder() throws Exception {
+        UUID first = UUID.fromString("cd515076-5d8a-44be-930e-8d4fcb79f42d");
+        UUID second = UUID.fromString("1f9b149c-6577-448a-bc94-16bea229b71a");
+        doAnswer(invocation -> {
+            Consumer<ResponseDTO> sink = invocation.getArgument(1);
+            invocation.<List<UUID>>getArgument(0).forEach(userId -> sink.accept(new ResponseDTO(userId, List.of())));
+            return null;
+        }).when(recommendationService).streamRecommendationsResponses(any(), any());
+
+        MvcResult result = mockMvc.perform(post("/recommendation/batch")
+                                          .contentType(MediaType.APPLICATION_JSON)
+                                          .content("[\"" + first + "\",\"" + second + "\"]"))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$[0].user_id").value(first.toString()))
+               .andExpect(jsonPath("$[1].user_id").value(second.toString()));
+    }
+
+    @Test
+    void batchIsRejectedWithBadRequestWhenValidationFails() throws Exception {
+        doThrow(new IllegalArgumentException("Слишком много пользователей в запросе: 3, максимум 2"))
+                .when(recommendationService).validateBatch(any());
+
+        mockMvc.perform(post("/recommendation/batch")
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("[\"" + UUID.randomUUID() + "\"]"))
+               .andExpect(status().isBadRequest());
+
+        verify(recommendationService, never()).streamRecommendationsResponses(any(), any());
+    }
+
+    @Test
+    void exportStreamsNdjsonAndReleasesPermit() throws Exception {
+        ExportPermit permit = mock(ExportPermit.class);
+        when(exportService.acquirePermit()).thenReturn(permit);
+        when(exportService.export(any(OutputStream.class), eq(false))).thenAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(0).write("{\"user_id\":null}\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        });
+
+        MvcResult result = mockMvc.perform(get("/recommendation/export"))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+               .andExpect(status().isOk())
+               .andExpect(header().string("Content-Type", "application/x-ndjson"))
+               .andExpect(content().string("{\"user_id\":null}\n"));
+
+        verify(permit, atLeastOnce()).close();
+    }
+
+    @Test
+    void exportIsRejectedWhenAllPermitsAreTaken() throws Exception {
+        when(exportService.acquirePermit()).thenThrow(new ServiceOverloadedException(1));
+
+        mockMvc.perform(get("/recommendation/export"))
+               .andExpect(status().isServiceUnavailable())
+               .andExpect(header().string("Retry-After", "1"));
+
+        verify(exportService, never()).export(any(OutputStream.class), any(Boolean.class));
+    }
+}
@@ -0,0 +1,105 @@
+package com.bank.star.repository;
+
+import com.bank.star.config.tracing.RequestTracer;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.model.UserTransactionProfile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ColumnarTransactionStoreTest {
+
+    private final TransactionsFixture fixture = TransactionsFixture.inMemory("columnar", 7);
+
+    @AfterEach
+    void closeDatabase() {
+        fixture.close();
+    }
+
+    /**
+     * Зарегистрированные клиенты с транзакциями и без, клиенты, встречающиеся только
+     * в транзакциях, и клиенты, которых нет в базе; часть транзакций — по продукту без типа
+     */
+    @Test
+    void buildsSameProfilesAsSqlAggregation() {
+        fixture.addProducts(1, true);
+        List<UUID> userIds = new ArrayList<>(fixture.addRandomUsers(200, 15));
+        userIds.add(fixture.nextId());
+        ShardRouter router = fixture.router();
+        RecommendationRepository sqlRepository = new RecommendationRepository(router, new SimpleMeterRegistry(),
+                new RequestTracer(Tracer.NOOP));
+        ColumnarTransactionStore columnarStore = new ColumnarTransactionStore(router);
+        columnarStore.load();
+
+        Map<UUID, UserTransactionProfile> expected = sqlRepository.findUserTransactionProfiles(userIds);
+        Map<UUID, UserTransactionProfile> actual = columnarStore.findUserTransactionProfiles(userIds);
+
+        assertThat(actual.keySet()).containsExactlyElementsOf(userIds);
+        for (UUID userId : userIds) {
+            assertSameProfile(actual.get(userId), expected.get(userId));
+            assertSameProfile(columnarStore.findUserTransactionProfile(userId),
+                    sqlRepository.findUserTransactionProfile(userId));
+        }
+        router.close();
+    }
+
+    /**
+     * На втором шарде лежат копии всех клиентов первого с другими транзакциями,
+     * как после перераспределения слотов; профиль берётся с шарда-владельца
+     */
+    @Test
+    void readsEachUserFromOwningShardOnly() {
+        try (TransactionsFixture copy = TransactionsFixture.inMemory("columnar-copy", 8)) {
+            fixture.addProducts(1, true);
+            List<UUID> userIds = fixture.addRandomUsers(100, 15);
+            UUID copyProduct = copy.addProduct(ProductType.DEBIT);
+            for (UUID userId : userIds) {
+                copy.addUser(userId);
+                copy.addTransaction(userId, copyProduct, TransactionType.DEPOSIT, 1000);
+            }
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            ShardRouter router = new ShardRouter(List.of(fixture.shard(meterRegistry), copy.shard(meterRegistry)),
+                    List.of(), false, TransactionsFixture.QUEUE_CAPACITY);
+            assertThat(userIds.stream().map(router::shardIndexOf).distinct()).hasSize(2);
+
+            RecommendationRepository sqlRepository = new RecommendationRepository(router, meterRegistry,
+                    new RequestTracer(Tracer.NOOP));
+            ColumnarTransactionStore columnarStore = new ColumnarTransactionStore(router);
+            columnarStore.load();
+
+            Map<UUID, UserTransactionProfile> expected = sqlRepository.findUserTransactionProfiles(userIds);
+            for (UUID userId : userIds) {
+                assertSameProfile(columnarStore.findUserTransactionProfile(userId), expected.get(userId));
+            }
+            router.close();
+        }
+    }
+
+    private static void assertSameProfile(UserTransactionProfile actual, UserTransactionProfile expected) {
+        String user = expected.getUserId().toString();
+        assertThat(actual.getUserId()).isEqualTo(expected.getUserId());
+        assertThat(actual.isUserExists()).as(user).isEqualTo(expected.isUserExists());
+        for (ProductType productType : ProductType.values()) {
+            assertThat(actual.count(productType)).as(user + " " + productType)
+                                                 .isEqualTo(expected.count(productType));
+            for (TransactionType transactionType : TransactionType.values()) {
+                String key = user + " " + productType + "/" + transactionType;
+                assertThat(actual.count(productType, transactionType)).as(key)
+                                                                      .isEqualTo(expected.count(productType,
+                                                                              transactionType));
+                assertThat(actual.sum(productType, transactionType)).as(key)
+                                                                    .isEqualTo(expected.sum(productType,
+                                                                            transactionType));
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.bank.star.repository;
+
+import com.bank.star.config.web.RequestDeadline;
+import com.bank.star.dto.RecommendationDTO;
+import com.bank.star.exception.DeadlineExceededException;
+import com.bank.star.repository.PrecomputedRecommendationRepository.JobStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PrecomputedRecommendationRepositoryTest {
+
+    private static final String VERSION = "h1-current";
+
+    private final HikariDataSource dataSource = dataSource();
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    private final PrecomputedRecommendationRepository repository = new PrecomputedRecommendationRepository(
+            dataSource, new ObjectMapper(), Duration.ofSeconds(1));
+
+    @AfterEach
+    void closeDataSource() {
+        RequestDeadline.clear();
+        dataSource.close();
+    }
+
+    @Test
+    void findReturnsOnlyRowsOfCurrentVersionWithinMaxAge() {
+        UUID current = UUID.randomUUID();
+        UUID otherVersion = UUID.randomUUID();
+        UUID stale = UUID.randomUUID();
+        UUID productId = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        insertRecommendations(current, VERSION, productId, now.minusHours(1));
+        insertRecommendations(otherVersion, "h1-previous", productId, now.minusHours(1));
+        insertRecommendations(stale, VERSION, productId, now.minusHours(40));
+
+        LocalDateTime computedAfter = now.minusHours(36);
+
+        assertThat(repository.find(current, VERSION, computedAfter))
+                .hasValueSatisfying(recommendations -> assertThat(recommendations)
+                        .extracting(RecommendationDTO::getId).containsExactly(productId));
+        assertThat(repository.find(otherVersion, VERSION, computedAfter)).isEmpty();
+        assertThat(repository.find(stale, VERSION, computedAfter)).isEmpty();
+        assertThat(repository.find(UUID.randomUUID(), VERSION, computedAfter)).isEmpty();
+    }
+
+    @Test
+    void findFailsFastWhenRequestDeadlineHasPassed() {
+        RequestDeadline.start(Duration.ofMillis(-1));
+
+        assertThatThrownBy(() -> repository.find(UUID.randomUUID(), VERSION, LocalDateTime.now()))
+                .isInstanceOf(DeadlineExceededException.class);
+    }
+
+    @Test
+    void resumesOnlyLatestUnfinishedJobOfSameVersionAndPartitioning() {
+        assertThat(repository.findResumableJob(VERSION, 64)).isEmpty();
+
+        long completed = insertJob(VERSION, 64, JobStatus.COMPLETED);
+        assertThat(repository.findResumableJob(VERSION, 64)).isEmpty();
+
+        long failed = insertJob(VERSION, 64, JobStatus.FAILED);
+        assertThat(repository.findResumableJob(VERSION, 64)).contains(failed);
+        assertThat(repository.findResumableJob(VERSION, 32)).isEmpty();
+        assertThat(repository.findResumableJob("h1-other", 64)).isEmpty();
+
+        insertJob("h1-other", 64, JobStatus.FAILED);
+        assertThat(repository.findResumableJob(VERSION, 64)).isEmpty();
+        assertThat(completed).isLessThan(failed);
+    }
+
+    @Test
+    void findsCompletedPartitionsOfJob() {
+        long jobId = insertJob(VERSION, 8, JobStatus.FAILED);
+        long otherJobId = insertJob(VERSION, 8, JobStatus.FAILED);
+        jdbcTemplate.update("INSERT INTO recommendation_job_partitions (job_id, partition_no, users) VALUES (?, ?, ?)",
+                jobId, 3, 100);
+        jdbcTemplate.update("INSERT INTO recommendation_job_partitions (job_id, partition_no, users) VALUES (?, ?, ?)",
+                jobId, 5, 120);
+
+        assertThat(repository.findCompletedPartitions(jobId)).containsExactlyInAnyOrder(3, 5);
+        assertThat(repository.findCompletedPartitions(otherJobId)).isEmpty();
+    }
+
+    private void insertRecommendations(UUID userId, String version, UUID productId, LocalDateTime computedAt) {
+        jdbcTemplate.update("INSERT INTO user_recommendations VALUES (?, ?, ?, ?)", userId, version,
+                "[{\"id\":\"" + productId + "\",\"name\":\"Product\",\"text\":\"Text\"}]",
+                Timestamp.valueOf(computedAt));
+    }
+
+    private long insertJob(String version, int partitions, JobStatus status) {
+        jdbcTemplate.update("INSERT INTO recommendation_jobs (rule_set_version, partitions, status) VALUES (?, ?, ?)",
+                version, partitions, status.name());
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM recommendation_jobs", Long.class);
+    }
+
+    private static HikariDataSource dataSource() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:precomputed-" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE user_recommendations (user_id UUID PRIMARY KEY, "
+                + "rule_set_version VARCHAR(80) NOT NULL, recommendations VARCHAR(4000) NOT NULL, "
+                + "computed_at TIMESTAMP NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE recommendation_jobs (id BIGSERIAL PRIMARY KEY, "
+                + "rule_set_version VARCHAR(80) NOT NULL, partitions INT NOT NULL, status VARCHAR(16) NOT NULL, "
+                + "started_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, finished_at TIMESTAMP)");
+        jdbcTemplate.execute("CREATE TABLE recommendation_job_partitions (job_id BIGINT NOT NULL, "
+                + "partition_no INT NOT NULL, users BIGINT NOT NULL, "
+                + "completed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY (job_id, partition_no))");
+        return dataSource;
+    }
+}
@@ -0,0 +1,71 @@
+package com.bank.star.repository;
+
+import com.bank.star.config.tracing.RequestTracer;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.model.UserTransactionProfile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecommendationRepositoryTest {
+
+    private TransactionsFixture fixture;
+    private UUID debitProduct;
+    private UUID untypedProduct;
+    private ShardRouter router;
+    private RecommendationRepository repository;
+
+    @BeforeEach
+    void createDatabase() {
+        fixture = TransactionsFixture.inMemory("profiles", 1);
+        debitProduct = fixture.addProduct(ProductType.DEBIT);
+        untypedProduct = fixture.addProduct(null);
+        router = fixture.router();
+        repository = new RecommendationRepository(router, new SimpleMeterRegistry(), new RequestTracer(Tracer.NOOP));
+    }
+
+    @AfterEach
+    void dropDatabase() {
+        router.close();
+        fixture.close();
+    }
+
+    @Test
+    void productWithoutTypeDoesNotMarkUnregisteredUserAsExisting() {
+        UUID userId = UUID.randomUUID();
+        insertTransaction(userId, untypedProduct, 700);
+
+        assertThat(repository.findUserTransactionProfile(userId).isUserExists()).isFalse();
+        assertThat(repository.findUserTransactionProfiles(List.of(userId)).get(userId).isUserExists()).isFalse();
+    }
+
+    @Test
+    void skipsTransactionsOfProductWithoutType() {
+        UUID userId = UUID.randomUUID();
+        fixture.addUser(userId);
+        insertTransaction(userId, untypedProduct, 700);
+        insertTransaction(userId, debitProduct, 100);
+
+        UserTransactionProfile single = repository.findUserTransactionProfile(userId);
+        Map<UUID, UserTransactionProfile> batch = repository.findUserTransactionProfiles(List.of(userId));
+
+        for (UserTransactionProfile profile : List.of(single, batch.get(userId))) {
+            assertThat(profile.isUserExists()).isTrue();
+            assertThat(profile.count(ProductType.DEBIT)).isEqualTo(1);
+            assertThat(profile.sum(ProductType.DEBIT, TransactionType.DEPOSIT)).isEqualTo(100);
+        }
+    }
+
+    private void insertTransaction(UUID userId, UUID productId, int amount) {
+        fixture.addTransaction(userId, productId, TransactionType.DEPOSIT, amount);
+    }
+}
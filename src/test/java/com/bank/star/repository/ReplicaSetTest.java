@@ -0,0 +1,259 @@
+package com.bank.star.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplicaSetTest {
+
+    private static final String STATEMENT = "profile";
+    private static final long HEDGE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void routesQueryToLeastLoadedReplica() throws Exception {
+        FakeReplica a = new FakeReplica(1);
+        FakeReplica b = new FakeReplica(2);
+        a.closeGate();
+        b.closeGate();
+        try (ReplicaSet set = replicaSet(false, a, b)) {
+            CompletableFuture<Integer> blocked = CompletableFuture.supplyAsync(() -> query(set), callers);
+            await(() -> a.executed.get() + b.executed.get() == 1);
+            FakeReplica busy = a.executed.get() == 1 ? a : b;
+            FakeReplica idle = busy == a ? b : a;
+            idle.openGate();
+
+            for (int i = 0; i < 3; i++) {
+                assertThat(query(set)).isEqualTo(idle.value);
+            }
+            assertThat(busy.executed).hasValue(1);
+            assertThat(idle.executed).hasValue(3);
+
+            busy.openGate();
+            assertThat(blocked.get(5, TimeUnit.SECONDS)).isEqualTo(busy.value);
+        }
+    }
+
+    @Test
+    void doesNotHedgeUntilEnoughSamples() {
+        FakeReplica a = new FakeReplica(1);
+        FakeReplica b = new FakeReplica(2);
+        try (ReplicaSet set = replicaSet(true, a, b)) {
+            for (int i = 0; i < 20; i++) {
+                query(set);
+            }
+
+            assertThat(a.executed.get() + b.executed.get()).isEqualTo(20);
+            assertThat(attempts()).isZero();
+        }
+    }
+
+    @Test
+    void hedgesSlowQueryAndCancelsRunningLoser() throws Exception {
+        FakeReplica a = new FakeReplica(1);
+        FakeReplica b = new FakeReplica(2);
+        try (ReplicaSet set = replicaSet(true, a, b)) {
+            warmUp(set, a, b);
+            a.closeGate();
+            b.closeGate();
+
+            CompletableFuture<Integer> result = CompletableFuture.supplyAsync(() -> query(set), callers);
+            await(() -> a.executed.get() + b.executed.get() == 1);
+            FakeReplica slow = a.executed.get() == 1 ? a : b;
+            FakeReplica fast = slow == a ? b : a;
+            await(() -> fast.executed.get() == 1);
+            fast.openGate();
+
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(fast.value);
+            assertThat(attempts()).isEqualTo(1);
+            assertThat(wins()).isEqualTo(1);
+            await(() -> slow.cancelled.get() == 1);
+            await(() -> slow.finished.get() == 1);
+        }
+    }
+
+    @Test
+    void cancelledLoserDoesNotPrepareStatement() throws Exception {
+        FakeReplica a = new FakeReplica(1);
+        FakeReplica b = new FakeReplica(2);
+        try (ReplicaSet set = replicaSet(true, a, b)) {
+            warmUp(set, a, b);
+            a.closeGate();
+            b.closeGate();
+
+            CompletableFuture<Integer> result = CompletableFuture.supplyAsync(() -> query(set), callers);
+            await(() -> a.executed.get() + b.executed.get() == 1);
+            FakeReplica first = a.executed.get() == 1 ? a : b;
+            FakeReplica hedge = first == a ? b : a;
+            // Хеджирующая попытка ждёт соединение из пула, пока первая не ответит
+            hedge.blockConnections();
+            await(() -> hedge.connectionRequests.get() == 1);
+            first.openGate();
+
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(first.value);
+            hedge.releaseConnections();
+            await(() -> hedge.connectionsClosed.get() == 1);
+
+            assertThat(hedge.prepared).hasValue(0);
+            assertThat(hedge.executed).hasValue(0);
+            assertThat(attempts()).isEqualTo(1);
+            assertThat(wins()).isZero();
+        }
+    }
+
+    private ReplicaSet replicaSet(boolean hedging, FakeReplica... replicas) {
+        List<DataSource> dataSources = Arrays.stream(replicas).map(r -> r.dataSource).toList();
+        return new ReplicaSet("test", dataSources, false, hedging, 0.5, HEDGE_DELAY_NANOS, meterRegistry);
+    }
+
+    /**
+     * Набирает замеры, после которых задержка хеджирования равна минимальной
+     */
+    private void warmUp(ReplicaSet set, FakeReplica a, FakeReplica b) {
+        for (int i = 0; i < 48; i++) {
+            query(set);
+        }
+        a.executed.set(0);
+        b.executed.set(0);
+        a.prepared.set(0);
+        b.prepared.set(0);
+        a.connectionRequests.set(0);
+        b.connectionRequests.set(0);
+        a.connectionsClosed.set(0);
+        b.connectionsClosed.set(0);
+        a.finished.set(0);
+        b.finished.set(0);
+        assertThat(attempts()).isZero();
+    }
+
+    private static int query(ReplicaSet set) {
+        return set.query(STATEMENT, con -> con.prepareStatement("SELECT 1"), rs -> rs.next() ? rs.getInt(1) : -1);
+    }
+
+    private double attempts() {
+        return meterRegistry.get("bankstar.sql.hedge.attempts").counter().count();
+    }
+
+    private double wins() {
+        return meterRegistry.get("bankstar.sql.hedge.wins").counter().count();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not reached in time").isLessThan(deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Реплика-заглушка: выполнение запроса ждёт открытия шлюза или отмены запроса,
+     * выдача соединения может быть задержана, как при исчерпанном пуле
+     */
+    private static final class FakeReplica {
+        final int value;
+        final DataSource dataSource = mock(DataSource.class);
+        final AtomicInteger connectionRequests = new AtomicInteger();
+        final AtomicInteger connectionsClosed = new AtomicInteger();
+        final AtomicInteger prepared = new AtomicInteger();
+        final AtomicInteger executed = new AtomicInteger();
+        final AtomicInteger cancelled = new AtomicInteger();
+        final AtomicInteger finished = new AtomicInteger();
+        volatile CountDownLatch gate = new CountDownLatch(0);
+        volatile CountDownLatch connectionGate = new CountDownLatch(0);
+
+        FakeReplica(int value) {
+            this.value = value;
+            try {
+                when(dataSource.getConnection()).thenAnswer(invocation -> {
+                    connectionRequests.incrementAndGet();
+                    connectionGate.await(5, TimeUnit.SECONDS);
+                    return connection();
+                });
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void closeGate() {
+            gate = new CountDownLatch(1);
+        }
+
+        void openGate() {
+            gate.countDown();
+        }
+
+        void blockConnections() {
+            connectionGate = new CountDownLatch(1);
+        }
+
+        void releaseConnections() {
+            connectionGate.countDown();
+        }
+
+        private Connection connection() throws SQLException {
+            Connection connection = mock(Connection.class);
+            when(connection.prepareStatement(anyString())).thenAnswer(invocation -> statement());
+            doAnswer(invocation -> connectionsClosed.incrementAndGet()).when(connection).close();
+            return connection;
+        }
+
+        private PreparedStatement statement() throws SQLException {
+            prepared.incrementAndGet();
+            PreparedStatement ps = mock(PreparedStatement.class);
+            CountDownLatch cancel = new CountDownLatch(1);
+            CountDownLatch executionGate = gate;
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.next()).thenReturn(true, false);
+            when(rs.getInt(1)).thenReturn(value);
+            doAnswer(invocation -> {
+                cancelled.incrementAndGet();
+                cancel.countDown();
+                return null;
+            }).when(ps).cancel();
+            when(ps.executeQuery()).thenAnswer(invocation -> {
+                executed.incrementAndGet();
+                try {
+                    while (!executionGate.await(1, TimeUnit.MILLISECONDS)) {
+                        if (cancel.getCount() == 0) {
+                            throw new SQLException("canceling statement due to user request", "57014");
+                        }
+                    }
+                    return rs;
+                } finally {
+                    finished.incrementAndGet();
+                }
+            });
+            return ps;
+        }
+    }
+}
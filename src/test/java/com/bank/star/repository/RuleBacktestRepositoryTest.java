@@ -0,0 +1,81 @@
+package com.bank.star.repository;
+
+import com.bank.star.config.tracing.RequestTracer;
+import com.bank.star.model.ComparisonOperator;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.model.UserTransactionProfile;
+import com.bank.star.service.QueryService;
+import com.bank.star.service.rule.AtomicPredicate;
+import com.bank.star.service.rule.CompiledCondition;
+import com.bank.star.service.rule.QueryKind;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RuleBacktestRepositoryTest {
+
+    private final TransactionsFixture fixture = TransactionsFixture.inMemory("backtest", 42);
+
+    @AfterEach
+    void closeDatabase() {
+        fixture.close();
+    }
+
+    @Test
+    void countsSameUsersAsProfileEvaluation() {
+        fixture.addProducts(1, true);
+        List<UUID> userIds = fixture.addRandomUsers(300, 12);
+        ShardRouter router = fixture.router();
+        RuleBacktestRepository backtestRepository = new RuleBacktestRepository(router, Duration.ofSeconds(10));
+        RecommendationRepository profileRepository = new RecommendationRepository(router, new SimpleMeterRegistry(),
+                new RequestTracer(Tracer.NOOP));
+        QueryService queryService = new QueryService(profileRepository,
+                new CaffeineCacheManager(QueryService.PROFILE_CACHE), new SimpleMeterRegistry());
+        Map<UUID, UserTransactionProfile> profiles = profileRepository.findUserTransactionProfiles(userIds);
+
+        List<List<CompiledCondition>> rules = List.of(
+                List.of(condition(QueryKind.USER_OF, ProductType.DEBIT, null, null, 0, false)),
+                List.of(condition(QueryKind.ACTIVE_USER_OF, ProductType.SAVING, null, null, 0, false),
+                        condition(QueryKind.USER_OF, ProductType.CREDIT, null, null, 0, true)),
+                List.of(condition(QueryKind.TRANSACTION_SUM_COMPARE, ProductType.DEBIT, TransactionType.DEPOSIT,
+                        ComparisonOperator.GREATER, 1000, false)),
+                List.of(condition(QueryKind.TRANSACTION_SUM_COMPARE, ProductType.INVEST, TransactionType.WITHDRAW,
+                        ComparisonOperator.LESS_OR_EQUAL, 500, true),
+                        condition(QueryKind.TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW, ProductType.DEBIT, null,
+                                ComparisonOperator.GREATER, 0, false)));
+
+        // Пробное вычисление проходит по зарегистрированным клиентам, как и рекомендации
+        for (List<CompiledCondition> conditions : rules) {
+            long expected = userIds.stream()
+                                   .filter(userId -> profiles.get(userId).isUserExists())
+                                   .filter(userId -> conditions.stream().allMatch(condition ->
+                                           queryService.test(profiles.get(userId), condition.predicate())
+                                                   != condition.negate()))
+                                   .count();
+
+            RuleBacktestRepository.Matches matches = backtestRepository.findMatches(conditions, 5);
+
+            assertThat(matches.count()).as(conditions.toString()).isEqualTo(expected);
+            assertThat(matches.sample()).hasSize((int) Math.min(5, expected));
+        }
+        assertThat(backtestRepository.findMatches(List.of(), 5).count()).isZero();
+        router.close();
+    }
+
+    private static CompiledCondition condition(QueryKind kind, ProductType productType,
+                                               TransactionType transactionType, ComparisonOperator operator,
+                                               int constant, boolean negate) {
+        return new CompiledCondition(new AtomicPredicate(kind, productType, transactionType, operator, constant),
+                negate);
+    }
+}
@@ -0,0 +1,153 @@
+package com.bank.star.repository;
+
+import com.bank.star.config.tracing.RequestTracer;
+import com.bank.star.exception.ServiceOverloadedException;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.model.UserTransactionProfile;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShardRouterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<TransactionsFixture> fixtures = new ArrayList<>();
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+
+    @AfterEach
+    void closeDataSources() {
+        fixtures.forEach(TransactionsFixture::close);
+        dataSources.forEach(HikariDataSource::close);
+    }
+
+    @Test
+    void splitsBatchAcrossShardsAndKeepsInputOrder() {
+        ShardRouter router = new ShardRouter(List.of(shard("shard0"), shard("shard1")), List.of(), false, 100);
+        RecommendationRepository repository = new RecommendationRepository(router, meterRegistry,
+                new RequestTracer(Tracer.NOOP));
+
+        List<UUID> userIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            UUID userId = UUID.randomUUID();
+            userIds.add(userId);
+            insertUser(router.shardIndexOf(userId), userId, 100 + i);
+        }
+        UUID unknown = UUID.randomUUID();
+        userIds.add(unknown);
+
+        Map<UUID, UserTransactionProfile> profiles = repository.findUserTransactionProfiles(userIds);
+
+        assertThat(profiles.keySet()).containsExactlyElementsOf(userIds);
+        assertThat(userIds.stream().map(router::shardIndexOf).distinct()).hasSize(2);
+        for (int i = 0; i < 20; i++) {
+            UserTransactionProfile profile = profiles.get(userIds.get(i));
+            assertThat(profile.isUserExists()).isTrue();
+            assertThat(profile.sum(ProductType.DEBIT, TransactionType.DEPOSIT)).isEqualTo(100 + i);
+            assertThat(repository.findUserTransactionProfile(userIds.get(i)).count(ProductType.DEBIT)).isEqualTo(1);
+        }
+        assertThat(profiles.get(unknown).isUserExists()).isFalse();
+        router.close();
+    }
+
+    @Test
+    void routesSlotsByConfiguredRanges() {
+        ReplicaSet first = shard("ranges0");
+        ReplicaSet second = shard("ranges1");
+        ShardRouter router = new ShardRouter(List.of(first, second), List.of("0-99:1", "100-16383:0"), false, 100);
+
+        for (int i = 0; i < 1000; i++) {
+            UUID userId = UUID.randomUUID();
+            ReplicaSet expected = ShardRouter.slotOf(userId) < 100 ? second : first;
+            assertThat(router.shardFor(userId)).isSameAs(expected);
+        }
+        router.close();
+    }
+
+    @Test
+    void rejectsQueryWhenShardQueueIsFull() throws Exception {
+        ShardRouter router = new ShardRouter(List.of(idleShard("full0"), idleShard("full1")), List.of(), false, 1);
+        List<UUID> userIds = new ArrayList<>();
+        while (userIds.stream().map(router::shardIndexOf).distinct().count() < 2) {
+            userIds.add(UUID.randomUUID());
+        }
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<Map<UUID, Integer>> blocked = caller.submit(() -> router.queryPartitioned(userIds,
+                    (shard, partition) -> {
+                        started.countDown();
+                        awaitQuietly(release);
+                        return Map.of();
+                    }));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThatThrownBy(() -> router.queryPartitioned(userIds, (shard, partition) -> Map.of()))
+                    .isInstanceOf(ServiceOverloadedException.class);
+
+            release.countDown();
+            assertThat(blocked.get(5, TimeUnit.SECONDS)).isEmpty();
+        } finally {
+            release.countDown();
+            caller.shutdownNow();
+            router.close();
+        }
+    }
+
+    @Test
+    void rejectsRangesWithGapsOrOverlaps() {
+        assertThatThrownBy(() -> ShardRouter.parseRanges(List.of("0-100:0", "200-16383:1"), 2))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ShardRouter.parseRanges(List.of("0-8191:0", "8000-16383:1"), 2))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ShardRouter.parseRanges(List.of("0-16383:2"), 2))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private ReplicaSet shard(String name) {
+        TransactionsFixture fixture = TransactionsFixture.inMemory(name, fixtures.size());
+        fixtures.add(fixture);
+        return fixture.shard(meterRegistry);
+    }
+
+    /**
+     * Шард с одним соединением, к которому тест не обращается
+     */
+    private ReplicaSet idleShard(String name) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:" + name);
+        dataSource.setMaximumPoolSize(1);
+        dataSources.add(dataSource);
+        return TransactionsFixture.shard(name, dataSource, meterRegistry);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void insertUser(int shard, UUID userId, int amount) {
+        TransactionsFixture fixture = fixtures.get(shard);
+        fixture.addUser(userId);
+        fixture.addTransaction(userId, fixture.addProduct(ProductType.DEBIT), TransactionType.DEPOSIT, amount);
+    }
+}
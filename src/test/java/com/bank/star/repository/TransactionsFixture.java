@@ -0,0 +1,160 @@
+package com.bank.star.repository;
+
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * База транзакций H2 со схемой рабочей базы для тестов репозиториев и бенчмарков.
+ * <p>
+ * Таблицы {@code public.users}, {@code PRODUCTS} и {@code TRANSACTIONS} создаются при открытии.
+ * Идентификаторы и данные генерируются из заданного зерна, поэтому одинаково заполненные
+ * базы совпадают. Маршрутизатор над базой — один шард без хеджирования.
+ * </p>
+ */
+public final class TransactionsFixture implements AutoCloseable {
+
+    public static final int QUEUE_CAPACITY = 100;
+
+    private final String name;
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final Random random;
+    private final List<UUID> products = new ArrayList<>();
+
+    /**
+     * Открывает базу над готовым пулом соединений, создавая недостающие таблицы
+     */
+    public TransactionsFixture(String name, HikariDataSource dataSource, long seed) {
+        this.name = name;
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.random = new Random(seed);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS public.users (id UUID PRIMARY KEY)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS PRODUCTS (ID UUID PRIMARY KEY, TYPE VARCHAR(32))");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS TRANSACTIONS (ID UUID PRIMARY KEY, PRODUCT_ID UUID, "
+                + "USER_ID UUID, TYPE VARCHAR(32), AMOUNT INT)");
+    }
+
+    /**
+     * База в памяти; удаляется вместе с последним соединением при {@link #close()}
+     */
+    public static TransactionsFixture inMemory(String name, long seed) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:" + name);
+        return new TransactionsFixture(name, dataSource, seed);
+    }
+
+    /**
+     * Маршрутизатор из одного шарда над базой
+     */
+    public static ShardRouter router(String name, DataSource dataSource, MeterRegistry meterRegistry) {
+        return new ShardRouter(List.of(shard(name, dataSource, meterRegistry)), List.of(), false, QUEUE_CAPACITY);
+    }
+
+    /**
+     * Шард из одной реплики без хеджирования
+     */
+    public static ReplicaSet shard(String name, DataSource dataSource, MeterRegistry meterRegistry) {
+        return new ReplicaSet(name, List.of(dataSource), false, false, 0.95, 0, meterRegistry);
+    }
+
+    public ShardRouter router() {
+        return router(name, dataSource, new SimpleMeterRegistry());
+    }
+
+    public ReplicaSet shard(MeterRegistry meterRegistry) {
+        return shard(name, dataSource, meterRegistry);
+    }
+
+    public HikariDataSource dataSource() {
+        return dataSource;
+    }
+
+    public JdbcTemplate jdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public Random random() {
+        return random;
+    }
+
+    /**
+     * Добавляет {@code perType} продуктов каждого типа и, если {@code untyped}, продукт без типа
+     *
+     * @return идентификаторы всех продуктов базы
+     */
+    public List<UUID> addProducts(int perType, boolean untyped) {
+        for (ProductType type : ProductType.values()) {
+            for (int i = 0; i < perType; i++) {
+                addProduct(type);
+            }
+        }
+        if (untyped) {
+            addProduct(null);
+        }
+        return List.copyOf(products);
+    }
+
+    /**
+     * Добавляет продукт; {@code null} — продукт без типа
+     */
+    public UUID addProduct(ProductType type) {
+        UUID productId = nextId();
+        jdbcTemplate.update("INSERT INTO PRODUCTS VALUES (?, ?)", productId, type == null ? null : type.name());
+        products.add(productId);
+        return productId;
+    }
+
+    public void addUser(UUID userId) {
+        jdbcTemplate.update("INSERT INTO public.users VALUES (?)", userId);
+    }
+
+    public void addTransaction(UUID userId, UUID productId, TransactionType type, int amount) {
+        jdbcTemplate.update("INSERT INTO TRANSACTIONS VALUES (?, ?, ?, ?, ?)", nextId(), productId, userId,
+                type.name(), amount);
+    }
+
+    /**
+     * Клиенты со случайными транзакциями по уже добавленным продуктам: каждый десятый
+     * встречается только в транзакциях, у каждого седьмого транзакций нет
+     *
+     * @param maxTransactions верхняя граница (не включительно) числа транзакций клиента
+     * @return идентификаторы клиентов в порядке добавления
+     */
+    public List<UUID> addRandomUsers(int users, int maxTransactions) {
+        TransactionType[] types = TransactionType.values();
+        List<UUID> userIds = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            UUID userId = nextId();
+            userIds.add(userId);
+            if (i % 10 != 0) {
+                addUser(userId);
+            }
+            int transactions = i % 7 == 0 ? 0 : random.nextInt(maxTransactions);
+            for (int j = 0; j < transactions; j++) {
+                addTransaction(userId, products.get(random.nextInt(products.size())),
+                        types[random.nextInt(types.length)], random.nextInt(1000));
+            }
+        }
+        return userIds;
+    }
+
+    public UUID nextId() {
+        return new UUID(random.nextLong(), random.nextLong());
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+}
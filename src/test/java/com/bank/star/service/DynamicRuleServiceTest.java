@@ -0,0 +1,163 @@
+package com.bank.star.service;
+
+import com.bank.star.config.metrics.ProductIdCardinalityFilter;
+import com.bank.star.entity.DynamicRuleEntity;
+import com.bank.star.repository.RuleRepository;
+import com.bank.star.service.rule.CompiledRule;
+import com.bank.star.service.rule.RuleCompiler;
+import com.bank.star.service.rule.RuleSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DynamicRuleServiceTest {
+
+    /**
+     * Одно значение тега занимает таймер матрицы динамических правил
+     */
+    private static final int MAX_PRODUCT_IDS = 3;
+
+    private static final UUID FIRST = UUID.randomUUID();
+    private static final UUID SECOND = UUID.randomUUID();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RuleRepository ruleRepository = mock(RuleRepository.class);
+    private final RuleMetrics ruleMetrics;
+    private final DynamicRuleService service;
+
+    DynamicRuleServiceTest() {
+        ProductIdCardinalityFilter filter = new ProductIdCardinalityFilter(MAX_PRODUCT_IDS);
+        meterRegistry.config().meterFilter(filter).onMeterRemoved(filter::onMeterRemoved);
+        ruleMetrics = new RuleMetrics(meterRegistry);
+        service = new DynamicRuleService(ruleRepository, new RuleCompiler(), ruleMetrics);
+        when(ruleRepository.findByProductId(any())).thenReturn(Optional.of(new DynamicRuleEntity()));
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void deletedRulesFreeTheirMetricsUnderTagLimit() {
+        for (int i = 0; i < MAX_PRODUCT_IDS * 3; i++) {
+            UUID productId = UUID.randomUUID();
+            recordEvaluation(productId);
+            assertThat(hasMetrics(productId)).as("rule %d", i).isTrue();
+
+            deleteAndCommit(productId);
+            assertThat(meterRegistry.find(RuleMetrics.METER_PREFIX + "evaluation")
+                                    .tag(RuleMetrics.PRODUCT_ID_TAG, productId.toString())
+                                    .meters()).isEmpty();
+        }
+
+        UUID newRule = UUID.randomUUID();
+        recordEvaluation(newRule);
+        assertThat(hasMetrics(newRule)).isTrue();
+        assertThat(meterRegistry.get(RuleMetrics.METER_PREFIX + "hits")
+                                .tag(RuleMetrics.PRODUCT_ID_TAG, newRule.toString())
+                                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void rulesOverTagLimitGetNoMetrics() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID overLimit = UUID.randomUUID();
+        recordEvaluation(first);
+        recordEvaluation(second);
+        recordEvaluation(overLimit);
+
+        assertThat(hasMetrics(first)).isTrue();
+        assertThat(hasMetrics(second)).isTrue();
+        assertThat(hasMetrics(overLimit)).isFalse();
+    }
+
+    @Test
+    void snapshotIsServedWithoutDatabaseAfterFirstLoad() {
+        when(ruleRepository.findAll()).thenReturn(List.of(rule(FIRST)));
+
+        RuleSnapshot loaded = service.getRuleSnapshot();
+        for (int i = 0; i < 5; i++) {
+            assertThat(service.getRuleSnapshot()).isSameAs(loaded);
+        }
+        verify(ruleRepository, times(1)).findAll();
+    }
+
+    @Test
+    void failedRefreshKeepsPreviousSnapshot() {
+        when(ruleRepository.findAll()).thenReturn(List.of(rule(FIRST)))
+                                      .thenThrow(new DataAccessResourceFailureException("rules database down"));
+        RuleSnapshot loaded = service.getRuleSnapshot();
+
+        service.refreshRuleSnapshot();
+
+        assertThat(service.getRuleSnapshot()).isSameAs(loaded);
+    }
+
+    @Test
+    void versionChangesOnlyWhenRuleSetChanges() {
+        DynamicRuleEntity first = rule(FIRST);
+        DynamicRuleEntity second = rule(SECOND);
+        when(ruleRepository.findAll()).thenReturn(List.of(first, second), List.of(second, first), List.of(second));
+        long version = service.getRuleSnapshot().version();
+
+        service.refreshRuleSnapshot();
+        assertThat(service.getRuleSnapshot().version()).as("same rules in another order").isEqualTo(version);
+
+        service.refreshRuleSnapshot();
+        assertThat(service.getRuleSnapshot().version()).isEqualTo(version + 1);
+        assertThat(service.getRuleSnapshot().rules()).extracting(CompiledRule::productId).containsExactly(SECOND);
+    }
+
+    private static DynamicRuleEntity rule(UUID productId) {
+        DynamicRuleEntity entity = new DynamicRuleEntity();
+        entity.setProductId(productId);
+        entity.setProductName("Product " + productId);
+        entity.setProductText("Text");
+        return entity;
+    }
+
+    private void recordEvaluation(UUID productId) {
+        ruleMetrics.evaluationTimer(productId).record(Duration.ofMillis(1));
+        ruleMetrics.recordHit(productId);
+    }
+
+    private boolean hasMetrics(UUID productId) {
+        String tag = productId.toString();
+        return meterRegistry.find(RuleMetrics.METER_PREFIX + "evaluation")
+                            .tag(RuleMetrics.PRODUCT_ID_TAG, tag).timer() != null
+                && meterRegistry.find(RuleMetrics.METER_PREFIX + "hits")
+                                .tag(RuleMetrics.PRODUCT_ID_TAG, tag).counter() != null;
+    }
+
+    /**
+     * Удаляет правило и выполняет действия, отложенные до фиксации транзакции
+     */
+    private void deleteAndCommit(UUID productId) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.deleteRuleWithCheck(productId);
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
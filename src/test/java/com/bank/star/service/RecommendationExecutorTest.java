@@ -0,0 +1,94 @@
+package com.bank.star.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class RecommendationExecutorTest {
+
+    private static final long MILLISECOND = Duration.ofMillis(1).toNanos();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final RecommendationExecutor executor = new RecommendationExecutor(mock(DataSource.class),
+            new SimpleMeterRegistry(), true, 4, 2, 1);
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void mapOrderedKeepsOrderAndStaysWithinPerCallLimit() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> results = new ArrayList<>();
+
+        executor.mapOrdered(IntStream.range(0, 20).boxed().toList(), item -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5 - item % 5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return item;
+        }, results::add);
+
+        assertThat(results).containsExactlyElementsOf(IntStream.range(0, 20).boxed().toList());
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void mapOrderedRunsInCallerWhenPoolIsSaturatedByOthers() {
+        for (int i = 0; i < 5; i++) {
+            assertThat(executor.callWithin(this::blocked, MILLISECOND)).isEmpty();
+        }
+
+        List<String> threads = new ArrayList<>();
+        executor.mapOrdered(List.of(1, 2, 3), item -> Thread.currentThread().getName(), threads::add);
+
+        assertThat(threads).containsOnly(Thread.currentThread().getName());
+    }
+
+    @Test
+    void callWithinTreatsRejectedTaskAsMissedDeadline() {
+        for (int i = 0; i < 5; i++) {
+            assertThat(executor.callWithin(this::blocked, MILLISECOND)).isEmpty();
+        }
+
+        AtomicBoolean ran = new AtomicBoolean();
+        long startedAt = System.nanoTime();
+        assertThat(executor.callWithin(() -> ran.getAndSet(true), Duration.ofSeconds(10).toNanos())).isEmpty();
+
+        assertThat(ran).isFalse();
+        assertThat(System.nanoTime() - startedAt).isLessThan(Duration.ofSeconds(1).toNanos());
+    }
+
+    @Test
+    void callWithinReturnsResultInTime() {
+        assertThat(executor.callWithin(() -> 42, Duration.ofSeconds(10).toNanos())).contains(42);
+        assertThat(executor.callWithin(() -> 42, 0)).isEmpty();
+    }
+
+    private Integer blocked() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+}
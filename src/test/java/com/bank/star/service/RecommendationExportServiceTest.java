@@ -0,0 +1,42 @@
+package com.bank.star.service;
+
+import com.bank.star.exception.ServiceOverloadedException;
+import com.bank.star.repository.UserIdIndex;
+import com.bank.star.service.RecommendationExportService.ExportPermit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class RecommendationExportServiceTest {
+
+    private final RecommendationExportService exportService = new RecommendationExportService(
+            mock(RecommendationService.class), mock(DynamicRuleService.class), mock(UserIdIndex.class),
+            mock(RecommendationExecutor.class), new ObjectMapper(), new SimpleMeterRegistry(), 2);
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(exportService, "retryAfter", Duration.ofSeconds(1));
+    }
+
+    @Test
+    void rejectsExportsBeyondLimitUntilPermitIsReleased() {
+        ExportPermit first = exportService.acquirePermit();
+        ExportPermit second = exportService.acquirePermit();
+        assertThatThrownBy(exportService::acquirePermit).isInstanceOf(ServiceOverloadedException.class);
+
+        first.close();
+        first.close();
+        ExportPermit third = exportService.acquirePermit();
+        assertThatThrownBy(exportService::acquirePermit).isInstanceOf(ServiceOverloadedException.class);
+
+        second.close();
+        third.close();
+    }
+}
@@ -0,0 +1,157 @@
+package com.bank.star.service;
+
+import com.bank.star.dto.RecommendationDTO;
+import com.bank.star.exception.DatabaseQueryException;
+import com.bank.star.repository.PrecomputedRecommendationRepository;
+import com.bank.star.repository.PrecomputedRecommendationRepository.JobStatus;
+import com.bank.star.repository.ShardRouter;
+import com.bank.star.repository.UserIdIndex;
+import com.bank.star.service.rule.RuleSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RecommendationPrecomputeJobTest {
+
+    private static final int PARTITIONS = 4;
+    private static final String VERSION = "h1-test";
+    private static final long JOB_ID = 7;
+
+    private final List<UUID> userIds = new ArrayList<>();
+    private final Set<UUID> computedUsers = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> completedPartitions = ConcurrentHashMap.newKeySet();
+    private final RecommendationService recommendationService = mock(RecommendationService.class);
+    private final PrecomputedRecommendationRepository repository = mock(PrecomputedRecommendationRepository.class);
+    private final RecommendationPrecomputeJob job = job();
+
+    private volatile JobStatus jobStatus;
+    private volatile UUID failingUser;
+
+    @BeforeEach
+    void populate() {
+        for (int i = 0; i < 200; i++) {
+            userIds.add(UUID.randomUUID());
+        }
+    }
+
+    @Test
+    void resumesUnfinishedJobAndSkipsCompletedPartitions() {
+        jobStatus = JobStatus.FAILED;
+        completedPartitions.addAll(Set.of(0, 2));
+
+        job.run();
+
+        verify(repository, never()).createJob(anyString(), anyInt());
+        verify(repository).updateJobStatus(JOB_ID, JobStatus.RUNNING);
+        verify(repository, never()).markPartitionCompleted(eq(JOB_ID), eq(0), anyLong());
+        verify(repository, never()).markPartitionCompleted(eq(JOB_ID), eq(2), anyLong());
+        assertThat(completedPartitions).containsExactlyInAnyOrder(0, 1, 2, 3);
+        assertThat(computedUsers).containsExactlyInAnyOrderElementsOf(usersOf(Set.of(1, 3)));
+        assertThat(jobStatus).isEqualTo(JobStatus.COMPLETED);
+    }
+
+    @Test
+    void failedRunIsResumedFromCompletedPartitions() {
+        failingUser = usersOf(Set.of(1)).get(0);
+
+        job.run();
+
+        verify(repository).createJob(VERSION, PARTITIONS);
+        assertThat(jobStatus).isEqualTo(JobStatus.FAILED);
+        assertThat(completedPartitions).doesNotContain(1);
+        Set<Integer> completedBeforeResume = Set.copyOf(completedPartitions);
+
+        failingUser = null;
+        computedUsers.clear();
+        job.run();
+
+        Set<Integer> remaining = new HashSet<>(Set.of(0, 1, 2, 3));
+        remaining.removeAll(completedBeforeResume);
+        assertThat(computedUsers).containsExactlyInAnyOrderElementsOf(usersOf(remaining));
+        assertThat(completedPartitions).containsExactlyInAnyOrder(0, 1, 2, 3);
+        assertThat(jobStatus).isEqualTo(JobStatus.COMPLETED);
+    }
+
+    private List<UUID> usersOf(Set<Integer> partitions) {
+        return userIds.stream()
+                      .filter(userId -> partitions.contains(
+                              (int) ((long) ShardRouter.slotOf(userId) * PARTITIONS / ShardRouter.SLOTS)))
+                      .toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private RecommendationPrecomputeJob job() {
+        RuleSnapshot rules = new RuleSnapshot(1, List.of(), System.nanoTime());
+        DynamicRuleService dynamicRuleService = mock(DynamicRuleService.class);
+        when(dynamicRuleService.getRuleSnapshot()).thenReturn(rules);
+        when(recommendationService.ruleSetVersion(rules)).thenReturn(VERSION);
+        when(recommendationService.computeRecommendations(any(), eq(rules))).thenAnswer(invocation -> {
+            Collection<UUID> chunk = invocation.getArgument(0);
+            if (chunk.contains(failingUser)) {
+                throw new DatabaseQueryException("Ошибка при сохранении предвычисленных рекомендаций");
+            }
+            Map<UUID, List<RecommendationDTO>> recommendations = new LinkedHashMap<>();
+            chunk.forEach(userId -> recommendations.put(userId, List.of()));
+            computedUsers.addAll(chunk);
+            return recommendations;
+        });
+
+        UserIdIndex userIdIndex = mock(UserIdIndex.class);
+        doAnswer(invocation -> {
+            userIds.forEach(invocation.<Consumer<UUID>>getArgument(0));
+            return null;
+        }).when(userIdIndex).forEachUserId(any());
+
+        when(repository.runExclusively(any())).thenAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return true;
+        });
+        when(repository.findResumableJob(VERSION, PARTITIONS)).thenAnswer(invocation ->
+                jobStatus == null || jobStatus == JobStatus.COMPLETED ? Optional.empty() : Optional.of(JOB_ID));
+        when(repository.createJob(VERSION, PARTITIONS)).thenAnswer(invocation -> {
+            jobStatus = JobStatus.RUNNING;
+            return JOB_ID;
+        });
+        when(repository.findCompletedPartitions(JOB_ID)).thenAnswer(invocation -> new HashSet<>(completedPartitions));
+        doAnswer(invocation -> {
+            jobStatus = invocation.getArgument(1);
+            return null;
+        }).when(repository).updateJobStatus(eq(JOB_ID), any());
+        doAnswer(invocation -> {
+            completedPartitions.add(invocation.getArgument(1));
+            return null;
+        }).when(repository).markPartitionCompleted(eq(JOB_ID), anyInt(), anyLong());
+
+        RecommendationPrecomputeJob precomputeJob = new RecommendationPrecomputeJob(recommendationService,
+                dynamicRuleService, userIdIndex, repository, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(precomputeJob, "partitions", PARTITIONS);
+        ReflectionTestUtils.setField(precomputeJob, "threads", 2);
+        ReflectionTestUtils.setField(precomputeJob, "chunkSize", 10);
+        return precomputeJob;
+    }
+}
@@ -0,0 +1,302 @@
+package com.bank.star.service;
+
+import com.bank.star.config.tracing.RequestTracer;
+import com.bank.star.config.web.RequestDeadline;
+import com.bank.star.dto.RecommendationDTO;
+import com.bank.star.dto.ResponseDTO;
+import com.bank.star.exception.DatabaseQueryException;
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.model.UserTransactionProfile;
+import com.bank.star.repository.PrecomputedRecommendationRepository;
+import com.bank.star.repository.TransactionProfileSource;
+import com.bank.star.repository.UserIdIndex;
+import com.bank.star.service.impl.TopSavingRuleSet;
+import com.bank.star.service.rule.RuleSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RecommendationServiceTest {
+
+    private static final UUID TOP_SAVING = new TopSavingRuleSet().getProductId();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Map<UUID, UserTransactionProfile> profiles = new HashMap<>();
+    private final AtomicInteger singleLoads = new AtomicInteger();
+    private final RecommendationExecutor executor = new RecommendationExecutor(mock(DataSource.class), meterRegistry,
+            false, 0, 0, 100);
+    private volatile CountDownLatch loadGate = new CountDownLatch(0);
+
+    private final TransactionProfileSource profileSource = new TransactionProfileSource() {
+        @Override
+        public UserTransactionProfile findUserTransactionProfile(UUID userId) {
+            singleLoads.incrementAndGet();
+            try {
+                loadGate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return profiles.getOrDefault(userId, UserTransactionProfile.unknown(userId));
+        }
+
+        @Override
+        public Map<UUID, UserTransactionProfile> findUserTransactionProfiles(Collection<UUID> userIds) {
+            Map<UUID, UserTransactionProfile> result = new LinkedHashMap<>();
+            userIds.forEach(userId -> result.put(userId, profiles.getOrDefault(userId,
+                    UserTransactionProfile.unknown(userId))));
+            return result;
+        }
+    };
+
+    private final RuleSnapshot rules = new RuleSnapshot(1, List.of(), System.nanoTime());
+    private final UserIdIndex userIdIndex = mock(UserIdIndex.class);
+    private final PrecomputedRecommendationRepository precomputedRepository =
+            mock(PrecomputedRecommendationRepository.class);
+    private final RecommendationService service = service();
+
+    @AfterEach
+    void cleanUp() {
+        RequestDeadline.clear();
+        loadGate.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void returnsUncachedPartialResponseWhenProfileMissesDeadline() {
+        UUID userId = topSavingUser();
+        loadGate = new CountDownLatch(1);
+
+        RequestDeadline.start(Duration.ofMillis(50));
+        ResponseDTO partial = service.getRecommendationsResponse(userId);
+
+        assertThat(partial.isPartial()).isTrue();
+        assertThat(partial.getRecommendations()).isEmpty();
+
+        RequestDeadline.clear();
+        loadGate.countDown();
+        ResponseDTO complete = service.getRecommendationsResponse(userId);
+
+        assertThat(complete.isPartial()).isFalse();
+        assertThat(complete.getRecommendations()).extracting(RecommendationDTO::getId).containsExactly(TOP_SAVING);
+        assertThat(singleLoads).hasValue(1);
+    }
+
+    @Test
+    void partialResponseOfLeaderWithDeadlineIsNotSharedWithWaiter() throws Exception {
+        UUID userId = topSavingUser();
+        loadGate = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<ResponseDTO> leader = callers.submit(() -> {
+                RequestDeadline.start(Duration.ofMillis(300));
+                try {
+                    return service.getRecommendationsResponse(userId);
+                } finally {
+                    RequestDeadline.clear();
+                }
+            });
+            awaitLoads(1);
+            Future<ResponseDTO> waiter = callers.submit(() -> service.getRecommendationsResponse(userId));
+
+            assertThat(leader.get(5, TimeUnit.SECONDS).isPartial()).isTrue();
+            loadGate.countDown();
+            ResponseDTO complete = waiter.get(5, TimeUnit.SECONDS);
+
+            assertThat(complete.isPartial()).isFalse();
+            assertThat(complete.getRecommendations()).extracting(RecommendationDTO::getId).containsExactly(TOP_SAVING);
+            assertThat(meterRegistry.get("bankstar.singleflight.calls").tag("result", "unshared").counter().count())
+                    .isEqualTo(1);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    void expiredDeadlineSkipsLoadingProfile() {
+        UUID userId = topSavingUser();
+
+        RequestDeadline.start(Duration.ofMillis(-1));
+        ResponseDTO response = service.getRecommendationsResponse(userId);
+
+        assertThat(response.isPartial()).isTrue();
+        assertThat(singleLoads).hasValue(0);
+    }
+
+    @Test
+    void deadlineDoesNotDelayCachedProfile() {
+        UUID userId = topSavingUser();
+        service.getRecommendationsResponse(userId);
+
+        RequestDeadline.start(Duration.ofMillis(50));
+        loadGate = new CountDownLatch(1);
+        ResponseDTO response = service.getRecommendationsResponse(userId);
+
+        assertThat(response.isPartial()).isFalse();
+        assertThat(response.getRecommendations()).hasSize(1);
+    }
+
+    @Test
+    void servesPrecomputedRecommendationsOfCurrentVersionWithinMaxAge() {
+        enablePrecomputed();
+        UUID userId = topSavingUser();
+        RecommendationDTO precomputed = new RecommendationDTO(UUID.randomUUID(), "Precomputed", "Text");
+        when(precomputedRepository.find(eq(userId), any(), any())).thenReturn(Optional.of(List.of(precomputed)));
+
+        ResponseDTO response = service.getRecommendationsResponse(userId);
+
+        assertThat(response.getRecommendations()).containsExactly(precomputed);
+        assertThat(singleLoads).hasValue(0);
+        ArgumentCaptor<LocalDateTime> computedAfter = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(precomputedRepository).find(eq(userId), eq(service.ruleSetVersion(rules)), computedAfter.capture());
+        assertThat(computedAfter.getValue()).isBetween(LocalDateTime.now().minusHours(36).minusMinutes(1),
+                LocalDateTime.now().minusHours(36));
+    }
+
+    @Test
+    void evaluatesLiveWithoutCurrentPrecomputedRow() {
+        enablePrecomputed();
+        UUID userId = topSavingUser();
+        when(precomputedRepository.find(eq(userId), any(), any())).thenReturn(Optional.empty());
+
+        ResponseDTO response = service.getRecommendationsResponse(userId);
+
+        assertThat(response.getRecommendations()).extracting(RecommendationDTO::getId).containsExactly(TOP_SAVING);
+        assertThat(singleLoads).hasValue(1);
+    }
+
+    @Test
+    void evaluatesLiveWhenRulesDatabaseFails() {
+        enablePrecomputed();
+        UUID userId = topSavingUser();
+        when(precomputedRepository.find(eq(userId), any(), any()))
+                .thenThrow(new DatabaseQueryException("Ошибка при чтении предвычисленных рекомендаций"));
+
+        ResponseDTO response = service.getRecommendationsResponse(userId);
+
+        assertThat(response.isPartial()).isFalse();
+        assertThat(response.getRecommendations()).extracting(RecommendationDTO::getId).containsExactly(TOP_SAVING);
+    }
+
+    @Test
+    void batchKeepsInputOrderAcrossChunks() {
+        ReflectionTestUtils.setField(service, "batchChunkSize", 3);
+        List<UUID> userIds = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            userIds.add(i % 3 == 0 ? UUID.randomUUID() : topSavingUser());
+        }
+
+        List<ResponseDTO> responses = new ArrayList<>();
+        service.streamRecommendationsResponses(userIds, responses::add);
+
+        assertThat(responses).extracting(ResponseDTO::getUserId).containsExactlyElementsOf(userIds);
+        for (int i = 0; i < userIds.size(); i++) {
+            assertThat(responses.get(i).getRecommendations()).hasSize(i % 3 == 0 ? 0 : 1);
+        }
+    }
+
+    @Test
+    void batchReturnsEmptyRecommendationsForUnknownUsers() {
+        ReflectionTestUtils.setField(service, "batchChunkSize", 2);
+        UUID unknown = UUID.randomUUID();
+        UUID known = topSavingUser();
+
+        List<ResponseDTO> responses = new ArrayList<>();
+        service.streamRecommendationsResponses(List.of(unknown, known), responses::add);
+
+        assertThat(responses).hasSize(2);
+        assertThat(responses.get(0).getUserId()).isEqualTo(unknown);
+        assertThat(responses.get(0).getRecommendations()).isEmpty();
+        assertThat(responses.get(1).getRecommendations()).extracting(RecommendationDTO::getId)
+                                                          .containsExactly(TOP_SAVING);
+    }
+
+    @Test
+    void validateBatchRejectsTooManyUsersAndNullIds() {
+        ReflectionTestUtils.setField(service, "batchMaxUsers", 2);
+
+        assertThatThrownBy(() -> service.validateBatch(List.of(UUID.randomUUID(), UUID.randomUUID(),
+                UUID.randomUUID())))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("максимум 2");
+        assertThatThrownBy(() -> service.validateBatch(Arrays.asList(UUID.randomUUID(), null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        service.validateBatch(List.of(UUID.randomUUID(), UUID.randomUUID()));
+    }
+
+    private void awaitLoads(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleLoads.get() < expected) {
+            assertThat(System.nanoTime()).as("profile load not started").isLessThan(deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void enablePrecomputed() {
+        ReflectionTestUtils.setField(service, "precomputedEnabled", true);
+        ReflectionTestUtils.setField(service, "precomputedMaxAge", Duration.ofHours(36));
+    }
+
+    private UUID topSavingUser() {
+        UUID userId = UUID.randomUUID();
+        profiles.put(userId, UserTransactionProfile.builder(userId)
+                                                   .userExists(true)
+                                                   .add(ProductType.DEBIT, TransactionType.DEPOSIT, 2, 60000)
+                                                   .add(ProductType.DEBIT, TransactionType.WITHDRAW, 1, 1000)
+                                                   .build());
+        return userId;
+    }
+
+    private RecommendationService service() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager(QueryService.PROFILE_CACHE,
+                RecommendationService.RESPONSE_CACHE);
+        DynamicRuleService dynamicRuleService = mock(DynamicRuleService.class);
+        when(dynamicRuleService.getRuleSnapshot()).thenReturn(rules);
+        when(userIdIndex.contains(any())).thenAnswer(invocation -> profiles.containsKey(invocation.getArgument(0)));
+
+        return new RecommendationService(
+                List.of(new TopSavingRuleSet()),
+                dynamicRuleService,
+                new QueryService(profileSource, cacheManager, meterRegistry),
+                userIdIndex,
+                executor,
+                precomputedRepository,
+                mock(RuleStatsService.class),
+                new RuleMetrics(meterRegistry),
+                new RequestTracer(Tracer.NOOP),
+                cacheManager,
+                meterRegistry,
+                Duration.ofSeconds(2));
+    }
+}
@@ -0,0 +1,119 @@
+package com.bank.star.service;
+
+import com.bank.star.dto.RecommendationDTO;
+import com.bank.star.dto.RuleStatsResponseDTO;
+import com.bank.star.exception.DatabaseQueryException;
+import com.bank.star.repository.RuleStatsRepository;
+import com.bank.star.service.rule.CompiledRule;
+import com.bank.star.service.rule.RuleSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RuleStatsServiceTest {
+
+    private static final UUID FIRST = UUID.randomUUID();
+    private static final UUID SECOND = UUID.randomUUID();
+    private static final UUID NEVER_FIRED = UUID.randomUUID();
+
+    private final RuleStatsRepository repository = mock(RuleStatsRepository.class);
+    private final DynamicRuleService dynamicRuleService = mock(DynamicRuleService.class);
+    private final RuleStatsService service = new RuleStatsService(repository, dynamicRuleService);
+
+    /**
+     * Содержимое rule_stats; пакет сохраняется целиком или не сохраняется вовсе
+     */
+    private final Map<UUID, Long> stored = new HashMap<>();
+    private final List<Map<UUID, Long>> batches = new ArrayList<>();
+    private boolean failing;
+
+    RuleStatsServiceTest() {
+        doAnswer(invocation -> {
+            Map<UUID, Long> deltas = Map.copyOf(invocation.getArgument(0));
+            batches.add(deltas);
+            if (failing) {
+                throw new DatabaseQueryException("Ошибка при сохранении статистики правил");
+            }
+            deltas.forEach((productId, delta) -> stored.merge(productId, delta, Long::sum));
+            return null;
+        }).when(repository).addAll(any());
+        when(repository.findAll()).thenAnswer(invocation -> Map.copyOf(stored));
+        when(dynamicRuleService.getRuleSnapshot()).thenReturn(new RuleSnapshot(1,
+                List.of(new CompiledRule(NEVER_FIRED, "Never", "Text", List.of())), System.nanoTime()));
+    }
+
+    @Test
+    void flushesAccumulatedDeltasOnce() {
+        fire(FIRST, 3);
+        fire(SECOND, 1);
+
+        service.flush();
+        service.flush();
+
+        assertThat(batches).containsExactly(Map.of(FIRST, 3L, SECOND, 1L));
+        assertThat(stored).isEqualTo(Map.of(FIRST, 3L, SECOND, 1L));
+    }
+
+    @Test
+    void skipsFlushWithoutDeltas() {
+        service.flush();
+
+        verify(repository, never()).addAll(any());
+    }
+
+    @Test
+    void keepsDeltasOfFailedFlushWithoutCountingThemTwice() {
+        fire(FIRST, 2);
+        failing = true;
+        service.flush();
+
+        assertThat(stored).isEmpty();
+        assertThat(counts()).containsEntry(FIRST, 2L);
+
+        failing = false;
+        fire(FIRST, 1);
+        service.flush();
+
+        assertThat(batches).containsExactly(Map.of(FIRST, 2L), Map.of(FIRST, 3L));
+        assertThat(stored).isEqualTo(Map.of(FIRST, 3L));
+        assertThat(counts()).containsEntry(FIRST, 3L);
+    }
+
+    @Test
+    void statsMergeStoredAndPendingCounts() {
+        fire(FIRST, 2);
+        service.flush();
+        fire(FIRST, 1);
+        fire(SECOND, 5);
+
+        RuleStatsResponseDTO stats = service.getStats();
+
+        assertThat(stats.getStats()).extracting(RuleStatsResponseDTO.RuleStatDTO::getProductId)
+                                    .containsExactly(SECOND, FIRST, NEVER_FIRED);
+        assertThat(counts()).isEqualTo(Map.of(FIRST, 3L, SECOND, 5L, NEVER_FIRED, 0L));
+    }
+
+    private void fire(UUID productId, int times) {
+        for (int i = 0; i < times; i++) {
+            service.recordFired(List.of(new RecommendationDTO(productId, "Product", "Text")));
+        }
+    }
+
+    private Map<UUID, Long> counts() {
+        Map<UUID, Long> counts = new HashMap<>();
+        service.getStats().getStats().forEach(stat -> counts.put(stat.getProductId(), stat.getCount()));
+        return counts;
+    }
+}
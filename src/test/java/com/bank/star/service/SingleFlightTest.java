@@ -0,0 +1,141 @@
+package com.bank.star.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ThreadPoolExecutor callers = (ThreadPoolExecutor) Executors.newFixedThreadPool(CALLERS);
+    private final CountDownLatch loaderStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseLoader = new CountDownLatch(1);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    void shutdown() {
+        releaseLoader.countDown();
+        callers.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>("test", Duration.ofSeconds(10), meterRegistry);
+
+        List<Future<Integer>> results = startCallers(flight, () -> {
+            loaderStarted.countDown();
+            await(releaseLoader);
+            return loads.incrementAndGet();
+        });
+        awaitCallers();
+        releaseLoader.countDown();
+
+        for (Future<Integer> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        }
+        assertThat(loads).hasValue(1);
+        assertThat(calls("executed")).isEqualTo(1);
+        assertThat(calls("coalesced")).isEqualTo(CALLERS - 1);
+        assertThat(meterRegistry.get("bankstar.singleflight.in_flight").gauge().value()).isZero();
+    }
+
+    @Test
+    void waiterLoadsItselfAfterTimeout() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>("test", Duration.ofMillis(50), meterRegistry);
+
+        Future<Integer> first = callers.submit(() -> flight.execute("key", () -> {
+            loaderStarted.countDown();
+            await(releaseLoader);
+            return -1;
+        }));
+        assertThat(loaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(flight.execute("key", loads::incrementAndGet)).isEqualTo(1);
+        assertThat(calls("timed_out")).isEqualTo(1);
+        assertThat(calls("executed")).isEqualTo(2);
+
+        releaseLoader.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(-1);
+    }
+
+    @Test
+    void loaderErrorReachesEveryWaiter() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>("test", Duration.ofSeconds(10), meterRegistry);
+
+        List<Future<Integer>> results = startCallers(flight, () -> {
+            loads.incrementAndGet();
+            loaderStarted.countDown();
+            await(releaseLoader);
+            throw new IllegalStateException("load failed");
+        });
+        awaitCallers();
+        releaseLoader.countDown();
+
+        for (Future<Integer> result : results) {
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IllegalStateException.class)
+                    .hasRootCauseMessage("load failed");
+        }
+        assertThat(loads).hasValue(1);
+
+        assertThat(flight.execute("key", () -> 42)).isEqualTo(42);
+    }
+
+    /**
+     * Запускает первого вызывающего, дожидается начала его вычисления и запускает остальных
+     */
+    private List<Future<Integer>> startCallers(SingleFlight<String, Integer> flight,
+                                               Supplier<Integer> loader)
+            throws InterruptedException {
+        List<Future<Integer>> results = new ArrayList<>();
+        results.add(callers.submit(() -> flight.execute("key", loader)));
+        assertThat(loaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 1; i < CALLERS; i++) {
+            results.add(callers.submit(() -> flight.execute("key", () -> {
+                throw new AssertionError("waiter must not load");
+            })));
+        }
+        return results;
+    }
+
+    /**
+     * Ждёт, пока все вызывающие займут потоки пула и встанут в ожидание общего результата
+     */
+    private void awaitCallers() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (callers.getActiveCount() < CALLERS && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(20);
+    }
+
+    private double calls(String result) {
+        return meterRegistry.get("bankstar.singleflight.calls").tag("result", result).counter().count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
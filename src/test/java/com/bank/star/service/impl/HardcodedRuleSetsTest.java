@@ -0,0 +1,63 @@
+package com.bank.star.service.impl;
+
+import com.bank.star.model.ProductType;
+import com.bank.star.model.TransactionType;
+import com.bank.star.model.UserTransactionProfile;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HardcodedRuleSetsTest {
+
+    private static final UUID USER_ID = UUID.fromString("cd515076-5d8a-44be-930e-8d4fcb79f42d");
+
+    @Test
+    void invest500RequiresDebitNoInvestAndSavingDeposits() {
+        UserTransactionProfile.Builder builder = UserTransactionProfile.builder(USER_ID)
+                .userExists(true)
+                .add(ProductType.DEBIT, TransactionType.DEPOSIT, 1, 10)
+                .add(ProductType.SAVING, TransactionType.DEPOSIT, 2, 1001);
+
+        assertThat(new Invest500RuleSet().check(builder.build())).isPresent();
+
+        builder.add(ProductType.INVEST, TransactionType.DEPOSIT, 1, 1);
+        assertThat(new Invest500RuleSet().check(builder.build())).isEmpty();
+    }
+
+    @Test
+    void topSavingRequiresLargeDepositsAndPositiveDebitBalance() {
+        UserTransactionProfile.Builder builder = UserTransactionProfile.builder(USER_ID)
+                .userExists(true)
+                .add(ProductType.DEBIT, TransactionType.DEPOSIT, 3, 50000)
+                .add(ProductType.DEBIT, TransactionType.WITHDRAW, 1, 49999);
+
+        assertThat(new TopSavingRuleSet().check(builder.build())).isPresent();
+
+        builder.add(ProductType.DEBIT, TransactionType.WITHDRAW, 1, 1);
+        assertThat(new TopSavingRuleSet().check(builder.build())).isEmpty();
+    }
+
+    @Test
+    void simpleLoanRequiresNoCreditAndLargeDebitSpending() {
+        UserTransactionProfile.Builder builder = UserTransactionProfile.builder(USER_ID)
+                .userExists(true)
+                .add(ProductType.DEBIT, TransactionType.DEPOSIT, 1, 200000)
+                .add(ProductType.DEBIT, TransactionType.WITHDRAW, 1, 100001);
+
+        assertThat(new SimpleLoanRuleSet().check(builder.build())).isPresent();
+
+        builder.add(ProductType.CREDIT, TransactionType.DEPOSIT, 1, 1);
+        assertThat(new SimpleLoanRuleSet().check(builder.build())).isEmpty();
+    }
+
+    @Test
+    void unknownUserMatchesNothing() {
+        UserTransactionProfile profile = UserTransactionProfile.unknown(USER_ID);
+
+        assertThat(new Invest500RuleSet().check(profile)).isEmpty();
+        assertThat(new TopSavingRuleSet().check(profile)).isEmpty();
+        assertThat(new SimpleLoanRuleSet().check(profile)).isEmpty();
+    }
+}
@@ -0,0 +1,113 @@
+package com.bank.star.service.rule;
+
+import com.bank.star.entity.DynamicRuleEntity;
+import com.bank.star.model.ProductType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RuleMatrixTest {
+
+    private final RuleCompiler compiler = new RuleCompiler();
+
+    @Test
+    void sharesPredicatesAcrossRulesAndPolarities() {
+        CompiledRule debitNoInvest = rule(
+                condition("USER_OF", List.of("DEBIT"), false),
+                condition("USER_OF", List.of("INVEST"), true));
+        CompiledRule activeDebit = rule(
+                condition("USER_OF", List.of("DEBIT"), false),
+                condition("ACTIVE_USER_OF", List.of("DEBIT"), false));
+
+        RuleMatrix matrix = RuleMatrix.build(List.of(debitNoInvest, activeDebit));
+
+        assertThat(matrix.predicateCount()).isEqualTo(3);
+        assertThat(matched(matrix, facts(matrix, 0))).containsExactly(debitNoInvest);
+        assertThat(matched(matrix, facts(matrix, 0, 1))).isEmpty();
+        assertThat(matched(matrix, facts(matrix, 0, 2))).containsExactly(debitNoInvest, activeDebit);
+    }
+
+    @Test
+    void ruleWithoutConditionsNeverMatches() {
+        RuleMatrix matrix = RuleMatrix.build(List.of(rule()));
+
+        assertThat(matched(matrix, matrix.newFacts())).isEmpty();
+    }
+
+    @Test
+    void handlesPredicatesBeyondFirstWord() {
+        List<DynamicRuleEntity.QueryCondition> conditions = new ArrayList<>();
+        for (int constant = 0; constant < 100; constant++) {
+            conditions.add(condition("TRANSACTION_SUM_COMPARE",
+                    List.of("SAVING", "DEPOSIT", ">", String.valueOf(constant)), constant == 99));
+        }
+        CompiledRule wide = rule(conditions.toArray(DynamicRuleEntity.QueryCondition[]::new));
+        RuleMatrix matrix = RuleMatrix.build(List.of(wide));
+
+        long[] facts = matrix.newFacts();
+        for (int bit = 0; bit < 99; bit++) {
+            RuleMatrix.setFact(facts, bit);
+        }
+        assertThat(facts).hasSize(2);
+        assertThat(matched(matrix, facts)).containsExactly(wide);
+
+        RuleMatrix.setFact(facts, 99);
+        assertThat(matched(matrix, facts)).isEmpty();
+    }
+
+    @Test
+    void compilerParsesAllQueryKinds() {
+        CompiledRule compiled = rule(
+                condition("TRANSACTION_SUM_COMPARE", List.of("DEBIT", "WITHDRAW", ">=", "1000"), false),
+                condition("TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW", List.of("SAVING", "<"), true));
+
+        AtomicPredicate sumCompare = compiled.conditions().get(0).predicate();
+        assertThat(sumCompare.kind()).isEqualTo(QueryKind.TRANSACTION_SUM_COMPARE);
+        assertThat(sumCompare.constant()).isEqualTo(1000);
+        assertThat(compiled.conditions().get(1).predicate().productType()).isEqualTo(ProductType.SAVING);
+        assertThat(compiled.conditions().get(1).negate()).isTrue();
+    }
+
+    @Test
+    void compilerRejectsMalformedConditions() {
+        assertThatThrownBy(() -> rule(condition("USER_OF", List.of("GOLD"), false)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> rule(condition("USER_OF", List.of(), false)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> rule(condition("TRANSACTION_SUM_COMPARE", List.of("DEBIT", "DEPOSIT", "!=", "1"), false)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> rule(condition("SOMETHING", List.of("DEBIT"), false)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private CompiledRule rule(DynamicRuleEntity.QueryCondition... conditions) {
+        DynamicRuleEntity entity = new DynamicRuleEntity();
+        entity.setProductId(UUID.randomUUID());
+        entity.setProductName("product");
+        entity.setRule(List.of(conditions));
+        return compiler.compile(entity);
+    }
+
+    private static DynamicRuleEntity.QueryCondition condition(String query, List<String> arguments, boolean negate) {
+        return new DynamicRuleEntity.QueryCondition(query, arguments, negate);
+    }
+
+    private static long[] facts(RuleMatrix matrix, int... bits) {
+        long[] facts = matrix.newFacts();
+        for (int bit : bits) {
+            RuleMatrix.setFact(facts, bit);
+        }
+        return facts;
+    }
+
+    private static List<CompiledRule> matched(RuleMatrix matrix, long[] facts) {
+        List<CompiledRule> matched = new ArrayList<>();
+        matrix.match(facts, matched::add);
+        return matched;
+    }
+}